@@ -6,17 +6,21 @@
 
 package GUI;
 
-import com.marcrh.graph.Point;
-import com.marcrh.graph.Range;
+import com.marcrh.graph.PointBuffer;
 import com.sun.j3d.utils.universe.SimpleUniverse;
 import database.Axis;
 import database.GisDb;
 import database.GpxReader;
+import database.LoadProgressListener;
+import database.PointsConsumer;
+import database.PointsImporter;
 import database.PointsReader;
 import database.UtmGridHeightReader;
 import graphics.DTMCreator;
 import graphics.DTMEngine;
-import graphics.DTMTriangle;
+import graphics.DTMWindow;
+import graphics.Rtin;
+import graphics.TriangleMesh;
 import java.awt.Color;
 import java.awt.Cursor;
 import java.awt.Toolkit;
@@ -24,15 +28,13 @@ import java.awt.event.ItemEvent;
 import java.awt.event.MouseWheelEvent;
 import java.awt.event.MouseWheelListener;
 import java.sql.SQLException;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.concurrent.ExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.media.j3d.Canvas3D;
 import javax.swing.JFileChooser;
+import javax.swing.SwingWorker;
 import javax.swing.filechooser.FileNameExtensionFilter;
-import javax.vecmath.Point3d;
 
 /**
  *
@@ -58,6 +60,11 @@ public class MainForm extends javax.swing.JFrame {
      * No database is open if dataDb is null.
      */
     private GisDb dataDb = null;
+    /**
+     * the triangulation kept while the viewport slides over the database,
+     * null until the first render with "Scorrimento continuo".
+     */
+    private DTMWindow window = null;
 
     /** Creates new form MainForm */
     public MainForm() {
@@ -74,23 +81,23 @@ public class MainForm extends javax.swing.JFrame {
     /**
      * Imposta il punto P(minX, minY, minZ) come origine del sistema di riferimento
      * di {@code data}
-     * @param data la {@link List} della quale impostare il nuovo origine
+     * @param data i punti dei quali impostare il nuovo origine
      * @param minCoord le coordinate del centro del sistema di riferimento
      */
-    private void centrePoints(List<Point3d> data, double[] minCoord, double[] maxCoord)
+    private void centrePoints(PointBuffer data, double[] minCoord, double[] maxCoord)
     {
         double dtmWidth = maxCoord[0] - minCoord[0];
         double dtmHeight = maxCoord[1] - minCoord[1];
         double dtmDepth = maxCoord[2] - minCoord[2];
-        Iterator<Point3d> it = data.iterator();
-        Point3d vertex;
-        while (it.hasNext())
+        double[] x = data.getXArray();
+        double[] y = data.getYArray();
+        double[] z = data.getZArray();
+        for (int i = 0; i < data.size(); i++)
         {
-            vertex = it.next();
             //centro i punti rispetto al sistema di riferimento del Canvas3D
-            vertex.x = vertex.x - minCoord[0] - dtmWidth/2;
-            vertex.y = vertex.y - minCoord[1] - dtmHeight/2;
-            vertex.z = vertex.z - minCoord[2] - dtmDepth/2;
+            x[i] = x[i] - minCoord[0] - dtmWidth/2;
+            y[i] = y[i] - minCoord[1] - dtmHeight/2;
+            z[i] = z[i] - minCoord[2] - dtmDepth/2;
         }
     }
 
@@ -110,6 +117,7 @@ public class MainForm extends javax.swing.JFrame {
         btnOpenDb = new javax.swing.JButton();
         btnCreateDb = new javax.swing.JButton();
         btnLoadData = new javax.swing.JButton();
+        btnExportTin = new javax.swing.JButton();
         lblStatus = new javax.swing.JTextArea();
         viewport_data = new javax.swing.JPanel();
         jLabel1 = new javax.swing.JLabel();
@@ -124,6 +132,7 @@ public class MainForm extends javax.swing.JFrame {
         originE = new javax.swing.JTextField();
         sizeN = new javax.swing.JTextField();
         sizeE = new javax.swing.JTextField();
+        chkSliding = new javax.swing.JCheckBox();
         btnRender = new javax.swing.JButton();
         dtmViewPane = new javax.swing.JPanel();
         rbtnGrill = new javax.swing.JRadioButton();
@@ -198,6 +207,23 @@ public class MainForm extends javax.swing.JFrame {
         gridBagConstraints.insets = new java.awt.Insets(0, 0, 5, 0);
         controlPane.add(btnLoadData, gridBagConstraints);
 
+        btnExportTin.setText("Esporta TIN");
+        btnExportTin.setEnabled(false);
+        btnExportTin.setFocusable(false);
+        btnExportTin.setHorizontalTextPosition(javax.swing.SwingConstants.CENTER);
+        btnExportTin.setVerticalTextPosition(javax.swing.SwingConstants.BOTTOM);
+        btnExportTin.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                btnExportTinActionPerformed(evt);
+            }
+        });
+        gridBagConstraints = new java.awt.GridBagConstraints();
+        gridBagConstraints.gridx = 0;
+        gridBagConstraints.gridy = 5;
+        gridBagConstraints.fill = java.awt.GridBagConstraints.HORIZONTAL;
+        gridBagConstraints.insets = new java.awt.Insets(0, 0, 5, 0);
+        controlPane.add(btnExportTin, gridBagConstraints);
+
         lblStatus.setColumns(20);
         lblStatus.setEditable(false);
         lblStatus.setLineWrap(true);
@@ -290,6 +316,14 @@ public class MainForm extends javax.swing.JFrame {
         gridBagConstraints.fill = java.awt.GridBagConstraints.HORIZONTAL;
         viewport_data.add(sizeE, gridBagConstraints);
 
+        chkSliding.setText("Scorrimento continuo");
+        gridBagConstraints = new java.awt.GridBagConstraints();
+        gridBagConstraints.gridx = 0;
+        gridBagConstraints.gridy = 6;
+        gridBagConstraints.gridwidth = 2;
+        gridBagConstraints.anchor = java.awt.GridBagConstraints.WEST;
+        viewport_data.add(chkSliding, gridBagConstraints);
+
         gridBagConstraints = new java.awt.GridBagConstraints();
         gridBagConstraints.gridx = 0;
         gridBagConstraints.gridy = 9;
@@ -385,9 +419,11 @@ public class MainForm extends javax.swing.JFrame {
             try {
                 //If the user selected a DB then open it
                 dataDb=new GisDb(chooser.getSelectedFile().getAbsolutePath());
+                window=null;
                 lblStatus.setText("Aperto "+dataDb.getName());
                 //enable the "load data" button
                 btnLoadData.setEnabled(true);
+                btnExportTin.setEnabled(true);
                 btnRender.setEnabled(true);
                 //calculate data range
                 minN=dataDb.getMin(Axis.Northing);
@@ -431,8 +467,10 @@ public class MainForm extends javax.swing.JFrame {
                 if(!name.endsWith(".db")) name+=".db";
 
                 dataDb=new GisDb(name);
+                window=null;
                 lblStatus.setText("Creato e aperto "+dataDb.getName());
                 btnLoadData.setEnabled(true);
+                btnExportTin.setEnabled(true);
                 btnRender.setEnabled(true);
             } catch (IllegalArgumentException ex) {
                 lblStatus.setText("Nome file non valido.")   ;
@@ -451,8 +489,6 @@ public class MainForm extends javax.swing.JFrame {
 
         PointsReader dataReader=null;
 
-        LinkedList<Point3d> tuttiPunti=null;
-
         //Open a file chooser window that can open data files
         JFileChooser chooser = new JFileChooser("examples");
 
@@ -490,22 +526,54 @@ public class MainForm extends javax.swing.JFrame {
                     lblStatus.setText("Impossibile aprire il file dati specificato.");
                 }
 
-                try {
-                    //Il file è aperto, ora parsiamolo e importiamo i dati nel database
-                    tuttiPunti=dataReader.getAllPoints();
-                } catch (Exception ex) {
-                    lblStatus.setText("Errore nel parsing del file dati");
-                }
-
                 lblStatus.setText("Inserimento punti nel DB, attendere.");
                 this.setCursor(Cursor.WAIT_CURSOR);
+                String status;
                 try {
-                    dataDb.addPoints(tuttiPunti,dataReader.getNullValue());
+                    //Il file è aperto, ora parsiamolo e importiamo i dati nel
+                    //database un blocco di punti alla volta: il parsing
+                    //procede su un altro thread mentre si inserisce nel DB
+                    PointsImporter importer=new PointsImporter(dataDb);
+                    importer.setProgressListener(new LoadProgressListener() {
+                        @Override
+                        public void progress(long rowsCommitted, long rowsFailed,
+                                double rowsPerSecond) {
+                            lblStatus.setText("Inserimento punti nel DB, attendere.\n"+
+                                    rowsCommitted+" punti inseriti ("+
+                                    Math.round(rowsPerSecond)+" punti/s)"+
+                                    (rowsFailed>0 ? ", "+rowsFailed+" scartati" : ""));
+                            lblStatus.update(lblStatus.getGraphics());
+                        }
+                    });
+                    if(window!=null){
+                        //i punti nuovi che cadono nella finestra vengono
+                        //inseriti nella sua triangolazione man mano che
+                        //entrano nel DB
+                        final DTMWindow current=window;
+                        importer.setCommittedConsumer(new PointsConsumer() {
+                            @Override
+                            public void consume(PointBuffer batch) {
+                                current.add(batch);
+                            }
+                        });
+                    }
+                    long committed=importer.importPoints(dataReader);
+                    long failed=importer.getFailedRows();
+                    if(failed==0){
+                        status="Punti correttamente aggiunti al db.";
+                    }else{
+                        //i blocchi che il DB rifiuta vengono annullati e
+                        //l'importazione prosegue: il motivo e' nel log
+                        status=committed+" punti aggiunti al db, "+failed+
+                                " scartati perché il loro blocco non è stato inserito.";
+                    }
                 } catch (SQLException ex) {
-                    lblStatus.setText("Errore inserimento dei punti nel DB");
+                    status="Errore inserimento dei punti nel DB";
+                } catch (Exception ex) {
+                    status="Errore nel parsing del file dati";
                 }
                 this.setCursor(Cursor.DEFAULT_CURSOR);
-                lblStatus.setText("Punti correttamente aggiunti al db.");
+                lblStatus.setText(status);
            try{
                 //calculate data range
                 minN=dataDb.getMin(Axis.Northing);
@@ -530,6 +598,54 @@ public class MainForm extends javax.swing.JFrame {
         }
     }//GEN-LAST:event_btnLoadDataActionPerformed
 
+    /**
+     * Triangola tutto il database e scrive vertici e triangoli nel file
+     * scelto (vedi DTMCreator.StreamDelaunay). I punti non passano dalla
+     * memoria, quindi il database puo' essere grande quanto si vuole; la
+     * triangolazione gira su un altro thread e a lavoro finito il numero di
+     * triangoli scritti compare nello stato.
+     * @param evt
+     */
+    private void btnExportTinActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnExportTinActionPerformed
+        JFileChooser chooser = new JFileChooser("examples");
+        FileNameExtensionFilter filter = new FileNameExtensionFilter(
+            "Triangolazione (.tin)", "tin");
+        chooser.setFileFilter(filter);
+        if(chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        String name=chooser.getSelectedFile().getAbsolutePath();
+        if(!name.endsWith(".tin")) name+=".tin";
+        final String path=name;
+        final GisDb db=dataDb;
+        btnExportTin.setEnabled(false);
+        btnLoadData.setEnabled(false);
+        lblStatus.setText("Triangolazione del database in "+path+", attendere.");
+        new SwingWorker<Long, Void>() {
+            @Override
+            protected Long doInBackground() throws Exception {
+                return DTMCreator.StreamDelaunay(db, path);
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    lblStatus.setText(get()+" triangoli scritti in "+path);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException ex) {
+                    Logger.getLogger(MainForm.class.getName()).log(Level.SEVERE, null, ex.getCause());
+                    lblStatus.setText("Errore nell'esportazione della triangolazione.");
+                }
+                //il database puo' essere cambiato nel frattempo
+                if(db==dataDb){
+                    btnExportTin.setEnabled(true);
+                    btnLoadData.setEnabled(true);
+                }
+            }
+        }.execute();
+    }//GEN-LAST:event_btnExportTinActionPerformed
+
     private void originNActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_originNActionPerformed
         // TODO add your handling code here:
     }//GEN-LAST:event_originNActionPerformed
@@ -545,7 +661,7 @@ public class MainForm extends javax.swing.JFrame {
      * @param evt
      */
     private void btnRenderActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnRenderActionPerformed
-        LinkedList<DTMTriangle> res;
+        TriangleMesh res;
 
         /**
          * Quanti punti ci sono nella regione richiesta
@@ -625,25 +741,39 @@ public class MainForm extends javax.swing.JFrame {
         try{
             //Delaunay class requires a "range" given in terms of
             //top-left point and bottom-right point
-            double pE,pN;
-            pE=dataDb.getMaxPerturb(Axis.Easting);
-            pN=dataDb.getMaxPerturb(Axis.Northing);
-
-            //il range è più grande dei dati a causa della perturbazione
-            Point topleft = new Point(minE, maxN + pN);
-            Point bottomright = new Point(maxE + pE, minN);
-            Range r = new Range(topleft, bottomright);
             double[] minCoord = {minE, minN, dataDb.getMin(Axis.Height)};
             double[] maxCoord = {maxE, maxN, dataDb.getMax(Axis.Height)};
-            LinkedList<Point3d> data;
-            data = dataDb.getPoints(minN, minE, maxN, maxE);
-            //imposto coordinate relative al centro del Canvas3D
-            centrePoints(data, minCoord, maxCoord);
-            res = DTMCreator.PerturbDelaunay(data, r, pN, pE);
+            PointBuffer data;
+            Rtin rtin = null;
+            if(chkSliding.isSelected())
+            {
+                //la triangolazione della finestra precedente viene solo
+                //aggiornata: si leggono e si inseriscono i punti entrati
+                //e si tolgono quelli usciti. RTIN e TIN semplificata si
+                //dovrebbero ricostruire da capo, quindi la superficie e'
+                //a risoluzione piena
+                if(window == null) window = new DTMWindow(dataDb);
+                window.moveTo(minN, minE, maxN, maxE);
+                data = window.copyPoints();
+                centrePoints(data, minCoord, maxCoord);
+                res = window.mesh(data);
+            }
+            else
+            {
+                data = dataDb.getPoints(minN, minE, maxN, maxE);
+                //imposto coordinate relative al centro del Canvas3D
+                centrePoints(data, minCoord, maxCoord);
+                //i DTM a griglia vengono semplificati con una RTIN, il cui
+                //dettaglio cambia poi con lo zoom; i punti sparsi con una TIN
+                //che rispetta la tolleranza del primo piano
+                rtin = Rtin.build(data);
+                if(rtin != null) res = rtin.mesh(DTMEngine.OVERVIEW_TOLERANCE);
+                else res = DTMCreator.Simplify(data, DTMEngine.CLOSEUP_TOLERANCE);
+            }
             lblStatus.append("Triangulation terminated");
             lblStatus.update(lblStatus.getGraphics());
 
-            //res=DTMCreator.Delaunay(dataDb.getPoints(minN, minE, maxN, maxE),r);
+            //res=DTMCreator.Delaunay(dataDb.getPoints(minN, minE, maxN, maxE));
             lblStatus.append("\nRendering in progress...");
             lblStatus.update(lblStatus.getGraphics());
             //se è stato premuto per la prima volta il bottone
@@ -659,6 +789,7 @@ public class MainForm extends javax.swing.JFrame {
                 //nuovo DTM dal motore già esistente
                 engine.addDTM(res, dataDb.getName());
             }
+            engine.setRtin(rtin, DTMEngine.OVERVIEW_TOLERANCE);
             //costruisco la scena
             engine.createDTMScene();
             //la renderizzo
@@ -761,10 +892,12 @@ System.out.println(path);
     // Variables declaration - do not modify//GEN-BEGIN:variables
     private javax.swing.JButton btnCreateDb;
     private javax.swing.ButtonGroup btnCtrlFill;
+    private javax.swing.JButton btnExportTin;
     private javax.swing.JButton btnLoadData;
     private javax.swing.JButton btnOpenDb;
     private javax.swing.JButton btnRender;
     private javax.swing.JButton btnResetView;
+    private javax.swing.JCheckBox chkSliding;
     private javax.swing.JPanel contentPane;
     private javax.swing.JPanel controlPane;
     private javax.swing.JPanel dtmViewPane;
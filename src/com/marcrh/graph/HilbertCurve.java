@@ -0,0 +1,90 @@
+package com.marcrh.graph;
+
+/**
+ * Orders points along a Hilbert curve.<p>
+ * The square around the points is divided in 2^k x 2^k cells and the cells are
+ * numbered in the order the curve visits them: points that are close in the
+ * sequence are close in the plane, and unlike a Z-order curve the sequence
+ * never jumps across the square. Arrays indexed in this order keep nearby
+ * points in nearby memory, which is what the triangulators need to stay in the
+ * cache.
+ */
+public class HilbertCurve {
+	/**
+	 * Most bits of each coordinate of a cell.
+	 */
+	public static final int MAX_ORDER = 26;
+
+	private HilbertCurve(){
+	}
+
+	/**
+	 * The curve as a four state automaton, one entry for each state and pair of
+	 * bits (x, y) of a cell: the position of the quadrant along the curve in
+	 * the high two bits, the next state in the low two. A state tells whether
+	 * the quadrant is mirrored and whether x and y are swapped in it.
+	 */
+	private static final int CURVE[] = {
+			1, 4, 15, 8,
+			0, 14, 5, 9,
+			10, 13, 6, 3,
+			11, 7, 12, 2
+	};
+
+	/**
+	 * @param x Column of the cell, only the lowest <b>order</b> bits are used.
+	 * @param y Row of the cell, only the lowest <b>order</b> bits are used.
+	 * @param order The curve covers 2^order x 2^order cells, at most
+	 * {@link #MAX_ORDER}.
+	 * @return The position of the cell along the curve.
+	 */
+	public static long index(int x, int y, int order){
+		long d = 0;
+		int state = 0;
+		// a table lookup per level: the quadrants of random points make
+		// branches on their bits unpredictable
+		for(int i = order - 1; i >= 0; i--){
+			int e = CURVE[state << 2 | ((x >>> i) & 1) << 1 | ((y >>> i) & 1)];
+			d = d << 2 | (e >>> 2);
+			state = e & 3;
+		}
+		return d;
+	}
+
+	/**
+	 * Sorts the first <b>count</b> indices in <b>order</b> along the curve,
+	 * over the square around the points they refer to. The cells are about as
+	 * many as the points: points in the same cell keep their order.
+	 * @param px The <b>x</b> coordinates of the points.
+	 * @param py The <b>y</b> coordinates of the points.
+	 * @param order Indices into <b>px</b> and <b>py</b>.
+	 * @param keys Work array for the keys, at least <b>count</b> long.
+	 * @param sort The sort used for the keys.
+	 */
+	public static void sort(double px[], double py[], int order[], double keys[],
+			int count, RadixSort sort){
+		if(count < 2)return;
+		double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+		for(int i = 0; i < count; i++){
+			int p = order[i];
+			minX = Math.min(minX, px[p]);
+			maxX = Math.max(maxX, px[p]);
+			minY = Math.min(minY, py[p]);
+			maxY = Math.max(maxY, py[p]);
+		}
+		// 4^k cells for at most 4^k points
+		int k = Math.min(MAX_ORDER, (33 - Integer.numberOfLeadingZeros(count - 1)) / 2);
+		// square cells: the points may cover a thin strip
+		double side = Math.max(maxX - minX, maxY - minY);
+		double scale = side > 0 ? ((1 << k) - 1) / side : 0;
+		for(int i = 0; i < count; i++){
+			int p = order[i];
+			long d = index((int) ((px[p] - minX) * scale), (int) ((py[p] - minY) * scale), k);
+			// all the keys get the same exponent, so the sort only looks at
+			// the digits of d
+			keys[i] = 0x1p52 + d;
+		}
+		sort.sort(keys, order, 0, count);
+	}
+}
@@ -0,0 +1,164 @@
+package com.marcrh.graph;
+
+import java.util.Arrays;
+
+/**
+ * Growable structure-of-arrays point container.<p>
+ * Coordinates are kept in three parallel <b>double</b> arrays instead of one
+ * object per point, so a point costs 24 bytes of heap instead of the ~60 of a
+ * boxed point inside a linked list.
+ */
+public class PointBuffer {
+
+	private static final int DEFAULT_CAPACITY = 1024;
+
+	private double x[];
+	private double y[];
+	private double z[];
+	private int size;
+
+	/**
+	 * A new empty buffer with the default capacity.
+	 */
+	public PointBuffer(){
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * A new empty buffer able to hold <b>capacity</b> points before growing.
+	 * @param capacity Initial number of points.
+	 */
+	public PointBuffer(int capacity){
+		if(capacity<1)capacity = 1;
+		x = new double[capacity];
+		y = new double[capacity];
+		z = new double[capacity];
+	}
+
+	/**
+	 * Appends a point to the buffer, growing the arrays if needed.
+	 * @param px The <b>x</b> coordinate.
+	 * @param py The <b>y</b> coordinate.
+	 * @param pz The <b>z</b> coordinate.
+	 */
+	public void add(double px, double py, double pz){
+		if(size==x.length)grow(size+1);
+		x[size] = px;
+		y[size] = py;
+		z[size] = pz;
+		size++;
+	}
+
+	/**
+	 * Appends every point of <b>other</b> to this buffer.
+	 * @param other Buffer to copy the points from.
+	 */
+	public void addAll(PointBuffer other){
+		ensureCapacity(size+other.size);
+		System.arraycopy(other.x, 0, x, size, other.size);
+		System.arraycopy(other.y, 0, y, size, other.size);
+		System.arraycopy(other.z, 0, z, size, other.size);
+		size += other.size;
+	}
+
+	/**
+	 * Appends <b>count</b> points to be filled with {@link #set(int, double, double, double)}.
+	 * @return The index of the first of them.
+	 */
+	public int reserve(int count){
+		ensureCapacity(size+count);
+		int first = size;
+		size += count;
+		return first;
+	}
+
+	/**
+	 * Makes sure the buffer can hold <b>capacity</b> points without growing.
+	 * @param capacity Minimum number of points.
+	 */
+	public void ensureCapacity(int capacity){
+		if(capacity>x.length)grow(capacity);
+	}
+
+	private void grow(int minCapacity){
+		int capacity = x.length + (x.length>>1);
+		if(capacity<minCapacity)capacity = minCapacity;
+		x = Arrays.copyOf(x, capacity);
+		y = Arrays.copyOf(y, capacity);
+		z = Arrays.copyOf(z, capacity);
+	}
+
+	/**
+	 * Empties the buffer keeping the allocated arrays.
+	 */
+	public void clear(){
+		size = 0;
+	}
+
+	/**
+	 * Drops the points from <b>size</b> on, keeping the allocated arrays.
+	 * @param size The number of points left, not more than {@link #size()}.
+	 */
+	public void truncate(int size){
+		if(size<0||size>this.size)throw new RuntimeException("Invalid size "+size);
+		this.size = size;
+	}
+
+	public int size(){
+		return size;
+	}
+
+	public boolean isEmpty(){
+		return size==0;
+	}
+
+	public double getX(int index){
+		return x[index];
+	}
+
+	public double getY(int index){
+		return y[index];
+	}
+
+	public double getZ(int index){
+		return z[index];
+	}
+
+	/**
+	 * Overwrites the coordinates of the point at <b>index</b>.
+	 */
+	public void set(int index, double px, double py, double pz){
+		x[index] = px;
+		y[index] = py;
+		z[index] = pz;
+	}
+
+	/**
+	 * Backing array of the <b>x</b> coordinates. Only the first {@link #size()}
+	 * entries are meaningful and the array is replaced when the buffer grows.
+	 * @return the <b>x</b> array.
+	 */
+	public double[] getXArray(){
+		return x;
+	}
+
+	/**
+	 * @see #getXArray()
+	 * @return the <b>y</b> array.
+	 */
+	public double[] getYArray(){
+		return y;
+	}
+
+	/**
+	 * @see #getXArray()
+	 * @return the <b>z</b> array.
+	 */
+	public double[] getZArray(){
+		return z;
+	}
+
+	public String toString(){
+		return "PointBuffer --> " + size + " points";
+	}
+}
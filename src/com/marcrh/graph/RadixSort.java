@@ -0,0 +1,250 @@
+package com.marcrh.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stable LSD radix sort of <b>double</b> keys carrying an <b>int</b> index.<p>
+ * The keys are mapped to <b>long</b>s that compare like the doubles and sorted
+ * 11 bits at a time, so the work is linear and does not depend on how the
+ * input is ordered, and nothing is recursive. Passes over digits that are the
+ * same for every key (e.g. the exponent bits of distances of similar size)
+ * are skipped.<p>
+ * Big arrays are split in one chunk per thread: every chunk builds the
+ * histogram of its own keys and then scatters them to the offsets reserved
+ * for it, which keeps the sort stable.<p>
+ * The work arrays only grow and are kept between sorts, and so do the
+ * threads, which are daemons and end after a few idle seconds: sorting again
+ * and again arrays of similar size allocates nothing big and starts no
+ * threads. An instance must not run two sorts at the same time.
+ */
+public class RadixSort {
+
+	private static final int BITS = 11;
+	private static final int RADIX = 1 << BITS;
+	private static final int MASK = RADIX - 1;
+	/**
+	 * Below this size the sort runs on the calling thread.
+	 */
+	private static final int PARALLEL_THRESHOLD = 1 << 17;
+	/**
+	 * Seconds an idle thread of the pool waits for the next sort.
+	 */
+	private static final long KEEP_ALIVE = 5;
+
+	private final int parallelism;
+	/**
+	 * Threads of the chunks after the first one, which runs on the calling
+	 * thread; created by the first sort that needs it.
+	 */
+	private ThreadPoolExecutor pool;
+
+	/**
+	 * Work arrays: the mapped keys and the values, moved back and forth
+	 * between src and dst by the passes, and the digit counts of each chunk.
+	 */
+	private long src[] = new long[0];
+	private long dst[] = new long[0];
+	private int srcValues[] = new int[0];
+	private int dstValues[] = new int[0];
+	private int counts[][] = new int[0][];
+
+	/**
+	 * A sort using a thread per available processor.
+	 */
+	public RadixSort(){
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param parallelism Maximum number of threads used by a sort.
+	 */
+	public RadixSort(int parallelism){
+		if(parallelism<1)throw new IllegalArgumentException("Parallelism must be positive");
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Sorts <b>keys</b>[from, to) in ascending order, applying the same
+	 * permutation to <b>values</b>[from, to). Equal keys keep their order.
+	 * @param keys The keys, NaN is not allowed.
+	 * @param values The values moved along with the keys.
+	 * @param from Index of the first element to sort.
+	 * @param to Index after the last element to sort.
+	 */
+	public void sort(double keys[], int values[], int from, int to){
+		final int n = to - from;
+		if(n<2)return;
+
+		int chunks = n<PARALLEL_THRESHOLD ? 1 : Math.min(parallelism, n/(PARALLEL_THRESHOLD/4));
+		sort(keys, values, from, n, chunks, chunks>1 ? getPool() : null);
+	}
+
+	private ExecutorService getPool(){
+		if(pool==null){
+			final ThreadFactory threads = Executors.defaultThreadFactory();
+			pool = new ThreadPoolExecutor(parallelism-1, parallelism-1, KEEP_ALIVE, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(), new ThreadFactory(){
+						public Thread newThread(Runnable r){
+							Thread t = threads.newThread(r);
+							t.setDaemon(true);
+							return t;
+						}
+					});
+			// an instance that is not used any more leaves no threads behind
+			pool.allowCoreThreadTimeOut(true);
+		}
+		return pool;
+	}
+
+	private void sort(final double keys[], final int values[], final int from, final int n,
+			final int chunks, ExecutorService pool){
+		if(src.length<n){
+			src = new long[n];
+			dst = new long[n];
+			srcValues = new int[n];
+			dstValues = new int[n];
+		}
+		if(counts.length<chunks)counts = new int[chunks][RADIX];
+		final long src[] = this.src;
+		final int srcValues[] = this.srcValues;
+		final int bounds[] = new int[chunks+1];
+		for(int c=1; c<=chunks; c++)bounds[c] = (int)((long)n*c/chunks);
+
+		// map the keys and find which bits change at all
+		final long or[] = new long[chunks];
+		final long and[] = new long[chunks];
+		run(pool, chunks, new Chunk(){
+			void run(int c){
+				long o = 0, a = -1L;
+				for(int i=bounds[c]; i<bounds[c+1]; i++){
+					long k = toSortable(keys[from+i]);
+					src[i] = k;
+					srcValues[i] = values[from+i];
+					o |= k;
+					a &= k;
+				}
+				or[c] = o;
+				and[c] = a;
+			}
+		});
+		long varying = 0, constant = -1L;
+		for(int c=0; c<chunks; c++){
+			varying |= or[c];
+			constant &= and[c];
+		}
+		varying ^= constant;
+
+		long sk[] = src, dk[] = dst;
+		int sv[] = srcValues, dv[] = dstValues;
+		for(int shift=0; shift<64; shift+=BITS){
+			if(((varying>>>shift)&MASK)==0)continue;
+			pass(pool, chunks, bounds, counts, shift, sk, sv, dk, dv);
+			long tk[] = sk; sk = dk; dk = tk;
+			int tv[] = sv; sv = dv; dv = tv;
+		}
+
+		for(int i=0; i<n; i++){
+			keys[from+i] = fromSortable(sk[i]);
+			values[from+i] = sv[i];
+		}
+	}
+
+	/**
+	 * Moves the elements from (sk, sv) to (dk, dv) ordered by the digit at
+	 * <b>shift</b>.
+	 */
+	private void pass(ExecutorService pool, final int chunks, final int bounds[],
+			final int counts[][], final int shift,
+			final long sk[], final int sv[], final long dk[], final int dv[]){
+		run(pool, chunks, new Chunk(){
+			void run(int c){
+				int count[] = counts[c];
+				Arrays.fill(count, 0);
+				for(int i=bounds[c]; i<bounds[c+1]; i++)count[(int)(sk[i]>>>shift)&MASK]++;
+			}
+		});
+
+		// every chunk writes its keys of a digit after those of the chunks before it
+		int offset = 0;
+		for(int d=0; d<RADIX; d++){
+			for(int c=0; c<chunks; c++){
+				int count = counts[c][d];
+				counts[c][d] = offset;
+				offset += count;
+			}
+		}
+
+		run(pool, chunks, new Chunk(){
+			void run(int c){
+				int next[] = counts[c];
+				for(int i=bounds[c]; i<bounds[c+1]; i++){
+					int j = next[(int)(sk[i]>>>shift)&MASK]++;
+					dk[j] = sk[i];
+					dv[j] = sv[i];
+				}
+			}
+		});
+	}
+
+	/**
+	 * A piece of work done once per chunk.
+	 */
+	private abstract static class Chunk {
+		abstract void run(int chunk);
+	}
+
+	/**
+	 * Runs <b>work</b> for every chunk and waits for all of them, the first
+	 * chunk, or all of them when there is no pool, on the calling thread.
+	 */
+	private static void run(ExecutorService pool, int chunks, final Chunk work){
+		if(pool==null){
+			for(int c=0; c<chunks; c++)work.run(c);
+			return;
+		}
+		List<Future<Object>> done = new ArrayList<Future<Object>>(chunks-1);
+		for(int c=1; c<chunks; c++){
+			final int chunk = c;
+			done.add(pool.submit(new Callable<Object>(){
+				public Object call(){
+					work.run(chunk);
+					return null;
+				}
+			}));
+		}
+		work.run(0);
+		try{
+			for(Future<Object> f : done)f.get();
+		}catch(InterruptedException ie){
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Sort interrupted", ie);
+		}catch(ExecutionException ee){
+			if(ee.getCause() instanceof RuntimeException)throw (RuntimeException)ee.getCause();
+			throw new RuntimeException(ee.getCause());
+		}
+	}
+
+	/**
+	 * Maps a double to a long with the same order: positive numbers get the
+	 * sign bit set, negative ones have every bit flipped.
+	 */
+	static long toSortable(double d){
+		long bits = Double.doubleToLongBits(d);
+		return bits ^ ((bits>>63) | Long.MIN_VALUE);
+	}
+
+	static double fromSortable(long k){
+		return Double.longBitsToDouble(k ^ ((~k>>63) | Long.MIN_VALUE));
+	}
+}
@@ -6,6 +6,12 @@ import java.util.Random;
 
 public class Utils {
 	
+	/**
+	 * Sort shared by the calls of {@link #sort(double[], int[], int, int)}:
+	 * its work arrays and threads are kept between them.
+	 */
+	private static final RadixSort SORT = new RadixSort();
+
 	public static ArrayList<Point> generateRandomPoints(int size, Range range) {
 		Random random = new Random();
 		ArrayList<Point> points = new ArrayList<Point>(size);
@@ -50,8 +56,23 @@ public class Utils {
 		}
 	}
 	
+	/**
+	 * Sorts <b>dist</b> in ascending order and <b>indexlist</b> along with it.
+	 * @see RadixSort
+	 */
 	public static void sort(double dist[], int indexlist[]){
-		quicksort(dist, indexlist, 0, dist.length-1);		
+		sort(dist, indexlist, 0, dist.length);
+	}
+
+	/**
+	 * Sorts <b>dist</b>[from, to) in ascending order and <b>indexlist</b>[from, to) along with it.
+	 * @see RadixSort
+	 */
+	public static void sort(double dist[], int indexlist[], int from, int to){
+		// an instance runs one sort at a time
+		synchronized(SORT){
+			SORT.sort(dist, indexlist, from, to);
+		}
 	}
 	
 	public static void quicksort(double matrix[], int indexList[], int a, int b) {
@@ -0,0 +1,297 @@
+package com.marcrh.graph.delaunay;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Runs the flips of {@link Triangulator#legalise(TriadStore, int)} on several threads.<p>
+ * Every thread starts with its own range of triads on its own stack and works like the
+ * sequential legalisation: it tests a triad against its neighbours and, after a flip,
+ * pushes the two flipped triads on its stack. Before testing a triad a thread takes
+ * ownership of it and of its neighbours with a compare-and-set, and flipTriangle
+ * claims the only other triad a flip changes (see {@link Triangulator#claim(int)}),
+ * so two threads never touch the same triad. A triad that cannot be taken is put
+ * aside and tried again when the stack is empty; nothing is held while waiting, so
+ * the threads cannot deadlock.<p>
+ * The flips are the same Lawson flips of the sequential pass, only in another order.
+ * The flip test breaks the ties between cocircular points with a symbolic
+ * perturbation (see {@link TriadStore#isInCircumcircle(int, int, double[], double[])}),
+ * so the result is the same triangulation as the sequential one, diagonals
+ * between cocircular points included; only the triad indices can differ.<p>
+ * The threads, the workers and the work arrays are kept from one legalisation
+ * to the next, like those of {@link com.marcrh.graph.RadixSort}: the threads
+ * are daemons and end after a few idle seconds, and the arrays only grow. An
+ * instance runs one legalisation at a time.
+ */
+class ConcurrentLegaliser {
+	private static final int FREE = 0;
+	/**
+	 * Seconds an idle thread of the pool waits for the next legalisation.
+	 */
+	private static final long KEEP_ALIVE = 5;
+
+	private final int threads;
+	/**
+	 * Created by the first legalisation.
+	 */
+	private ThreadPoolExecutor pool;
+	private List<Worker> workers;
+
+	/*
+	 * The legalisation running, null between two calls.
+	 */
+	private double px[];
+	private double py[];
+	private int numPoints;
+	private TriadStore triads;
+
+	/**
+	 * Id of the thread owning each triad, {@link #FREE} if none. All the
+	 * triads are free between two calls.
+	 */
+	private AtomicIntegerArray owner = new AtomicIntegerArray(0);
+	/**
+	 * The triad each triad was last flipped with.
+	 */
+	private int partner[] = new int[0];
+
+	/**
+	 * @param threads Number of threads.
+	 */
+	ConcurrentLegaliser(int threads) {
+		this.threads = threads;
+	}
+
+	/**
+	 * Flip triangles that do not satisfy the Delaunay condition until none is left.
+	 * @param px The <b>x</b> coordinates of the points.
+	 * @param py The <b>y</b> coordinates of the points.
+	 * @param numPoints How many points are used.
+	 * @param triads The triangulation to make Delaunay.
+	 * @param first Index of the first triad to test, the ones before it are
+	 * assumed to be Delaunay already.
+	 * @return Number of flips
+	 */
+	int legalise(double px[], double py[], int numPoints, TriadStore triads,
+			int first) {
+		this.px = px;
+		this.py = py;
+		this.numPoints = numPoints;
+		this.triads = triads;
+		int numt = triads.size();
+		if (owner.length() < numt) {
+			owner = new AtomicIntegerArray(numt);
+			partner = new int[numt];
+		}
+		Arrays.fill(partner, 0, numt, -1);
+		if (workers == null) {
+			workers = new ArrayList<Worker>(threads);
+			for (int k = 0; k < threads; k++)
+				workers.add(new Worker(k + 1));
+		}
+		for (int k = 0; k < threads; k++) {
+			int from = first + (int) ((long) (numt - first) * k / threads);
+			int to = first + (int) ((long) (numt - first) * (k + 1) / threads);
+			workers.get(k).reset(from, to, numt);
+		}
+
+		boolean done = false;
+		try {
+			int flipped = 0;
+			for (Future<Integer> f : getPool().invokeAll(workers))
+				flipped += f.get();
+			done = true;
+			return flipped;
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Legalisation interrupted", ie);
+		} catch (ExecutionException ee) {
+			if (ee.getCause() instanceof Error)
+				throw (Error) ee.getCause();
+			throw (RuntimeException) ee.getCause();
+		} finally {
+			this.px = this.py = null;
+			this.triads = null;
+			for (Worker w : workers)
+				w.release();
+			if (!done) {
+				// a worker may still be running or hold triads: share nothing
+				// with it
+				pool.shutdownNow();
+				pool = null;
+				workers = null;
+				owner = new AtomicIntegerArray(0);
+				partner = new int[0];
+			}
+		}
+	}
+
+	private ExecutorService getPool() {
+		if (pool == null) {
+			final ThreadFactory factory = Executors.defaultThreadFactory();
+			pool = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+						public Thread newThread(Runnable r) {
+							Thread t = factory.newThread(r);
+							t.setDaemon(true);
+							return t;
+						}
+					});
+			// a triangulator that is not used any more leaves no threads behind
+			pool.allowCoreThreadTimeOut(true);
+		}
+		return pool;
+	}
+
+	/**
+	 * A thread of the legalisation. It is a {@link Triangulator} to reuse flipTriangle
+	 * with its own work array and with claim() taking ownership of the triads.
+	 */
+	private class Worker extends Triangulator implements Callable<Integer> {
+		private final int id;
+		private int stack[] = new int[16];
+		private int top;
+		/**
+		 * Triads that were in use by another thread.
+		 */
+		private int deferred[] = new int[16];
+		private int deferredTop;
+		/**
+		 * Triads on the stack or deferred.
+		 */
+		private long queued[] = new long[0];
+		/**
+		 * Triads owned for the current test: the tested one, its neighbours and
+		 * the one claimed by flipTriangle.
+		 */
+		private final int locked[] = new int[5];
+		private int numLocked;
+
+		Worker(int id) {
+			this.id = id;
+		}
+
+		/**
+		 * Seeds the stack with the triads [from, to) of the legalisation.
+		 */
+		void reset(int from, int to, int numt) {
+			setPoints(px, py, numPoints);
+			if (stack.length < to - from)
+				stack = new int[to - from];
+			top = 0;
+			deferredTop = 0;
+			numLocked = 0;
+			int words = (numt + 63) >>> 6;
+			if (queued.length < words)
+				queued = new long[words];
+			else
+				Arrays.fill(queued, 0, words, 0L);
+			for (int t = to - 1; t >= from; t--) {
+				stack[top++] = t;
+				queued[t >>> 6] |= 1L << t;
+			}
+		}
+
+		/**
+		 * Drops the points of the last legalisation.
+		 */
+		void release() {
+			setPoints(null, null, 0);
+		}
+
+		public Integer call() {
+			int flipped = 0;
+			while (true) {
+				if (top == 0) {
+					if (deferredTop == 0)
+						break;
+					// try again what the other threads were using
+					int tmp[] = stack;
+					stack = deferred;
+					top = deferredTop;
+					deferred = tmp;
+					deferredTop = 0;
+					Thread.yield();
+				}
+				int t = stack[--top];
+				if (!lock(t)) {
+					defer(t);
+					continue;
+				}
+
+				// see Triangulator.legalise
+				int last = partner[t];
+				int t2 = flipTriangle(triads, t,
+						last > -1 && partner[last] == t ? last : -1);
+				if (t2 == BUSY) {
+					defer(t);
+				} else {
+					queued[t >>> 6] &= ~(1L << t);
+					if (t2 > -1) {
+						partner[t] = t2;
+						partner[t2] = t;
+						flipped++;
+						push(t2);
+						push(t);
+					}
+				}
+				unlock();
+			}
+			return flipped;
+		}
+
+		private void push(int t) {
+			if ((queued[t >>> 6] & (1L << t)) != 0)
+				return;
+			queued[t >>> 6] |= 1L << t;
+			if (top == stack.length)
+				stack = Arrays.copyOf(stack, top * 2);
+			stack[top++] = t;
+		}
+
+		private void defer(int t) {
+			if (deferredTop == deferred.length)
+				deferred = Arrays.copyOf(deferred, deferredTop * 2);
+			deferred[deferredTop++] = t;
+		}
+
+		/**
+		 * Takes the triad and its neighbours, or nothing.
+		 */
+		private boolean lock(int t) {
+			if (claim(t) && claim(triads.ab[t]) && claim(triads.bc[t])
+					&& claim(triads.ac[t]))
+				return true;
+			unlock();
+			return false;
+		}
+
+		private void unlock() {
+			while (numLocked > 0)
+				owner.lazySet(locked[--numLocked], FREE);
+		}
+
+		@Override
+		boolean claim(int triadIndex) {
+			if (triadIndex < 0)
+				return true;
+			if (owner.compareAndSet(triadIndex, FREE, id)) {
+				locked[numLocked++] = triadIndex;
+				return true;
+			}
+			// it may be ours already
+			return owner.get(triadIndex) == id;
+		}
+	}
+}
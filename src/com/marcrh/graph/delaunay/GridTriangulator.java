@@ -0,0 +1,149 @@
+package com.marcrh.graph.delaunay;
+
+import com.marcrh.graph.PointBuffer;
+
+/**
+ * Delaunay triangulation of points on every node of a regular grid, such as
+ * the cells of a raster DTM, built cell by cell in linear time: nothing is
+ * sorted and nothing is flipped.<p>
+ * Each cell becomes two triads. Its diagonal is the one chosen by the flip test
+ * of {@link TriadStore#isInCircumcircle(int, int, double[], double[])}, whose
+ * perturbation picks one of the two when the four nodes are cocircular, so the
+ * result has the same triangles as {@link Triangulator} on the same points.<p>
+ * The nodes may be a little off their place, e.g. coordinates rounded when they
+ * were stored. So the triads are checked before they are returned: they must all
+ * turn the same way, every edge between two cells must pass the flip test, and
+ * the border must be convex. If any check fails the points are not triangulated
+ * and the caller must use a {@link Triangulator}.
+ */
+public final class GridTriangulator {
+
+	private GridTriangulator() {
+	}
+
+	/**
+	 * @param points The points.
+	 * @param columns Number of nodes along <b>x</b>, at least 2.
+	 * @param rows Number of nodes along <b>y</b>, at least 2.
+	 * @param node Index in <b>points</b> of the point on each node, the node at
+	 * column <b>i</b> and row <b>j</b> in <b>node</b>[j * columns + i]. Columns
+	 * go towards growing <b>x</b>, rows towards growing <b>y</b>.
+	 * @return The triads, whose vertices are indexes of <b>points</b>; null if
+	 * they would not be a Delaunay triangulation of the points on the nodes.
+	 */
+	public static TriadStore triangulate(PointBuffer points, int columns, int rows,
+			int node[]) {
+		if (columns < 2 || rows < 2)
+			throw new IllegalArgumentException("The grid must have at least 2 columns and 2 rows");
+		if (node.length < columns * rows)
+			throw new IllegalArgumentException("There must be a point on every node");
+		for (int k = 0; k < columns * rows; k++) {
+			if (node[k] < 0 || node[k] >= points.size())
+				throw new IllegalArgumentException("There must be a point on every node");
+		}
+		double px[] = points.getXArray();
+		double py[] = points.getYArray();
+
+		// cell (i, j) is made of triads 2k and 2k + 1, k = j * (columns - 1) + i
+		int cells = (columns - 1) * (rows - 1);
+		TriadStore triads = new TriadStore(2 * cells);
+		boolean rising[] = new boolean[cells];
+		for (int j = 0, k = 0; j < rows - 1; j++) {
+			for (int i = 0; i < columns - 1; i++, k++) {
+				int v00 = node[j * columns + i], v10 = node[j * columns + i + 1];
+				int v01 = node[(j + 1) * columns + i], v11 = node[(j + 1) * columns + i + 1];
+				int t = triads.add(v00, v10, v11, px, py);
+				if (triads.isInCircumcircle(t, v01, px, py)) {
+					// the other diagonal, from v10 to v01
+					triads.set(t, v00, v10, v01, -1, -1, -1, px, py);
+					triads.add(v10, v11, v01, px, py);
+				} else {
+					rising[k] = true;
+					triads.add(v00, v11, v01, px, py);
+				}
+				int lower = 2 * k, upper = 2 * k + 1;
+				if (rising[k]) {
+					triads.setAdjacent(lower, v00, v11, upper);
+					triads.setAdjacent(upper, v00, v11, lower);
+				} else {
+					triads.setAdjacent(lower, v10, v01, upper);
+					triads.setAdjacent(upper, v10, v01, lower);
+				}
+				if (!turnsLeft(triads, lower, px, py) || !turnsLeft(triads, upper, px, py))
+					return null;
+			}
+		}
+
+		// the triad of a cell on each of its sides: the bottom side is always
+		// in the lower one, the top side in the upper one
+		for (int j = 0, k = 0; j < rows - 1; j++) {
+			for (int i = 0; i < columns - 1; i++, k++) {
+				if (i > 0) {
+					int u = node[j * columns + i], v = node[(j + 1) * columns + i];
+					int t = rising[k] ? 2 * k + 1 : 2 * k;
+					int s = rising[k - 1] ? 2 * (k - 1) : 2 * (k - 1) + 1;
+					if (!join(triads, t, s, u, v, px, py))
+						return null;
+				}
+				if (j > 0) {
+					int u = node[j * columns + i], v = node[j * columns + i + 1];
+					if (!join(triads, 2 * k, 2 * (k - columns + 1) + 1, u, v, px, py))
+						return null;
+				}
+			}
+		}
+
+		if (!isConvex(px, py, columns, rows, node))
+			return null;
+		return triads;
+	}
+
+	/**
+	 * Makes <b>t</b> and <b>s</b> neighbours across <b>u</b>-<b>v</b>.
+	 * @return Whether the edge passes the flip test.
+	 */
+	private static boolean join(TriadStore triads, int t, int s, int u, int v,
+			double px[], double py[]) {
+		triads.setAdjacent(t, u, v, s);
+		triads.setAdjacent(s, u, v, t);
+		return !triads.isInCircumcircle(t, opposite(triads, s, u, v), px, py);
+	}
+
+	private static int opposite(TriadStore triads, int t, int u, int v) {
+		int a = triads.a[t], b = triads.b[t];
+		if (a != u && a != v)
+			return a;
+		if (b != u && b != v)
+			return b;
+		return triads.c[t];
+	}
+
+	private static boolean turnsLeft(TriadStore triads, int t, double px[], double py[]) {
+		int a = triads.a[t], b = triads.b[t], c = triads.c[t];
+		return Predicates.orient2d(px[a], py[a], px[b], py[b], px[c], py[c]) > 0;
+	}
+
+	/**
+	 * Walks the border counterclockwise: no node may turn right. Nodes in line
+	 * are fine, their edges are on the hull anyway.
+	 */
+	private static boolean isConvex(double px[], double py[], int columns, int rows,
+			int node[]) {
+		int border[] = new int[2 * (columns + rows) - 4];
+		int n = 0;
+		for (int i = 0; i < columns - 1; i++)
+			border[n++] = node[i];
+		for (int j = 0; j < rows - 1; j++)
+			border[n++] = node[j * columns + columns - 1];
+		for (int i = columns - 1; i > 0; i--)
+			border[n++] = node[(rows - 1) * columns + i];
+		for (int j = rows - 1; j > 0; j--)
+			border[n++] = node[j * columns];
+		for (int k = 0; k < n; k++) {
+			int a = border[k], b = border[(k + 1) % n], c = border[(k + 2) % n];
+			if (Predicates.orient2d(px[a], py[a], px[b], py[b], px[c], py[c]) < 0)
+				return false;
+		}
+		return true;
+	}
+}
@@ -1,94 +1,195 @@
 package com.marcrh.graph.delaunay;
 
-import java.util.LinkedList;
-import java.util.List;
+import java.util.Arrays;
 
-import com.marcrh.graph.Point;
+/**
+ * Hull represents the convex hull of the points added so far by the sweep of the
+ * {@link Triangulator}, and keeps track of the triad adjacent to each of its edges.<p>
+ * The hull is a circular doubly linked list stored in arrays indexed by point index
+ * (a point is on the hull at most once), so a vertex is inserted or removed in O(1).
+ * An angular hash of the hull vertices around the seed circumcentre gives a vertex
+ * close to the edges visible from a new point, as in the s-hull paper, so the first
+ * visible edge is found in near constant time instead of scanning the whole hull.
+ */
+class Hull {
+	private double px[];
+	private double py[];
 
-    /** 
-     * Vertices belonging to the convex hull need to maintain a point and triad index
-     */
-    class HullPoint extends Point
-    {
-        public int pointsIndex;
-        public int triadIndex;
+	/**
+	 * Next and previous hull vertex of each point, -1 when the point is not on the hull.
+	 */
+	int next[] = new int[0];
+	int prev[] = new int[0];
+	/**
+	 * Index of the triad adjacent to the edge from each hull vertex to the next one.
+	 */
+	int triad[] = new int[0];
+	/**
+	 * A vertex on the hull, where traversals start.
+	 */
+	int start;
+	private int size;
 
-        public HullPoint(List<? extends Point> points, int pointIndex)
-        {
-        	Point p = points.get(pointIndex);
-            x = p.x;
-            y = p.y;
-            this.pointsIndex = pointIndex;
-            triadIndex = 0;
-        }
-    }
+	/**
+	 * Hull vertices by pseudo-angle around (<b>centreX</b>, <b>centreY</b>),
+	 * in the first <b>hashSize</b> entries.
+	 * Entries of vertices that left the hull are stale and skipped.
+	 */
+	private int hash[] = new int[0];
+	private int hashSize;
+	private double centreX;
+	private double centreY;
 
-    /**
-     * Hull represents a list of vertices in the convex hull, and keeps track of their indices (into the associated points list) and triads
-     */
-    class Hull extends LinkedList<HullPoint>
-    {
-    	private Point auxiliar = new Point();
-    	
-    	public Hull(){    		
-    	}
-    	
-    	public void removeRange(int startIndex, int toIndex){    		
-    		super.removeRange(startIndex, toIndex);
-    	}
-    	
-        private int nextIndex(int index)
-        {
-            if (index == size() - 1)
-                return 0;
-            else
-                return index + 1;
-        }
+	/**
+	 * An empty hull.
+	 * @see #reset(double[], double[], int, double, double)
+	 */
+	Hull(double px[], double py[], int numPoints, double centreX, double centreY) {
+		reset(px, py, numPoints, centreX, centreY);
+	}
 
-        /**
-         * Assign to vector {@link Point} the vector values from the current index Hull point to the next indexed point.
-         * @param index To the Hull point origin of the vector.
-         * @param vector {@link Point} to retain the vector value.
-         */
-        public void vectorToNext(int index, Point vector)
-        {
-            Point et = this.get(index);            		
-            Point en = this.get(nextIndex(index));
-            
-            vector.x = en.x - et.x;
-            vector.y = en.y - et.y;
-        }
-        
-        /**
-         * Return whether the hull Point at index is visible from the supplied coordinates
-         * @param index
-         * @param dx
-         * @param dy
-         * @return
-         */
-        public boolean edgeVisibleFrom(int index, double dx, double dy)
-        {            
-            vectorToNext(index, auxiliar);
+	/**
+	 * Empties the hull for another set of points. The arrays are kept if they
+	 * are big enough.
+	 * @param px The <b>x</b> coordinates of the points.
+	 * @param py The <b>y</b> coordinates of the points.
+	 * @param numPoints How many points may be added.
+	 * @param centreX The <b>x</b> of the centre of the angular hash.
+	 * @param centreY The <b>y</b> of the centre of the angular hash.
+	 */
+	void reset(double px[], double py[], int numPoints, double centreX, double centreY) {
+		this.px = px;
+		this.py = py;
+		if (next.length < numPoints) {
+			next = new int[numPoints];
+			prev = new int[numPoints];
+			triad = new int[numPoints];
+		}
+		Arrays.fill(next, 0, numPoints, -1);
+		Arrays.fill(prev, 0, numPoints, -1);
+		hashSize = Math.max(1, (int) Math.ceil(Math.sqrt(numPoints)));
+		if (hash.length < hashSize)
+			hash = new int[hashSize];
+		Arrays.fill(hash, 0, hashSize, -1);
+		this.centreX = centreX;
+		this.centreY = centreY;
+	}
 
-            double crossProduct = -dy * auxiliar.x + dx * auxiliar.y;
-            return crossProduct < 0;
-        }
+	/**
+	 * Starts the hull with the triangle <b>a</b>, <b>b</b>, <b>c</b>, in this order.
+	 * @param triadIndex Index of the triad of the triangle.
+	 */
+	void init(int a, int b, int c, int triadIndex) {
+		next[a] = b;
+		next[b] = c;
+		next[c] = a;
+		prev[b] = a;
+		prev[c] = b;
+		prev[a] = c;
+		triad[a] = triadIndex;
+		triad[b] = triadIndex;
+		triad[c] = triadIndex;
+		start = a;
+		size = 3;
+		hash(a);
+		hash(b);
+		hash(c);
+	}
 
-        /**
-         * Return whether the hull Point at index is visible from the point
-         * @param index
-         * @param point
-         * @return
-         */
-        public boolean edgeVisibleFrom(int index, Point point)
-        {
-            vectorToNext(index, auxiliar);
+	int size() {
+		return size;
+	}
 
-            Point et = this.get(index);
-            double dx = point.x - et.x;
-            double dy = point.y - et.y;
+	/**
+	 * Return whether the edge from the hull vertex <b>e</b> to the next one is visible from the point
+	 * @param e Hull vertex at the start of the edge.
+	 * @param x The <b>x</b> coordinate of the point.
+	 * @param y The <b>y</b> coordinate of the point.
+	 * @return true if the point is on the outer side of the edge.
+	 */
+	boolean edgeVisibleFrom(int e, double x, double y) {
+		int n = next[e];
+		// the ring is clockwise: the outside is on the left of each edge.
+		// Exact, so a point aligned with an edge never sees it
+		return Predicates.orient2d(px[e], py[e], px[n], py[n], x, y) > 0;
+	}
 
-            double crossProduct = -dy * auxiliar.x + dx * auxiliar.y;
-            return crossProduct < 0;
-        }
-    }
+	/**
+	 * Finds the first edge (in hull order) of the chain of edges visible from the point.
+	 * @param x The <b>x</b> coordinate of the point.
+	 * @param y The <b>y</b> coordinate of the point.
+	 * @return The hull vertex at the start of that edge, or -1 if no edge is visible.
+	 */
+	int findVisibleEdge(double x, double y) {
+		int key = hashKey(x, y);
+		int s = start;
+		for (int j = 0; j < hashSize; j++) {
+			int h = hash[(key + j) % hashSize];
+			if (h != -1 && next[h] != -1) {
+				s = h;
+				break;
+			}
+		}
+
+		// Walk forwards to a visible edge...
+		int e = prev[s];
+		int steps = 0;
+		while (!edgeVisibleFrom(e, x, y)) {
+			e = next[e];
+			if (++steps > size)
+				return -1;
+		}
+		// ...then backwards to the first one of the chain
+		steps = 0;
+		while (edgeVisibleFrom(prev[e], x, y)) {
+			e = prev[e];
+			if (++steps > size)
+				return -1;
+		}
+		return e;
+	}
+
+	/**
+	 * Replaces the vertices strictly between <b>first</b> and <b>last</b> with the point <b>v</b>.
+	 * @param v The new hull vertex.
+	 * @param first The hull vertex that will precede <b>v</b>.
+	 * @param last The hull vertex that will follow <b>v</b>.
+	 */
+	void insert(int v, int first, int last) {
+		int e = next[first];
+		while (e != last) {
+			int n = next[e];
+			next[e] = -1;
+			prev[e] = -1;
+			size--;
+			e = n;
+		}
+		next[first] = v;
+		prev[v] = first;
+		next[v] = last;
+		prev[last] = v;
+		size++;
+		start = first;
+		hash(v);
+		hash(first);
+	}
+
+	private void hash(int v) {
+		hash[hashKey(px[v], py[v])] = v;
+	}
+
+	/**
+	 * Bucket of the pseudo-angle of the point around the centre: monotone with the
+	 * real angle, without trigonometric functions.
+	 */
+	private int hashKey(double x, double y) {
+		double dx = x - centreX;
+		double dy = y - centreY;
+		double p = dx / (Math.abs(dx) + Math.abs(dy));
+		double angle = (dy > 0 ? 3 - p : 1 + p) / 4; // in [0, 1]
+		int key = (int) (angle * hashSize);
+		if (key < 0)
+			return 0;
+		return key < hashSize ? key : hashSize - 1;
+	}
+}
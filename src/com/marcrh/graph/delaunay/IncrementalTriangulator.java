@@ -0,0 +1,755 @@
+package com.marcrh.graph.delaunay;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import com.marcrh.graph.PointBuffer;
+import com.marcrh.graph.RadixSort;
+
+/**
+ * Delaunay triangulation that grows by batches of points.<p>
+ * Every point is inserted with {@link PointInserter}: located with a walk from
+ * the triads of the point inserted before it and inserted in the triad it falls
+ * in, or connected to the hull edges it sees when it is outside, as in the sweep
+ * of the {@link Triangulator}. An insertion costs the triads it changes, not the
+ * size of the triangulation, so a few points are added to a big triangulation
+ * without building it again. The points of a batch go in in rounds of doubling
+ * size drawn at random, each sorted along a Z-order curve (a "biased randomised
+ * insertion order"): consecutive points are close, so the walks are short, and
+ * sorted input such as the rows of a grid does not build fans as wide as the
+ * grid. The first round is as big as the triangulation the batch goes in, so
+ * a small batch is just sorted.<p>
+ * The triangulation can start empty or from the triads of
+ * {@link Triangulator#getTriadStore(PointBuffer, boolean)}. Its vertices are the
+ * points of a {@link PointBuffer}, used in place: a batch is appended to the
+ * buffer. A point on top of another one is left out of the triangulation, as the
+ * points of the first batches while they are all aligned.
+ */
+public class IncrementalTriangulator {
+	/**
+	 * Least points in the first round of a batch; every other round is twice
+	 * as big.
+	 */
+	private static final int FIRST_ROUND = 64;
+	/**
+	 * Bits of each coordinate in the Z-order keys: two of them fit in the
+	 * mantissa of a double.
+	 */
+	private static final int KEY_BITS = 26;
+
+	/**
+	 * The vertices, and their <b>x</b> and <b>y</b> arrays.
+	 */
+	PointBuffer points;
+	double px[];
+	double py[];
+	/**
+	 * The hull, a clockwise ring: next and previous vertex of each vertex, -1 if
+	 * it is not on the hull, and the triad inside the edge to the next one.
+	 */
+	int next[] = new int[0];
+	int prev[] = new int[0];
+	int edgeTriad[] = new int[0];
+	int hullSize;
+	/**
+	 * A vertex on the hull.
+	 */
+	int hullStart;
+
+	/**
+	 * The triads, null until there are three points that are not collinear.
+	 * The neighbour across an edge on the hull is -1; any other negative value
+	 * is a triad that was taken out of the store (see
+	 * {@link #compact(int[], int)}).
+	 */
+	TriadStore triads;
+	private PointInserter inserter;
+	/**
+	 * Where the next walk starts: a triad close to the last point.
+	 */
+	private int start;
+	private int chain[] = new int[16];
+	private int outer[] = new int[16];
+
+	private final Random random = new Random(1);
+	private final RadixSort sort = new RadixSort(1);
+	private int order[] = new int[0];
+	private double keys[] = new double[0];
+
+	/**
+	 * Triads changed by the last batch, new ones included.
+	 */
+	private int changed[] = new int[64];
+	private int numChanged;
+	/**
+	 * Batch that last recorded each triad in {@link #changed}.
+	 */
+	private int stamp[] = new int[0];
+	private int numBatches;
+
+	private long numSkipped;
+
+	/**
+	 * An empty triangulation.
+	 */
+	public IncrementalTriangulator() {
+		this(new PointBuffer());
+	}
+
+	private IncrementalTriangulator(PointBuffer points) {
+		this.points = points;
+		px = points.getXArray();
+		py = points.getYArray();
+		growHull(points.size());
+	}
+
+	/**
+	 * Continues an existing triangulation.
+	 * @param points The vertices of the triangulation. The buffer is used in
+	 * place: the points added later are appended to it.
+	 * @param triads A Delaunay triangulation of the points, like the one of
+	 * {@link Triangulator#getTriadStore(PointBuffer, boolean)}. The store is
+	 * used in place too.
+	 */
+	public IncrementalTriangulator(PointBuffer points, TriadStore triads) {
+		this(points);
+		if (triads.size() == 0)
+			return;
+		this.triads = triads;
+		inserter = new PointInserter(triads, px, py, points.size());
+		buildHull();
+		start = triads.size() - 1;
+	}
+
+	/**
+	 * Puts the edges of the triads without a neighbour on the hull ring.
+	 */
+	private void buildHull() {
+		for (int t = 0; t < triads.size(); t++) {
+			int a = triads.a[t], b = triads.b[t], c = triads.c[t];
+			if (triads.ab[t] < 0)
+				link(a, b, c, t);
+			if (triads.bc[t] < 0)
+				link(b, c, a, t);
+			if (triads.ac[t] < 0)
+				link(c, a, b, t);
+		}
+	}
+
+	/**
+	 * Puts the edge <b>u</b>-<b>w</b> of triad <b>t</b>, whose third vertex is
+	 * <b>o</b>, on the hull ring.
+	 */
+	private void link(int u, int w, int o, int t) {
+		if (orient(u, w, o) > 0) {
+			int tmp = u;
+			u = w;
+			w = tmp;
+		}
+		link(u, w, t);
+		hullSize++;
+		hullStart = u;
+	}
+
+	private void link(int u, int w, int t) {
+		next[u] = w;
+		prev[w] = u;
+		edgeTriad[u] = t;
+	}
+
+	/**
+	 * Appends a batch of points to the vertices and inserts them.
+	 * @param batch The points to add; <b>z</b> is kept but not used.
+	 * @return How many points went into the triangulation.
+	 */
+	public int add(PointBuffer batch) {
+		int first = points.size(), n = batch.size();
+		points.addAll(batch);
+		px = points.getXArray();
+		py = points.getYArray();
+		growHull(points.size());
+		if (inserter != null)
+			inserter = new PointInserter(triads, px, py, points.size());
+		numBatches++;
+		numChanged = 0;
+		return insertFrom(first);
+	}
+
+	/**
+	 * Inserts the vertices from <b>first</b> on, and all the others too if
+	 * there are no triads yet.
+	 * @return How many went into the triangulation.
+	 */
+	private int insertFrom(int first) {
+		int n = points.size() - first;
+		if (triads == null) {
+			// the points before these were all aligned
+			if (!seed())
+				return 0;
+			first = 0;
+			n = points.size();
+		}
+		long skipped = numSkipped;
+		int count = randomOrder(first, points.size(), Math.max(FIRST_ROUND, first));
+		for (int i = 0; i < count; i++)
+			insert(order[i]);
+		// the triads whose neighbours were replaced changed too
+		for (int i = numChanged - 1; i >= 0; i--) {
+			int t = changed[i];
+			if (triads.ab[t] >= 0)
+				record(triads.ab[t]);
+			if (triads.bc[t] >= 0)
+				record(triads.bc[t]);
+			if (triads.ac[t] >= 0)
+				record(triads.ac[t]);
+		}
+		return n - (int) (numSkipped - skipped);
+	}
+
+	/**
+	 * Keeps only the vertices inside a rectangle, borders included: the others
+	 * are removed one at a time with {@link PointRemover}, the farthest from the
+	 * rectangle first, so that each is on the hull or close to it and leaves a
+	 * small hole. Vertices as far as each other go in random order: removing a
+	 * row of a grid from one end would leave its last vertices connected to the
+	 * whole next row. The triangulation is then the Delaunay triangulation of the
+	 * vertices kept, and the points added later go in as usual: a window moving
+	 * over the points follows them without being built again.<p>
+	 * The vertices and the triads at the end of the arrays move to the places of
+	 * the removed ones, the others keep their index.
+	 * @return The new index of each vertex, -1 for the removed ones.
+	 */
+	public int[] retain(double minX, double minY, double maxX, double maxY) {
+		int numVertices = points.size();
+		if (order.length < numVertices) {
+			order = new int[numVertices];
+			keys = new double[numVertices];
+		}
+		int vertex[] = new int[numVertices];
+		int count = 0;
+		for (int v = 0; v < numVertices; v++) {
+			double x = px[v], y = py[v];
+			double distance = Math.max(Math.max(minX - x, x - maxX), Math.max(minY - y, y - maxY));
+			if (distance > 0) {
+				order[count] = v;
+				keys[count++] = -distance;
+				vertex[v] = -1;
+			} else {
+				vertex[v] = v;
+			}
+		}
+		numBatches++;
+		numChanged = 0;
+		if (count == 0)
+			return vertex;
+
+		PointRemover remover = null;
+		if (triads != null) {
+			shuffle(count);
+			sort.sort(keys, order, 0, count);
+			remover = new PointRemover(triads, px, py, numVertices);
+			for (int i = 0; i < count; i++)
+				remover.remove(order[i]);
+			remover.compact();
+		}
+
+		// the vertices at the end fill the places of the removed ones
+		int kept = numVertices - count;
+		double z[] = points.getZArray();
+		for (int v = 0, w = numVertices - 1; v < kept; v++) {
+			if (vertex[v] >= 0)
+				continue;
+			while (vertex[w] < 0)
+				w--;
+			points.set(v, px[w], py[w], z[w]);
+			if (remover != null)
+				remover.renumber(w, v);
+			vertex[w] = v;
+			w--;
+		}
+		points.truncate(kept);
+		Arrays.fill(next, -1);
+		Arrays.fill(prev, -1);
+		hullSize = 0;
+
+		if (triads == null || triads.size() == 0) {
+			// no triads left: the points kept start again
+			triads = null;
+			inserter = null;
+			insertFrom(0);
+		} else {
+			inserter = new PointInserter(triads, px, py, kept);
+			buildHull();
+			start = triads.size() - 1;
+			// the vertices inside left without triads go in again
+			int orphans[] = remover.getOrphans();
+			for (int i = remover.getNumOrphans() - 1; i >= 0; i--) {
+				int v = vertex[orphans[i]];
+				if (v >= 0)
+					insert(v);
+			}
+		}
+		numChanged = 0;
+		return vertex;
+	}
+
+	/**
+	 * Puts the vertices from <b>from</b> to <b>to</b> not on the hull yet in
+	 * {@link #order}: shuffled, then each round sorted along a Z-order curve
+	 * over the square around them.
+	 * @param firstRound Points in the first round.
+	 * @return How many they are.
+	 */
+	private int randomOrder(int from, int to, int firstRound) {
+		if (order.length < to - from) {
+			order = new int[to - from];
+			keys = new double[to - from];
+		}
+		int count = 0;
+		double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+		for (int v = from; v < to; v++) {
+			if (next[v] < 0) {
+				order[count++] = v;
+				minX = Math.min(minX, px[v]);
+				maxX = Math.max(maxX, px[v]);
+				minY = Math.min(minY, py[v]);
+				maxY = Math.max(maxY, py[v]);
+			}
+		}
+		// square cells: a batch may be a thin strip
+		double side = Math.max(maxX - minX, maxY - minY);
+		double scale = side > 0 ? ((1 << KEY_BITS) - 1) / side : 0;
+		shuffle(count);
+		for (int lo = 0, hi = firstRound; lo < count; lo = hi, hi *= 2) {
+			int end = Math.min(hi, count);
+			for (int i = lo; i < end; i++) {
+				int v = order[i];
+				keys[i] = zOrder((int) ((px[v] - minX) * scale), (int) ((py[v] - minY) * scale));
+			}
+			sort.sort(keys, order, lo, end);
+		}
+		return count;
+	}
+
+	/**
+	 * Shuffles the first <b>count</b> entries of {@link #order}, and of
+	 * {@link #keys} with them.
+	 */
+	private void shuffle(int count) {
+		for (int i = count - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int tmp = order[i];
+			order[i] = order[j];
+			order[j] = tmp;
+			double key = keys[i];
+			keys[i] = keys[j];
+			keys[j] = key;
+		}
+	}
+
+	/**
+	 * @return The position of cell (<b>i</b>, <b>j</b>) along the Z-order
+	 * curve: the bits of the two indices interleaved.
+	 */
+	private static double zOrder(int i, int j) {
+		return spread(i) | (spread(j) << 1);
+	}
+
+	/**
+	 * @return The bits of <b>i</b> at the even positions.
+	 */
+	private static long spread(int i) {
+		long x = i & 0xffffffffL;
+		x = (x | (x << 16)) & 0x0000ffff0000ffffL;
+		x = (x | (x << 8)) & 0x00ff00ff00ff00ffL;
+		x = (x | (x << 4)) & 0x0f0f0f0f0f0f0f0fL;
+		x = (x | (x << 2)) & 0x3333333333333333L;
+		x = (x | (x << 1)) & 0x5555555555555555L;
+		return x;
+	}
+
+	/**
+	 * Starts the triangulation with the first three points that are not
+	 * collinear.
+	 * @return false if all the points are aligned.
+	 */
+	private boolean seed() {
+		int n = points.size();
+		int a = 0, b = -1, c = -1;
+		for (int v = 1; v < n && b < 0; v++) {
+			if (px[v] != px[a] || py[v] != py[a])
+				b = v;
+		}
+		for (int v = b + 1; b > 0 && v < n && c < 0; v++) {
+			if (orient(a, b, v) != 0)
+				c = v;
+		}
+		if (c < 0)
+			return false;
+		triads = new TriadStore(Math.max(16, 2 * n));
+		inserter = new PointInserter(triads, px, py, n);
+		record(triads.add(a, b, c, px, py));
+		if (orient(a, b, c) > 0) {
+			int tmp = b;
+			b = c;
+			c = tmp;
+		}
+		link(a, b, 0);
+		link(b, c, 0);
+		link(c, a, 0);
+		hullSize = 3;
+		hullStart = a;
+		start = 0;
+		return true;
+	}
+
+	/**
+	 * Inserts vertex <b>v</b> inside the triangulation or connects it to the
+	 * hull; duplicates are left out.
+	 */
+	private void insert(int v) {
+		int t = -1, e = -1;
+		if (triads.size() > 0) {
+			t = inserter.locate(v, start);
+			if (t < 0)
+				e = visibleEdge(inserter.getExit(), v);
+		}
+		if (t < 0 && e < 0) {
+			// the walk was stopped by triads out of the store (or there are no others)
+			t = find(v);
+			if (t < 0)
+				e = findVisibleEdge(v);
+		}
+
+		if (t >= 0) {
+			if (!inserter.insert(v, t)) {
+				numSkipped++;
+				return;
+			}
+		} else if (e >= 0) {
+			connect(v, e);
+		} else {
+			numSkipped++;
+			return;
+		}
+		updateHull(v);
+		int changedNow[] = inserter.getChanged();
+		for (int i = inserter.getNumChanged() - 1; i >= 0; i--)
+			record(changedNow[i]);
+		start = changedNow[0];
+	}
+
+	/**
+	 * Connects <b>v</b> to the chain of hull edges it sees, which includes
+	 * the edge from <b>e</b> to the next hull vertex.
+	 */
+	private void connect(int v, int e) {
+		int first = e;
+		for (int steps = 0; steps < hullSize && visible(prev[first], v); steps++)
+			first = prev[first];
+		int n = 0;
+		e = first;
+		chain[n++] = e;
+		do {
+			e = next[e];
+			if (n == chain.length) {
+				chain = Arrays.copyOf(chain, n * 2);
+				outer = Arrays.copyOf(outer, n * 2);
+			}
+			chain[n++] = e;
+		} while (e != first && visible(e, v));
+		for (int k = 0; k < n - 1; k++)
+			outer[k] = edgeTriad[chain[k]];
+
+		inserter.connect(v, chain, outer, n);
+
+		for (int k = 1; k < n - 1; k++) {
+			next[chain[k]] = -1;
+			prev[chain[k]] = -1;
+		}
+		next[chain[0]] = v;
+		prev[v] = chain[0];
+		next[v] = chain[n - 1];
+		prev[chain[n - 1]] = v;
+		hullSize += 3 - n;
+		hullStart = v;
+	}
+
+	/**
+	 * @return The hull vertex starting an edge of triad <b>t</b> visible from
+	 * <b>v</b>, -1 if none.
+	 */
+	private int visibleEdge(int t, int v) {
+		int a = triads.a[t], b = triads.b[t], c = triads.c[t];
+		if (triads.ab[t] == -1) {
+			int e = next[a] == b ? a : b;
+			if (visible(e, v))
+				return e;
+		}
+		if (triads.bc[t] == -1) {
+			int e = next[b] == c ? b : c;
+			if (visible(e, v))
+				return e;
+		}
+		if (triads.ac[t] == -1) {
+			int e = next[c] == a ? c : a;
+			if (visible(e, v))
+				return e;
+		}
+		return -1;
+	}
+
+	/**
+	 * Looks at every triad for the one containing <b>v</b>.
+	 * @return The triad, -1 if none.
+	 */
+	private int find(int v) {
+		for (int t = triads.size() - 1; t >= 0; t--) {
+			int a = triads.a[t], b = triads.b[t], c = triads.c[t];
+			double s = orient(a, b, c);
+			if (s * orient(a, b, v) >= 0 && s * orient(b, c, v) >= 0
+					&& s * orient(c, a, v) >= 0)
+				return t;
+		}
+		return -1;
+	}
+
+	/**
+	 * Looks at every hull edge for one visible from <b>v</b>.
+	 * @return The hull vertex starting the edge, -1 if none.
+	 */
+	private int findVisibleEdge(int v) {
+		int e = hullStart;
+		for (int steps = 0; steps < hullSize; steps++) {
+			if (visible(e, v))
+				return e;
+			e = next[e];
+		}
+		return -1;
+	}
+
+	/**
+	 * @return true if <b>v</b> is on the outer side of the hull edge from
+	 * <b>e</b> to the next vertex.
+	 */
+	private boolean visible(int e, int v) {
+		return orient(e, next[e], v) > 0;
+	}
+
+	private double orient(int a, int b, int c) {
+		return Predicates.orient2d(px[a], py[a], px[b], py[b], px[c], py[c]);
+	}
+
+	/**
+	 * Puts <b>v</b> on the hull if it split a hull edge, and points the hull
+	 * edges at the triads the last insertion moved them to.
+	 */
+	private void updateHull(int v) {
+		int changedNow[] = inserter.getChanged();
+		int n = inserter.getNumChanged();
+		if (next[v] < 0) {
+			// the ends of the two hull edges v split the old one in
+			int u = -1, w = -1;
+			for (int i = 0; i < n; i++) {
+				int t = changedNow[i];
+				int a = triads.a[t], b = triads.b[t], c = triads.c[t];
+				int q = -1;
+				if (triads.ab[t] == -1 && (a == v || b == v))
+					q = a + b - v;
+				else if (triads.bc[t] == -1 && (b == v || c == v))
+					q = b + c - v;
+				else if (triads.ac[t] == -1 && (c == v || a == v))
+					q = c + a - v;
+				if (q < 0 || q == u)
+					continue;
+				if (u < 0)
+					u = q;
+				else
+					w = q;
+			}
+			if (w >= 0) {
+				if (next[w] == u) {
+					int tmp = u;
+					u = w;
+					w = tmp;
+				}
+				next[u] = v;
+				prev[v] = u;
+				next[v] = w;
+				prev[w] = v;
+				hullSize++;
+			}
+		}
+		for (int i = n - 1; i >= 0; i--) {
+			int t = changedNow[i];
+			int a = triads.a[t], b = triads.b[t], c = triads.c[t];
+			if (triads.ab[t] == -1)
+				hullEdge(a, b, t);
+			if (triads.bc[t] == -1)
+				hullEdge(b, c, t);
+			if (triads.ac[t] == -1)
+				hullEdge(c, a, t);
+		}
+	}
+
+	private void hullEdge(int u, int w, int t) {
+		if (next[u] == w)
+			edgeTriad[u] = t;
+		else if (next[w] == u)
+			edgeTriad[w] = t;
+	}
+
+	private void record(int t) {
+		if (t >= stamp.length)
+			stamp = Arrays.copyOf(stamp, Math.max(t + 1, stamp.length * 2));
+		if (stamp[t] == numBatches)
+			return;
+		stamp[t] = numBatches;
+		if (numChanged == changed.length)
+			changed = Arrays.copyOf(changed, numChanged * 2);
+		changed[numChanged++] = t;
+	}
+
+	/**
+	 * Makes room in the hull ring for <b>n</b> vertices.
+	 */
+	private void growHull(int n) {
+		int old = next.length;
+		if (n <= old)
+			return;
+		int capacity = Math.max(n, old + (old >> 1));
+		next = Arrays.copyOf(next, capacity);
+		prev = Arrays.copyOf(prev, capacity);
+		edgeTriad = Arrays.copyOf(edgeTriad, capacity);
+		Arrays.fill(next, old, capacity, -1);
+		Arrays.fill(prev, old, capacity, -1);
+	}
+
+	/**
+	 * Takes triads out of the store, and the vertices left without triads that
+	 * are not on the hull. The neighbours of the remaining triads across the
+	 * edges they shared with the removed ones are set to <b>removed</b>.
+	 * @param map The new index of each triad, a negative value for the ones
+	 * to remove.
+	 * @param removed The neighbour left by a removed triad, less than -1.
+	 * @return The new index of each vertex, -1 for the removed ones.
+	 */
+	int[] compact(int map[], int removed) {
+		int numt = triads.size(), numVertices = points.size();
+		int vertex[] = new int[numVertices];
+		Arrays.fill(vertex, -1);
+		int kept = 0;
+		for (int t = 0; t < numt; t++) {
+			if (map[t] < 0)
+				continue;
+			kept++;
+			vertex[triads.a[t]] = 0;
+			vertex[triads.b[t]] = 0;
+			vertex[triads.c[t]] = 0;
+		}
+		int numKept = 0;
+		for (int v = 0; v < numVertices; v++) {
+			if (vertex[v] == 0 || next[v] >= 0)
+				vertex[v] = numKept++;
+			else
+				vertex[v] = -1;
+		}
+
+		PointBuffer buffer = new PointBuffer(Math.max(64, numKept * 2));
+		int nx[] = new int[buffer.getXArray().length], pv[] = new int[nx.length];
+		int et[] = new int[nx.length];
+		Arrays.fill(nx, -1);
+		Arrays.fill(pv, -1);
+		double z[] = points.getZArray();
+		for (int v = 0; v < numVertices; v++) {
+			int w = vertex[v];
+			if (w < 0)
+				continue;
+			buffer.add(px[v], py[v], z[v]);
+			if (next[v] >= 0) {
+				nx[w] = vertex[next[v]];
+				pv[w] = vertex[prev[v]];
+				et[w] = neighbour(map, edgeTriad[v], removed);
+			}
+		}
+
+		TriadStore store = new TriadStore(Math.max(16, kept * 2));
+		store.reserve(kept);
+		for (int t = 0; t < numt; t++) {
+			int u = map[t];
+			if (u < 0)
+				continue;
+			store.a[u] = vertex[triads.a[t]];
+			store.b[u] = vertex[triads.b[t]];
+			store.c[u] = vertex[triads.c[t]];
+			store.ab[u] = neighbour(map, triads.ab[t], removed);
+			store.bc[u] = neighbour(map, triads.bc[t], removed);
+			store.ac[u] = neighbour(map, triads.ac[t], removed);
+			store.cx[u] = triads.cx[t];
+			store.cy[u] = triads.cy[t];
+			store.r2[u] = triads.r2[t];
+		}
+
+		points = buffer;
+		px = buffer.getXArray();
+		py = buffer.getYArray();
+		next = nx;
+		prev = pv;
+		edgeTriad = et;
+		hullStart = vertex[hullStart];
+		triads = store;
+		inserter = new PointInserter(triads, px, py, numKept);
+		// the triads added last are the closest to the next points
+		start = kept - 1;
+		numChanged = 0;
+		return vertex;
+	}
+
+	private static int neighbour(int map[], int t, int removed) {
+		if (t < 0)
+			return t;
+		return map[t] < 0 ? removed : map[t];
+	}
+
+	/**
+	 * @return The vertices: the points added so far, in order, after those
+	 * of the triangulation this one continues.
+	 */
+	public PointBuffer getPoints() {
+		return points;
+	}
+
+	/**
+	 * @return The triads, null while the points are fewer than three or
+	 * aligned. Their vertices are indices in {@link #getPoints()}.
+	 */
+	public TriadStore getTriadStore() {
+		return triads;
+	}
+
+	/**
+	 * @return How many triads the last {@link #add(PointBuffer)} changed
+	 * (vertices or neighbours) or created.
+	 */
+	public int getNumChanged() {
+		return numChanged;
+	}
+
+	/**
+	 * @return The triads changed or created by the last
+	 * {@link #add(PointBuffer)}, valid up to {@link #getNumChanged()}. The
+	 * others are as they were before it.
+	 */
+	public int[] getChanged() {
+		return changed;
+	}
+
+	/**
+	 * @return How many points were left out of the triangulation, almost
+	 * always duplicates.
+	 */
+	public long getNumSkipped() {
+		return numSkipped;
+	}
+}
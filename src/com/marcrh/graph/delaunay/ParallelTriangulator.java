@@ -0,0 +1,511 @@
+package com.marcrh.graph.delaunay;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.marcrh.graph.HilbertCurve;
+import com.marcrh.graph.Point;
+import com.marcrh.graph.PointBuffer;
+import com.marcrh.graph.RadixSort;
+
+/**
+ * Delaunay triangulation on several threads.<p>
+ * The points are split by <b>x</b> in one vertical slab per thread and the slabs are
+ * triangulated at the same time, each one by its own {@link Triangulator}. Then the
+ * slabs are sewn together from left to right: the gap between the hulls of two
+ * neighbouring slabs, bounded by their lower and upper common tangents, is filled
+ * with triangles, and the triangles of the seams are flipped until the whole
+ * triangulation is Delaunay. Only the sewing runs on a single thread, and it only
+ * touches the triangles near the seams.<p>
+ * Small inputs, a single thread and slabs that cannot be triangulated (e.g. all their
+ * points on a line) are left to the sequential {@link Triangulator}, so the result is
+ * always the Delaunay triangulation it would give, up to the choice of the diagonal
+ * between cocircular points.<p>
+ * Like the {@link Triangulator}, a parallel triangulator keeps its work arrays
+ * and its slabs from one call to the next and triangulates one input at a time.
+ */
+public class ParallelTriangulator {
+	/**
+	 * Slabs smaller than this are not worth a thread.
+	 */
+	private static final int MIN_SLAB_POINTS = 1 << 14;
+
+	private final int threads;
+	private boolean hilbertOrder;
+	private int numDuplicates;
+
+	private double px[];
+	private double py[];
+	/**
+	 * Hull of the slabs sewn so far, indexed by point like the arrays of {@link Hull}:
+	 * next and previous vertex in clockwise order and triad adjacent to the edge
+	 * from a vertex to the next one.
+	 */
+	private int next[] = new int[0];
+	private int prev[] = new int[0];
+	private int hullTriad[] = new int[0];
+
+	/**
+	 * The points sorted by <b>x</b>, and their indices.
+	 */
+	private double keys[] = new double[0];
+	private int order[] = new int[0];
+	private final RadixSort sort;
+	/**
+	 * Triangulator of the inputs too small for slabs, also flipping the seams.
+	 */
+	private final Triangulator triangulator;
+	private Slab parts[] = new Slab[0];
+
+	/**
+	 * A triangulator using a thread per available processor.
+	 */
+	public ParallelTriangulator() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param threads Maximum number of slabs triangulated at the same time.
+	 */
+	public ParallelTriangulator(int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("Number of threads must be positive");
+		this.threads = threads;
+		sort = new RadixSort(threads);
+		triangulator = new Triangulator(threads);
+	}
+
+	/**
+	 * Renumbers the points of each slab along a {@link HilbertCurve} before
+	 * triangulating it, off by default. The points of a slab are copied in
+	 * order of <b>x</b>, which spreads neighbours over the whole slab: on 1M to
+	 * 4M points the triangulation takes 15-18% less time.
+	 * @see Triangulator#setHilbertOrder(boolean)
+	 */
+	public void setHilbertOrder(boolean hilbertOrder) {
+		this.hilbertOrder = hilbertOrder;
+	}
+
+	/**
+	 * Return the Delaunay triangulation of the supplied points, optionally check for duplicate points.
+	 * @see Triangulator#getTriangulation(ArrayList, boolean)
+	 */
+	public ArrayList<Triad> getTriangulation(ArrayList<? extends Point> points,
+			boolean rejectDuplicatePoints) {
+		PointBuffer buffer = new PointBuffer(points.size());
+		for (Point p : points)
+			buffer.add(p.x, p.y, 0);
+		return getTriadStore(buffer, rejectDuplicatePoints).toTriads();
+	}
+
+	/**
+	 * Return the Delaunay triangulation of the points of a {@link PointBuffer}, optionally check for duplicate points.
+	 * @see Triangulator#getTriangulation(PointBuffer, boolean)
+	 */
+	public ArrayList<Triad> getTriangulation(PointBuffer points,
+			boolean rejectDuplicatePoints) {
+		return getTriadStore(points, rejectDuplicatePoints).toTriads();
+	}
+
+	/**
+	 * Return the Delaunay triangulation of the points of a {@link PointBuffer} as a {@link TriadStore}.
+	 * @see Triangulator#getTriadStore(PointBuffer, boolean)
+	 */
+	public TriadStore getTriadStore(PointBuffer points,
+			boolean rejectDuplicatePoints) {
+		return getTriadStore(points, rejectDuplicatePoints, new TriadStore(2 * points.size()));
+	}
+
+	/**
+	 * Like {@link #getTriadStore(PointBuffer, boolean)}, but the triangles
+	 * replace the content of <b>triads</b>.
+	 * @see Triangulator#getTriadStore(PointBuffer, boolean, TriadStore)
+	 */
+	public TriadStore getTriadStore(PointBuffer points,
+			boolean rejectDuplicatePoints, TriadStore triads) {
+		int slabs = Math.min(threads, points.size() / MIN_SLAB_POINTS);
+		if (slabs > 1 && triangulate(points, slabs, rejectDuplicatePoints, triads))
+			return triads;
+		triangulator.setHilbertOrder(hilbertOrder);
+		triangulator.getTriadStore(points, rejectDuplicatePoints, triads);
+		numDuplicates = triangulator.getNumDuplicates();
+		return triads;
+	}
+
+	/**
+	 * @return How many points the last triangulation left out because another
+	 * point had the same coordinates, 0 if they were not checked.
+	 * @see Triangulator#getNumDuplicates()
+	 */
+	public int getNumDuplicates() {
+		return numDuplicates;
+	}
+
+	/**
+	 * Puts the triangulation in <b>triads</b>.
+	 * @return false if the points cannot be split in slabs.
+	 */
+	private boolean triangulate(PointBuffer points, int slabs,
+			final boolean rejectDuplicatePoints, final TriadStore triads) {
+		int n = points.size();
+		px = points.getXArray();
+		py = points.getYArray();
+
+		if (keys.length < n) {
+			keys = new double[n];
+			order = new int[n];
+			next = new int[n];
+			prev = new int[n];
+			hullTriad = new int[n];
+		}
+		double keys[] = this.keys;
+		final int order[] = this.order;
+		System.arraycopy(px, 0, keys, 0, n);
+		for (int i = 0; i < n; i++)
+			order[i] = i;
+		sort.sort(keys, order, 0, n);
+
+		// Cut only between different x, so that the hulls of two slabs never touch
+		int bounds[] = new int[slabs + 1];
+		int count = 0;
+		for (int s = 1; s < slabs; s++) {
+			int b = (int) ((long) n * s / slabs);
+			while (b < n && keys[b] == keys[b - 1])
+				b++;
+			if (b - bounds[count] >= 3 && n - b >= 3)
+				bounds[++count] = b;
+		}
+		bounds[++count] = n;
+		slabs = count;
+		if (slabs < 2)
+			return false;
+
+		triads.clear();
+		triads.ensureCapacity(2 * n);
+		if (parts.length < slabs) {
+			int old = parts.length;
+			parts = Arrays.copyOf(parts, slabs);
+			for (int s = old; s < slabs; s++)
+				parts[s] = new Slab();
+		}
+		final Slab parts[] = this.parts;
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, slabs));
+		try {
+			List<Callable<Object>> work = new ArrayList<Callable<Object>>(slabs);
+			for (int s = 0; s < slabs; s++) {
+				final int slab = s, from = bounds[s], to = bounds[s + 1];
+				work.add(new Callable<Object>() {
+					public Object call() {
+						parts[slab].triangulate(order, from, to, rejectDuplicatePoints);
+						return null;
+					}
+				});
+			}
+			waitFor(pool.invokeAll(work));
+			// a slab without a triangle: let the sequential triangulator deal with it
+			for (int s = 0; s < slabs; s++) {
+				if (parts[s].degenerate)
+					return false;
+			}
+
+			// Join the triads and the hulls of the slabs, each one in its own range
+			work.clear();
+			for (int s = 0; s < slabs; s++) {
+				final Slab slab = parts[s];
+				final int base = triads.reserve(slab.triads.size());
+				work.add(new Callable<Object>() {
+					public Object call() {
+						slab.join(triads, base);
+						return null;
+					}
+				});
+			}
+			waitFor(pool.invokeAll(work));
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Triangulation interrupted", ie);
+		} catch (ExecutionException ee) {
+			if (ee.getCause() instanceof Error)
+				throw (Error) ee.getCause();
+			if (ee.getCause() instanceof RuntimeException)
+				throw (RuntimeException) ee.getCause();
+			throw new RuntimeException(ee.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+
+		int leftmost[] = new int[slabs];
+		int rightmost[] = new int[slabs];
+		// equal points have the same x and so are in the same slab
+		numDuplicates = 0;
+		for (int s = 0; s < slabs; s++) {
+			leftmost[s] = parts[s].leftmost;
+			rightmost[s] = parts[s].rightmost;
+			numDuplicates += parts[s].numDuplicates;
+		}
+
+		int firstSeam = triads.size();
+		for (int s = 1; s < slabs; s++) {
+			if (!sew(triads, rightmost[s - 1], leftmost[s]))
+				return false;
+		}
+
+		// Only the seams can break the Delaunay condition
+		triangulator.setPoints(points);
+		triangulator.legalise(triads, firstSeam);
+		return true;
+	}
+
+	/**
+	 * Fills the gap between the hull on the left, whose rightmost vertex is <b>l</b>,
+	 * and the hull on the right, whose leftmost vertex is <b>r</b>, and makes the
+	 * hull of the two.
+	 * @return false if the gap cannot be filled.
+	 */
+	private boolean sew(TriadStore triads, int l, int r) {
+		// Lower common tangent: walk down both hulls while a vertex is below it.
+		// Clockwise goes down on the right side of a hull, anticlockwise on the left.
+		int lowL = l, lowR = r;
+		boolean moved;
+		do {
+			moved = false;
+			while (orient(lowL, lowR, next[lowL]) < 0) {
+				lowL = next[lowL];
+				moved = true;
+			}
+			while (orient(lowL, lowR, prev[lowR]) < 0) {
+				lowR = prev[lowR];
+				moved = true;
+			}
+		} while (moved);
+
+		// Upper common tangent
+		int upL = l, upR = r;
+		do {
+			moved = false;
+			while (orient(upL, upR, prev[upL]) > 0) {
+				upL = prev[upL];
+				moved = true;
+			}
+			while (orient(upL, upR, next[upR]) > 0) {
+				upR = next[upR];
+				moved = true;
+			}
+		} while (moved);
+
+		// Zip the two facing chains from the lower tangent up to the upper one.
+		// Each triangle stands on the top edge of the previous one and takes the
+		// next vertex of one of the chains, the one whose circumcircle is empty
+		// of the other candidate if both can be taken.
+		int below = -1, first = -1;
+		l = lowL;
+		r = lowR;
+		while (l != upL || r != upR) {
+			int candL = l != upL ? prev[l] : -1;
+			int candR = r != upR ? next[r] : -1;
+			boolean validL = candL >= 0 && orient(l, r, candL) > 0;
+			boolean validR = candR >= 0 && orient(l, r, candR) > 0;
+			if (!validL && !validR)
+				return false;
+
+			int t;
+			if (validL && (!validR || !inCircle(l, r, candL, candR))) {
+				t = triads.add(l, r, candL, px, py);
+				link(triads, t, hullTriad[candL], candL, l);
+			} else {
+				t = triads.add(l, r, candR, px, py);
+				link(triads, t, hullTriad[r], r, candR);
+			}
+			if (below >= 0)
+				link(triads, t, below, l, r);
+			else
+				first = t;
+			below = t;
+			if (triads.c[t] == candL)
+				l = candL;
+			else
+				r = candR;
+		}
+
+		next[upL] = upR;
+		prev[upR] = upL;
+		hullTriad[upL] = below;
+		next[lowR] = lowL;
+		prev[lowL] = lowR;
+		hullTriad[lowR] = first;
+		return true;
+	}
+
+	/**
+	 * Rethrows the first failure of a batch of tasks.
+	 */
+	private static void waitFor(List<Future<Object>> done)
+			throws InterruptedException, ExecutionException {
+		for (Future<Object> f : done)
+			f.get();
+	}
+
+	/**
+	 * Makes triangles <b>t</b> and <b>u</b> neighbours across the edge <b>v</b>-<b>w</b>.
+	 */
+	private static void link(TriadStore triads, int t, int u, int v, int w) {
+		triads.setAdjacent(t, v, w, u);
+		triads.setAdjacent(u, v, w, t);
+	}
+
+	/**
+	 * @return Positive if <b>c</b> is on the left of the line from <b>a</b> to <b>b</b>,
+	 * negative if it is on the right, 0 if the three points are aligned.
+	 */
+	private double orient(int a, int b, int c) {
+		return Predicates.orient2d(px[a], py[a], px[b], py[b], px[c], py[c]);
+	}
+
+	/**
+	 * @return true if <b>d</b> is inside the circle through the anticlockwise
+	 * triangle <b>a</b>, <b>b</b>, <b>c</b>.
+	 */
+	private boolean inCircle(int a, int b, int c, int d) {
+		return Predicates.inCircle(px[a], py[a], px[b], py[b], px[c], py[c],
+				px[d], py[d]) > 0;
+	}
+
+	/**
+	 * The triangulation of the points of a slab, with its own point indices.
+	 * A slab is triangulated again at each call, in the same buffers.
+	 */
+	private class Slab {
+		/**
+		 * Index in the whole input of each point of the slab.
+		 */
+		int vertex[] = new int[0];
+		double keys[] = new double[0];
+		// the slabs already run on a pool
+		final RadixSort sort = new RadixSort(1);
+		final PointBuffer points = new PointBuffer();
+		final Triangulator triangulator = new Triangulator(1, new RadixSort(1));
+		final TriadStore triads = new TriadStore(0);
+		Hull hull;
+		/**
+		 * Input index of the leftmost and of the rightmost vertex of the hull.
+		 */
+		int leftmost;
+		int rightmost;
+		int numDuplicates;
+		/**
+		 * Whether the points of the slab are all on a line, or less than 3
+		 * different ones, and the slab has no triangulation.
+		 */
+		boolean degenerate;
+
+		void triangulate(int order[], int from, int to, boolean rejectDuplicatePoints) {
+			int m = to - from;
+			if (vertex.length < m) {
+				vertex = new int[m];
+				keys = new double[m];
+			}
+			int vertex[] = this.vertex;
+			System.arraycopy(order, from, vertex, 0, m);
+			degenerate = collinear(vertex, m);
+			if (degenerate)
+				return;
+			double midX = (px[vertex[0]] + px[vertex[m - 1]]) / 2;
+			if (hilbertOrder)
+				HilbertCurve.sort(px, py, vertex, keys, m, sort);
+
+			// The sweep grows around its first point: start it from the middle
+			double minY = Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+			for (int i = 0; i < m; i++) {
+				minY = Math.min(minY, py[vertex[i]]);
+				maxY = Math.max(maxY, py[vertex[i]]);
+			}
+			double midY = (minY + maxY) / 2;
+			int seed = 0;
+			double best = Double.MAX_VALUE;
+			for (int i = 0; i < m; i++) {
+				double dx = px[vertex[i]] - midX, dy = py[vertex[i]] - midY;
+				if (dx * dx + dy * dy < best) {
+					best = dx * dx + dy * dy;
+					seed = i;
+				}
+			}
+			int tmp = vertex[0];
+			vertex[0] = vertex[seed];
+			vertex[seed] = tmp;
+
+			points.clear();
+			points.ensureCapacity(m);
+			for (int i = 0; i < m; i++)
+				points.add(px[vertex[i]], py[vertex[i]], 0);
+			triangulator.setPoints(points);
+			triads.clear();
+			triads.ensureCapacity(2 * m);
+			hull = triangulator.analyse(triads, rejectDuplicatePoints, false);
+			numDuplicates = triangulator.getNumDuplicates();
+			triangulator.legalise(triads, 0);
+
+			// The flips moved the outer edges between triads: find them again
+			for (int t = 0; t < triads.size(); t++) {
+				if (triads.ab[t] < 0)
+					setHullTriad(triads.a[t], triads.b[t], t);
+				if (triads.bc[t] < 0)
+					setHullTriad(triads.b[t], triads.c[t], t);
+				if (triads.ac[t] < 0)
+					setHullTriad(triads.a[t], triads.c[t], t);
+			}
+		}
+
+		/**
+		 * @return true if the first <b>m</b> points of <b>vertex</b> are on a line.
+		 */
+		private boolean collinear(int vertex[], int m) {
+			int a = vertex[0], b = -1;
+			for (int i = 1; i < m; i++) {
+				int p = vertex[i];
+				if (b < 0) {
+					if (px[p] != px[a] || py[p] != py[a])
+						b = p;
+				} else if (orient(a, b, p) != 0)
+					return false;
+			}
+			return true;
+		}
+
+		private void setHullTriad(int u, int v, int t) {
+			if (hull.next[u] == v)
+				hull.triad[u] = t;
+			else if (hull.next[v] == u)
+				hull.triad[v] = t;
+		}
+
+		/**
+		 * Copies the triads of the slab to <b>all</b> from <b>base</b> on and its
+		 * hull to the hull arrays, with the indices of the whole input.
+		 */
+		void join(TriadStore all, int base) {
+			all.copy(triads, vertex, base);
+
+			int l = -1, r = -1;
+			int v = hull.start;
+			do {
+				int g = vertex[v];
+				next[g] = vertex[hull.next[v]];
+				prev[g] = vertex[hull.prev[v]];
+				hullTriad[g] = hull.triad[v] + base;
+				if (l < 0 || px[g] < px[l])
+					l = g;
+				if (r < 0 || px[g] > px[r])
+					r = g;
+				v = hull.next[v];
+			} while (v != hull.start);
+			leftmost = l;
+			rightmost = r;
+		}
+	}
+}
@@ -0,0 +1,262 @@
+package com.marcrh.graph.delaunay;
+
+import java.util.Arrays;
+
+/**
+ * Inserts points one at a time into an existing Delaunay triangulation.<p>
+ * A point is located by walking from a nearby triad towards it, the triad (or
+ * the edge) it falls in is split and the new triads are made Delaunay again with
+ * the Lawson flips of {@link Triangulator#flipTriangle(TriadStore, int)}. All the
+ * orientation and in-circle tests are exact (see {@link Predicates}). A point
+ * outside the triangulation is instead connected to the hull edges it sees, as in
+ * the sweep of the Triangulator.<p>
+ * The triads changed by the last insertion are recorded. After an insertion
+ * inside they cover the same area as the triads they replaced, which lets callers
+ * keep per-triad data (e.g. the points each triad contains) up to date.
+ */
+class PointInserter extends Triangulator {
+	private final TriadStore triads;
+	private final double px[];
+	private final double py[];
+
+	/**
+	 * Triads changed by the last insertion, new ones included.
+	 */
+	private int changed[] = new int[32];
+	private int numChanged;
+	/**
+	 * Insertion that last recorded each triad in {@link #changed}.
+	 */
+	private int stamp[] = new int[0];
+	private int insertion;
+	/**
+	 * Triads waiting for the flip test.
+	 */
+	private int stack[] = new int[32];
+	private int exit;
+
+	/**
+	 * @param triads A Delaunay triangulation of some of the points.
+	 * @param px The <b>x</b> coordinates of the points.
+	 * @param py The <b>y</b> coordinates of the points.
+	 * @param numPoints How many points are used.
+	 */
+	PointInserter(TriadStore triads, double px[], double py[], int numPoints) {
+		this.triads = triads;
+		this.px = px;
+		this.py = py;
+		setPoints(px, py, numPoints);
+	}
+
+	/**
+	 * Walks from triad <b>start</b> to the triad containing point <b>p</b>: at
+	 * every step it crosses an edge that has <b>p</b> on the other side,
+	 * preferring edges with a triad behind them. The walk always ends on a
+	 * Delaunay triangulation, even with some of its triads missing.
+	 * @return The triad containing <b>p</b> (maybe on its border), -1 if the
+	 * walk had to leave the triangulation (see {@link #getExit()}).
+	 */
+	int locate(int p, int start) {
+		double x = px[p], y = py[p];
+		int t = start;
+		while (true) {
+			int a = triads.a[t], b = triads.b[t], c = triads.c[t];
+			double s = Predicates.orient2d(px[a], py[a], px[b], py[b], px[c], py[c]);
+			int out = -1;
+			if (s * Predicates.orient2d(px[a], py[a], px[b], py[b], x, y) < 0) {
+				if (triads.ab[t] >= 0) {
+					t = triads.ab[t];
+					continue;
+				}
+				out = t;
+			}
+			if (s * Predicates.orient2d(px[b], py[b], px[c], py[c], x, y) < 0) {
+				if (triads.bc[t] >= 0) {
+					t = triads.bc[t];
+					continue;
+				}
+				out = t;
+			}
+			if (s * Predicates.orient2d(px[c], py[c], px[a], py[a], x, y) < 0) {
+				if (triads.ac[t] >= 0) {
+					t = triads.ac[t];
+					continue;
+				}
+				out = t;
+			}
+			if (out < 0)
+				return t;
+			exit = out;
+			return -1;
+		}
+	}
+
+	/**
+	 * @return The triad the last walk of {@link #locate(int, int)} that failed
+	 * stopped at: <b>p</b> is beyond one of its edges without a neighbour.
+	 */
+	int getExit() {
+		return exit;
+	}
+
+	/**
+	 * Inserts point <b>p</b>, which must lie inside or on the border of triad
+	 * <b>t</b> (see {@link #locate(int, int)}), and restores the Delaunay
+	 * condition.
+	 * @return false if <b>p</b> is a vertex of <b>t</b> already: nothing is done.
+	 */
+	boolean insert(int p, int t) {
+		insertion++;
+		numChanged = 0;
+		int a = triads.a[t], b = triads.b[t], c = triads.c[t];
+		double x = px[p], y = py[p];
+		double s = Predicates.orient2d(px[a], py[a], px[b], py[b], px[c], py[c]);
+		double oab = s * Predicates.orient2d(px[a], py[a], px[b], py[b], x, y);
+		double obc = s * Predicates.orient2d(px[b], py[b], px[c], py[c], x, y);
+		double oca = s * Predicates.orient2d(px[c], py[c], px[a], py[a], x, y);
+		int top;
+		if ((oab == 0 ? 1 : 0) + (obc == 0 ? 1 : 0) + (oca == 0 ? 1 : 0) > 1)
+			return false;
+		else if (oab == 0)
+			top = splitEdge(p, t, a, b, c, triads.ab[t], triads.bc[t], triads.ac[t]);
+		else if (obc == 0)
+			top = splitEdge(p, t, b, c, a, triads.bc[t], triads.ac[t], triads.ab[t]);
+		else if (oca == 0)
+			top = splitEdge(p, t, c, a, b, triads.ac[t], triads.ab[t], triads.bc[t]);
+		else
+			top = splitTriad(p, t, a, b, c, triads.ab[t], triads.bc[t], triads.ac[t]);
+		flip(top);
+		return true;
+	}
+
+	/**
+	 * Connects point <b>p</b>, outside the triangulation, to a chain of hull
+	 * edges visible from it, and restores the Delaunay condition.
+	 * @param chain The <b>n</b> hull vertices of the chain, in hull order.
+	 * @param outer The triad inside each edge chain[k]-chain[k+1], or a
+	 * negative value if it is not in the store.
+	 * @param n Number of vertices of the chain, at least 2.
+	 */
+	void connect(int p, int chain[], int outer[], int n) {
+		insertion++;
+		numChanged = 0;
+		int first = triads.reserve(n - 1);
+		if (n > stack.length)
+			stack = Arrays.copyOf(stack, Math.max(n, stack.length * 2));
+		for (int k = 0; k < n - 1; k++) {
+			int t = first + k;
+			set(t, p, chain[k], chain[k + 1], k > 0 ? t - 1 : -1, outer[k],
+					k < n - 2 ? t + 1 : -1);
+			if (outer[k] >= 0)
+				triads.setAdjacent(outer[k], chain[k], chain[k + 1], t);
+			stack[k] = t;
+		}
+		flip(n - 1);
+	}
+
+	/**
+	 * Lawson flips of the <b>top</b> triads on the stack and of those they
+	 * are flipped with, until all of them are Delaunay.
+	 */
+	private void flip(int top) {
+		while (top > 0) {
+			int u = stack[--top];
+			int u2 = flipTriangle(triads, u);
+			if (u2 >= 0) {
+				record(u2);
+				if (top + 2 > stack.length)
+					stack = Arrays.copyOf(stack, stack.length * 2);
+				stack[top++] = u2;
+				// u goes on top: its other edges are tested first
+				stack[top++] = u;
+			}
+		}
+	}
+
+	/**
+	 * Splits triad (<b>a</b>, <b>b</b>, <b>c</b>) in three around <b>p</b>.
+	 * @return How many triads are on the flip stack.
+	 */
+	private int splitTriad(int p, int t, int a, int b, int c,
+			int nab, int nbc, int nca) {
+		int t1 = triads.reserve(2), t2 = t1 + 1;
+		set(t, a, b, p, nab, t1, t2);
+		set(t1, b, c, p, nbc, t2, t);
+		set(t2, c, a, p, nca, t, t1);
+		if (nbc >= 0)
+			triads.changeAdjacentIndex(nbc, t, t1);
+		if (nca >= 0)
+			triads.changeAdjacentIndex(nca, t, t2);
+		stack[0] = t;
+		stack[1] = t1;
+		stack[2] = t2;
+		return 3;
+	}
+
+	/**
+	 * Splits the edge <b>a</b>-<b>b</b> of triad (<b>a</b>, <b>b</b>, <b>c</b>)
+	 * at <b>p</b>, and so both the triads sharing it (one on the hull).
+	 * @return How many triads are on the flip stack.
+	 */
+	private int splitEdge(int p, int t, int a, int b, int c,
+			int nab, int nbc, int nca) {
+		int u = nab;
+		int t1 = triads.reserve(u >= 0 ? 2 : 1), u1 = u >= 0 ? t1 + 1 : -1;
+		if (u >= 0) {
+			// u is (b, a, d) in some order
+			int d = triads.a[u] != a && triads.a[u] != b ? triads.a[u]
+					: triads.b[u] != a && triads.b[u] != b ? triads.b[u] : triads.c[u];
+			int nad = triads.getAdjacent(u, a, d), ndb = triads.getAdjacent(u, d, b);
+			set(u, b, p, d, t1, u1, ndb);
+			set(u1, p, a, d, t, nad, u);
+			if (nad >= 0)
+				triads.changeAdjacentIndex(nad, u, u1);
+		}
+		set(t, a, p, c, u1, t1, nca);
+		set(t1, p, b, c, u, nbc, t);
+		if (nbc >= 0)
+			triads.changeAdjacentIndex(nbc, t, t1);
+		stack[0] = t;
+		stack[1] = t1;
+		if (u < 0)
+			return 2;
+		stack[2] = u;
+		stack[3] = u1;
+		return 4;
+	}
+
+	/**
+	 * Sets triad <b>t</b> to (<b>a</b>, <b>b</b>, <b>c</b>) with its neighbours
+	 * across a-b, b-c and c-a, and records it as changed.
+	 */
+	private void set(int t, int a, int b, int c, int nab, int nbc, int nca) {
+		triads.set(t, a, b, c, nab, nbc, nca, px, py);
+		record(t);
+	}
+
+	private void record(int t) {
+		if (t >= stamp.length)
+			stamp = Arrays.copyOf(stamp, Math.max(t + 1, stamp.length * 2));
+		if (stamp[t] == insertion)
+			return;
+		stamp[t] = insertion;
+		if (numChanged == changed.length)
+			changed = Arrays.copyOf(changed, numChanged * 2);
+		changed[numChanged++] = t;
+	}
+
+	/**
+	 * @return How many triads the last insertion changed.
+	 */
+	int getNumChanged() {
+		return numChanged;
+	}
+
+	/**
+	 * @return The triads changed by the last insertion, valid up to
+	 * {@link #getNumChanged()}.
+	 */
+	int[] getChanged() {
+		return changed;
+	}
+}
@@ -0,0 +1,403 @@
+package com.marcrh.graph.delaunay;
+
+import java.util.Arrays;
+
+/**
+ * Removes vertices from a Delaunay triangulation, one at a time.<p>
+ * The triads around a vertex are taken away and the polygon they leave is
+ * filled again with the Delaunay triangulation of its vertices, clipping one ear
+ * at a time: a triad made of three consecutive vertices of the polygon, turning
+ * the right way, whose circumcircle has no other vertex of the polygon inside, as
+ * in O. Devillers, "On Deletion in Delaunay Triangulations" (1999). A vertex on
+ * the hull leaves an open chain: ears are clipped while the chain is not
+ * convex, and what is left of it becomes hull. The tests are exact (see
+ * {@link Predicates}).<p>
+ * The new triads take the places of the old ones, so the store does not grow:
+ * the places left over are marked free until {@link #compact()} moves the last
+ * triads into them. A vertex of the polygon may be left without
+ * triads (when the triangulation was a single fan around the removed vertex):
+ * it is an orphan, to be inserted again.
+ */
+class PointRemover {
+	private final TriadStore triads;
+	private final double px[];
+	private final double py[];
+
+	/**
+	 * A triad of each vertex, -1 if it has none.
+	 */
+	private final int vertexTriad[];
+	private final boolean free[];
+	private int numFree;
+
+	private int orphans[] = new int[16];
+	private int numOrphans;
+
+	/**
+	 * The polygon around the vertex being removed, counterclockwise: the triad
+	 * that had the edge border[i]-border[i+1], the one across that edge,
+	 * whether the polygon turns left at border[i], and if so the power of the
+	 * vertex with respect to the circle through border[i-1..i+1].
+	 */
+	private int border[] = new int[16];
+	private int fan[] = new int[16];
+	private int beyond[] = new int[16];
+	private boolean left[] = new boolean[16];
+	private double power[] = new double[16];
+	/**
+	 * The vertex being removed.
+	 */
+	private int removed;
+
+	/**
+	 * @param triads A Delaunay triangulation of some of the points.
+	 * @param px The <b>x</b> coordinates of the points.
+	 * @param py The <b>y</b> coordinates of the points.
+	 * @param numPoints How many points there are.
+	 */
+	PointRemover(TriadStore triads, double px[], double py[], int numPoints) {
+		this.triads = triads;
+		this.px = px;
+		this.py = py;
+		vertexTriad = new int[numPoints];
+		Arrays.fill(vertexTriad, -1);
+		for (int t = 0; t < triads.size(); t++) {
+			vertexTriad[triads.a[t]] = t;
+			vertexTriad[triads.b[t]] = t;
+			vertexTriad[triads.c[t]] = t;
+		}
+		free = new boolean[triads.size()];
+	}
+
+	/**
+	 * Removes vertex <b>v</b> and fills the hole it leaves; nothing is done if
+	 * it is not in any triad.
+	 */
+	void remove(int v) {
+		int t0 = vertexTriad[v];
+		if (t0 < 0)
+			return;
+		vertexTriad[v] = -1;
+		removed = v;
+
+		// back clockwise to the hull, if v is on it
+		int t = t0;
+		while (true) {
+			int u = triads.getAdjacent(t, v, after(t, v));
+			if (u < 0 || u == t0)
+				break;
+			t = u;
+		}
+
+		// the triads around v, counterclockwise
+		int k = 0;
+		int first = t;
+		boolean closed;
+		while (true) {
+			int p = after(t, v), q = third(t, v, p);
+			if (k + 1 >= border.length) {
+				border = Arrays.copyOf(border, border.length * 2);
+				fan = Arrays.copyOf(fan, border.length);
+				beyond = Arrays.copyOf(beyond, border.length);
+				left = Arrays.copyOf(left, border.length);
+				power = Arrays.copyOf(power, border.length);
+			}
+			border[k] = p;
+			border[k + 1] = q;
+			fan[k] = t;
+			beyond[k] = triads.getAdjacent(t, p, q);
+			k++;
+			t = triads.getAdjacent(t, v, q);
+			if (t < 0 || t == first) {
+				closed = t >= 0;
+				break;
+			}
+		}
+
+		for (int i = 0; i <= k; i++)
+			turn(i, k + 1);
+		int used = closed ? fill(k) : fillOpen(k);
+		for (int i = used; i < k; i++) {
+			free[fan[i]] = true;
+			numFree++;
+		}
+	}
+
+	/**
+	 * Fills the closed polygon border[0..k-1] with k - 2 triads.
+	 * @return How many of the triads around the vertex were reused.
+	 */
+	private int fill(int k) {
+		// border[k] == border[0]: the ears are never clipped at 0
+		int n = k + 1, used = 0;
+		while (n > 4) {
+			int i = findEar(n - 1, n);
+			used = clip(i, n, used);
+			n--;
+		}
+		set(fan[used++], border[0], border[1], border[2], beyond[0], beyond[1], beyond[2]);
+		return used;
+	}
+
+	/**
+	 * Fills the open chain border[0..k] up to its convex hull, and finds a
+	 * triad for the vertices of the chain that are left on the hull.
+	 * @return How many of the triads around the vertex were reused.
+	 */
+	private int fillOpen(int k) {
+		int n = k + 1, used = 0;
+		while (n > 2 && turnsLeft(n)) {
+			int i = findEar(n, n);
+			used = clip(i, n, used);
+			n--;
+		}
+		// the edges left are on the hull
+		for (int i = 0; i < n - 1; i++) {
+			if (beyond[i] >= 0)
+				triads.setAdjacent(beyond[i], border[i], border[i + 1], -1);
+		}
+		for (int i = 0; i < n; i++) {
+			int w = border[i], t = vertexTriad[w];
+			if (t >= 0 && !isFan(t, used, k)
+					&& (triads.a[t] == w || triads.b[t] == w || triads.c[t] == w))
+				continue;
+			t = -1;
+			if (i < n - 1 && beyond[i] >= 0)
+				t = beyond[i];
+			else if (i > 0 && beyond[i - 1] >= 0)
+				t = beyond[i - 1];
+			vertexTriad[w] = t;
+			if (t < 0) {
+				if (numOrphans == orphans.length)
+					orphans = Arrays.copyOf(orphans, numOrphans * 2);
+				orphans[numOrphans++] = w;
+			}
+		}
+		return used;
+	}
+
+	/**
+	 * @return true if <b>t</b> is one of the triads around the vertex being
+	 * removed that were not reused, to be freed.
+	 */
+	private boolean isFan(int t, int used, int k) {
+		for (int i = used; i < k; i++) {
+			if (fan[i] == t)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return true if the first <b>n</b> vertices of the chain turn left
+	 * somewhere.
+	 */
+	private boolean turnsLeft(int n) {
+		for (int i = 1; i < n - 1; i++) {
+			if (left[i])
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Finds out if the first <b>n</b> vertices of the polygon turn left at
+	 * <b>i</b> (never at the first and the last one), and the power of the ear
+	 * there.
+	 */
+	private void turn(int i, int n) {
+		left[i] = i > 0 && i < n - 1 && orient(border[i - 1], border[i], border[i + 1]) > 0;
+		if (left[i])
+			power[i] = power(removed, border[i - 1], border[i], border[i + 1]);
+	}
+
+	/**
+	 * Looks for a Delaunay ear at 1..<b>end</b>-1 among the first <b>n</b>
+	 * vertices of the polygon. The ear whose circumcircle gives the least power
+	 * to the removed vertex is one (Devillers): it is tried first, and the
+	 * others only if rounding picked the wrong one.
+	 * @return The vertex at the tip of the ear; when rounding leaves none (it
+	 * never should), the first vertex turning left.
+	 */
+	private int findEar(int end, int n) {
+		int best = -1;
+		for (int i = 1; i < end && i < n - 1; i++) {
+			if (left[i] && (best < 0 || power[i] < power[best]))
+				best = i;
+		}
+		if (best < 0)
+			return 1;
+		if (isEmpty(best, n))
+			return best;
+		for (int i = 1; i < end && i < n - 1; i++) {
+			if (i != best && left[i] && isEmpty(i, n))
+				return i;
+		}
+		return best;
+	}
+
+	/**
+	 * @return true if no vertex among the first <b>n</b> of the polygon is
+	 * strictly inside the circumcircle of the ear at <b>i</b>.
+	 */
+	private boolean isEmpty(int i, int n) {
+		int a = border[i - 1], b = border[i], c = border[i + 1];
+		for (int j = 0; j < n; j++) {
+			int d = border[j];
+			if (d != a && d != b && d != c && Predicates.inCircumcirclePerturbed(px[a], py[a],
+					px[b], py[b], px[c], py[c], px[d], py[d]))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return The power of <b>v</b> with respect to the circle through
+	 * <b>a</b>, <b>b</b> and <b>c</b>: the squared distance from the centre
+	 * less the squared radius.
+	 */
+	private double power(int v, int a, int b, int c) {
+		double bx = px[b] - px[a], by = py[b] - py[a];
+		double qx = px[c] - px[a], qy = py[c] - py[a];
+		double d = 2 * (bx * qy - by * qx);
+		double b2 = bx * bx + by * by;
+		double q2 = qx * qx + qy * qy;
+		double ux = (qy * b2 - by * q2) / d;
+		double uy = (bx * q2 - qx * b2) / d;
+		double vx = px[v] - px[a] - ux, vy = py[v] - py[a] - uy;
+		return vx * vx + vy * vy - (ux * ux + uy * uy);
+	}
+
+	/**
+	 * Clips the ear at <b>i</b> in a free triad around the vertex, and takes
+	 * <b>i</b> out of the first <b>n</b> vertices of the polygon.
+	 * @return How many triads around the vertex are reused now.
+	 */
+	private int clip(int i, int n, int used) {
+		int t = fan[used++];
+		set(t, border[i - 1], border[i], border[i + 1], beyond[i - 1], beyond[i], -1);
+		beyond[i - 1] = t;
+		System.arraycopy(border, i + 1, border, i, n - i - 1);
+		System.arraycopy(beyond, i + 1, beyond, i, n - i - 2);
+		System.arraycopy(left, i + 1, left, i, n - i - 2);
+		System.arraycopy(power, i + 1, power, i, n - i - 2);
+		turn(i - 1, n - 1);
+		turn(i, n - 1);
+		return used;
+	}
+
+	/**
+	 * Sets triad <b>t</b> to (<b>a</b>, <b>b</b>, <b>c</b>) and points its
+	 * neighbours back at it.
+	 */
+	private void set(int t, int a, int b, int c, int nab, int nbc, int nca) {
+		triads.set(t, a, b, c, nab, nbc, nca, px, py);
+		if (nab >= 0)
+			triads.setAdjacent(nab, a, b, t);
+		if (nbc >= 0)
+			triads.setAdjacent(nbc, b, c, t);
+		if (nca >= 0)
+			triads.setAdjacent(nca, c, a, t);
+		vertexTriad[a] = t;
+		vertexTriad[b] = t;
+		vertexTriad[c] = t;
+	}
+
+	/**
+	 * @return The vertex of triad <b>t</b> after <b>v</b>, counterclockwise.
+	 */
+	private int after(int t, int v) {
+		int p = triads.a[t] != v ? triads.a[t] : triads.b[t];
+		return orient(v, p, third(t, v, p)) > 0 ? p : third(t, v, p);
+	}
+
+	/**
+	 * @return The vertex of triad <b>t</b> other than <b>u</b> and <b>v</b>.
+	 */
+	private int third(int t, int u, int v) {
+		int a = triads.a[t], b = triads.b[t];
+		if (a != u && a != v)
+			return a;
+		if (b != u && b != v)
+			return b;
+		return triads.c[t];
+	}
+
+	private double orient(int a, int b, int c) {
+		return Predicates.orient2d(px[a], py[a], px[b], py[b], px[c], py[c]);
+	}
+
+	/**
+	 * Moves the triads at the end of the store to the free places, and
+	 * shortens the store to the triads in use.
+	 */
+	void compact() {
+		int size = triads.size() - numFree;
+		for (int t = 0, last = triads.size() - 1; t < size; t++) {
+			if (!free[t])
+				continue;
+			while (free[last])
+				last--;
+			triads.move(last, t);
+			free[last--] = true;
+			free[t] = false;
+			int a = triads.a[t], b = triads.b[t], c = triads.c[t];
+			vertexTriad[a] = t;
+			vertexTriad[b] = t;
+			vertexTriad[c] = t;
+		}
+		triads.truncate(size);
+		numFree = 0;
+	}
+
+	/**
+	 * Gives vertex <b>from</b> the index <b>to</b> in all of its triads.
+	 */
+	void renumber(int from, int to) {
+		int t0 = vertexTriad[from];
+		vertexTriad[to] = t0;
+		vertexTriad[from] = -1;
+		if (t0 < 0)
+			return;
+		// around one way, then the other way if the hull stops the walk
+		int n = 0;
+		int p = triads.a[t0] != from ? triads.a[t0] : triads.b[t0];
+		int q = third(t0, from, p);
+		for (int side = 0; side < 2; side++) {
+			int t = t0, r = side == 0 ? p : q, u;
+			while ((u = triads.getAdjacent(t, from, r)) >= 0 && u != t0) {
+				r = third(u, from, r);
+				t = u;
+				if (n == fan.length)
+					fan = Arrays.copyOf(fan, n * 2);
+				fan[n++] = t;
+			}
+			if (u == t0)
+				break;
+		}
+		renumber(t0, from, to);
+		for (int i = 0; i < n; i++)
+			renumber(fan[i], from, to);
+	}
+
+	private void renumber(int t, int from, int to) {
+		if (triads.a[t] == from)
+			triads.a[t] = to;
+		else if (triads.b[t] == from)
+			triads.b[t] = to;
+		else
+			triads.c[t] = to;
+	}
+
+	/**
+	 * @return The vertices left without triads, valid up to
+	 * {@link #getNumOrphans()}. A vertex removed later is still listed.
+	 */
+	int[] getOrphans() {
+		return orphans;
+	}
+
+	int getNumOrphans() {
+		return numOrphans;
+	}
+}
@@ -0,0 +1,391 @@
+package com.marcrh.graph.delaunay;
+
+import java.math.BigDecimal;
+
+/**
+ * Orientation and in-circle tests whose sign is always right.<p>
+ * The determinants are first evaluated with plain doubles; when the result is
+ * smaller than the worst rounding error it could carry (the error bounds of
+ * Shewchuk's "Adaptive Precision Floating-Point Arithmetic and Fast Robust
+ * Geometric Predicates") it is computed again exactly. If the coordinate
+ * differences are exact doubles, which is always the case for nearby points
+ * (e.g. the nodes of a UTM grid), the exact value is a sum of
+ * non-overlapping doubles (an "expansion") built with Shewchuk's error-free
+ * sums and products; otherwise {@link BigDecimal} is used.<p>
+ * Random points almost never need the exact step, aligned and cocircular ones
+ * always get an exact 0. The bounds assume that no product overflows or underflows.
+ */
+public final class Predicates {
+
+	private static final double EPSILON = Math.ulp(1d) / 2;
+	private static final double CCW_ERRBOUND = (3d + 16d * EPSILON) * EPSILON;
+	private static final double ICC_ERRBOUND = (10d + 96d * EPSILON) * EPSILON;
+	/**
+	 * 2^27 + 1, splits a double in two halves of 26 bits.
+	 */
+	private static final double SPLITTER = 134217729d;
+
+	private Predicates() {
+	}
+
+	/**
+	 * @return Positive if <b>c</b> is on the left of the line from <b>a</b> to <b>b</b>
+	 * (the triangle <b>a</b>, <b>b</b>, <b>c</b> is anticlockwise), negative if
+	 * it is on the right, 0 if the three points are aligned. Only the sign is exact.
+	 */
+	public static double orient2d(double ax, double ay, double bx, double by,
+			double cx, double cy) {
+		double detLeft = (ax - cx) * (by - cy);
+		double detRight = (ay - cy) * (bx - cx);
+		double det = detLeft - detRight;
+		double detSum;
+
+		// when the two products have different signs there is no cancellation
+		if (detLeft > 0) {
+			if (detRight <= 0)
+				return det;
+			detSum = detLeft + detRight;
+		} else if (detLeft < 0) {
+			if (detRight >= 0)
+				return det;
+			detSum = -detLeft - detRight;
+		} else {
+			return det;
+		}
+
+		double errBound = CCW_ERRBOUND * detSum;
+		if (det >= errBound || -det >= errBound)
+			return det;
+		return orient2dExact(ax, ay, bx, by, cx, cy);
+	}
+
+	/**
+	 * @return Positive if <b>d</b> is inside the circle through the anticlockwise
+	 * triangle <b>a</b>, <b>b</b>, <b>c</b>, negative if it is outside, 0 if the four
+	 * points are cocircular. The sign is reversed for a clockwise triangle.
+	 * Only the sign is exact.
+	 */
+	public static double inCircle(double ax, double ay, double bx, double by,
+			double cx, double cy, double dx, double dy) {
+		double adx = ax - dx, ady = ay - dy;
+		double bdx = bx - dx, bdy = by - dy;
+		double cdx = cx - dx, cdy = cy - dy;
+
+		double bdxcdy = bdx * cdy, cdxbdy = cdx * bdy;
+		double aLift = adx * adx + ady * ady;
+		double cdxady = cdx * ady, adxcdy = adx * cdy;
+		double bLift = bdx * bdx + bdy * bdy;
+		double adxbdy = adx * bdy, bdxady = bdx * ady;
+		double cLift = cdx * cdx + cdy * cdy;
+
+		double det = aLift * (bdxcdy - cdxbdy) + bLift * (cdxady - adxcdy)
+				+ cLift * (adxbdy - bdxady);
+		double permanent = (Math.abs(bdxcdy) + Math.abs(cdxbdy)) * aLift
+				+ (Math.abs(cdxady) + Math.abs(adxcdy)) * bLift
+				+ (Math.abs(adxbdy) + Math.abs(bdxady)) * cLift;
+		double errBound = ICC_ERRBOUND * permanent;
+		if (det > errBound || -det > errBound)
+			return det;
+		return inCircleExact(ax, ay, bx, by, cx, cy, dx, dy);
+	}
+
+	/**
+	 * @return true if <b>d</b> is strictly inside the circle through <b>a</b>,
+	 * <b>b</b> and <b>c</b>, whatever their orientation. Always false when
+	 * <b>a</b>, <b>b</b> and <b>c</b> are aligned.
+	 */
+	public static boolean inCircumcircle(double ax, double ay, double bx, double by,
+			double cx, double cy, double dx, double dy) {
+		double orientation = orient2d(ax, ay, bx, by, cx, cy);
+		if (orientation == 0)
+			return false;
+		double det = inCircle(ax, ay, bx, by, cx, cy, dx, dy);
+		return orientation > 0 ? det > 0 : det < 0;
+	}
+
+	/**
+	 * Like {@link #inCircumcircle(double, double, double, double, double, double, double, double)},
+	 * but cocircular points are never a tie.<p>
+	 * The lift x^2 + y^2 of every point is raised by an infinitesimal, bigger
+	 * for the points that come first by <b>x</b> and then by <b>y</b> (a
+	 * simulation of simplicity, as in Edelsbrunner and Mücke). The answer
+	 * is the exact one whenever that is not 0, and the lifted points are never
+	 * coplanar, so the flips that use this test end in the same triangulation
+	 * whatever their order and whatever the numbering of the points: the
+	 * Delaunay triangulation with one fixed choice of the diagonals between
+	 * cocircular points. As with the exact test, when <b>a</b> and <b>d</b>
+	 * are on opposite sides of <b>b</b>-<b>c</b> the answer for <b>d</b> and
+	 * the circle through <b>a</b>, <b>b</b>, <b>c</b> is the one for <b>a</b>
+	 * and the circle through <b>d</b>, <b>c</b>, <b>b</b>: the two triangles
+	 * on an edge agree on flipping it.
+	 */
+	public static boolean inCircumcirclePerturbed(double ax, double ay, double bx, double by,
+			double cx, double cy, double dx, double dy) {
+		double orientation = orient2d(ax, ay, bx, by, cx, cy);
+		if (orientation == 0)
+			return false;
+		double det = inCircle(ax, ay, bx, by, cx, cy, dx, dy);
+		if (det == 0)
+			det = perturbation(ax, ay, bx, by, cx, cy, dx, dy);
+		return orientation > 0 ? det > 0 : det < 0;
+	}
+
+	/**
+	 * @return The sign of the in-circle determinant of four cocircular points
+	 * once their lifts are raised: the sign of the cofactor of the lift of the
+	 * first point, by <b>x</b> and then by <b>y</b>, whose cofactor is not 0.
+	 * The cofactor of a point is the orientation of the other three; the one
+	 * of <b>d</b> is never 0 since <b>a</b>, <b>b</b>, <b>c</b> are not aligned.
+	 */
+	private static double perturbation(double ax, double ay, double bx, double by,
+			double cx, double cy, double dx, double dy) {
+		double sign = -orient2d(ax, ay, bx, by, cx, cy);
+		double fx = dx, fy = dy;
+		double cofactor = orient2d(ax, ay, bx, by, dx, dy);
+		if (cofactor != 0 && precedes(cx, cy, fx, fy)) {
+			sign = cofactor;
+			fx = cx;
+			fy = cy;
+		}
+		cofactor = -orient2d(ax, ay, cx, cy, dx, dy);
+		if (cofactor != 0 && precedes(bx, by, fx, fy)) {
+			sign = cofactor;
+			fx = bx;
+			fy = by;
+		}
+		cofactor = orient2d(bx, by, cx, cy, dx, dy);
+		if (cofactor != 0 && precedes(ax, ay, fx, fy))
+			sign = cofactor;
+		return sign;
+	}
+
+	/**
+	 * @return true if (<b>px</b>, <b>py</b>) comes before (<b>qx</b>, <b>qy</b>)
+	 * by <b>x</b> and then by <b>y</b>.
+	 */
+	private static boolean precedes(double px, double py, double qx, double qy) {
+		return px < qx || (px == qx && py < qy);
+	}
+
+	private static double orient2dExact(double ax, double ay, double bx, double by,
+			double cx, double cy) {
+		double acx = ax - cx, acy = ay - cy;
+		double bcx = bx - cx, bcy = by - cy;
+		if (diffTail(ax, cx, acx) != 0 || diffTail(ay, cy, acy) != 0
+				|| diffTail(bx, cx, bcx) != 0 || diffTail(by, cy, bcy) != 0)
+			return orient2dBig(ax, ay, bx, by, cx, cy);
+
+		double det[] = new double[4];
+		int len = crossProduct(acx, bcy, acy, bcx, det);
+		return det[len - 1];
+	}
+
+	private static double inCircleExact(double ax, double ay, double bx, double by,
+			double cx, double cy, double dx, double dy) {
+		double adx = ax - dx, ady = ay - dy;
+		double bdx = bx - dx, bdy = by - dy;
+		double cdx = cx - dx, cdy = cy - dy;
+		if (diffTail(ax, dx, adx) != 0 || diffTail(ay, dy, ady) != 0
+				|| diffTail(bx, dx, bdx) != 0 || diffTail(by, dy, bdy) != 0
+				|| diffTail(cx, dx, cdx) != 0 || diffTail(cy, dy, cdy) != 0)
+			return inCircleBig(ax, ay, bx, by, cx, cy, dx, dy);
+
+		double cross[] = new double[4];
+		double adet[] = new double[32], bdet[] = new double[32], cdet[] = new double[32];
+		int alen = lift(cross, crossProduct(bdx, cdy, cdx, bdy, cross), adx, ady, adet);
+		int blen = lift(cross, crossProduct(cdx, ady, adx, cdy, cross), bdx, bdy, bdet);
+		int clen = lift(cross, crossProduct(adx, bdy, bdx, ady, cross), cdx, cdy, cdet);
+
+		double abdet[] = new double[64];
+		int ablen = sum(adet, alen, bdet, blen, abdet);
+		double det[] = new double[96];
+		int len = sum(abdet, ablen, cdet, clen, det);
+		return det[len - 1];
+	}
+
+	// Expansions: the components are non-overlapping, sorted by increasing
+	// magnitude and not zero (but a single 0 for 0), so the sign of an
+	// expansion is the one of its last component.
+
+	/**
+	 * Stores a * b - c * d in <b>h</b>.
+	 * @return The length of the expansion.
+	 */
+	private static int crossProduct(double a, double b, double c, double d, double h[]) {
+		double ab1 = a * b, ab0 = productTail(a, b, ab1);
+		double cd1 = -c * d, cd0 = productTail(-c, d, cd1);
+		return sum(new double[] { ab0, ab1 }, 2, new double[] { cd0, cd1 }, 2, h);
+	}
+
+	/**
+	 * Stores e * (x^2 + y^2) in <b>h</b>, that needs 32 components.
+	 * @return The length of the expansion.
+	 */
+	private static int lift(double e[], int elen, double x, double y, double h[]) {
+		double ex[] = new double[8], exx[] = new double[16];
+		double ey[] = new double[8], eyy[] = new double[16];
+		int exxlen = scale(ex, scale(e, elen, x, ex), x, exx);
+		int eyylen = scale(ey, scale(e, elen, y, ey), y, eyy);
+		return sum(exx, exxlen, eyy, eyylen, h);
+	}
+
+	/**
+	 * Stores the sum of two expansions in <b>h</b> (Shewchuk's
+	 * fast_expansion_sum_zeroelim), that needs elen + flen components.
+	 * @return The length of the sum.
+	 */
+	private static int sum(double e[], int elen, double f[], int flen, double h[]) {
+		double enow = e[0], fnow = f[0];
+		int eindex = 0, findex = 0, hindex = 0;
+		double q, qnew, hh;
+
+		if ((fnow > enow) == (fnow > -enow)) {
+			q = enow;
+			enow = ++eindex < elen ? e[eindex] : 0;
+		} else {
+			q = fnow;
+			fnow = ++findex < flen ? f[findex] : 0;
+		}
+		if (eindex < elen && findex < flen) {
+			// the smaller of the two comes first: q + it is a fast two-sum
+			if ((fnow > enow) == (fnow > -enow)) {
+				qnew = enow + q;
+				hh = q - (qnew - enow);
+				enow = ++eindex < elen ? e[eindex] : 0;
+			} else {
+				qnew = fnow + q;
+				hh = q - (qnew - fnow);
+				fnow = ++findex < flen ? f[findex] : 0;
+			}
+			q = qnew;
+			if (hh != 0)
+				h[hindex++] = hh;
+			while (eindex < elen && findex < flen) {
+				if ((fnow > enow) == (fnow > -enow)) {
+					qnew = q + enow;
+					hh = sumTail(q, enow, qnew);
+					enow = ++eindex < elen ? e[eindex] : 0;
+				} else {
+					qnew = q + fnow;
+					hh = sumTail(q, fnow, qnew);
+					fnow = ++findex < flen ? f[findex] : 0;
+				}
+				q = qnew;
+				if (hh != 0)
+					h[hindex++] = hh;
+			}
+		}
+		while (eindex < elen) {
+			qnew = q + enow;
+			hh = sumTail(q, enow, qnew);
+			enow = ++eindex < elen ? e[eindex] : 0;
+			q = qnew;
+			if (hh != 0)
+				h[hindex++] = hh;
+		}
+		while (findex < flen) {
+			qnew = q + fnow;
+			hh = sumTail(q, fnow, qnew);
+			fnow = ++findex < flen ? f[findex] : 0;
+			q = qnew;
+			if (hh != 0)
+				h[hindex++] = hh;
+		}
+		if (q != 0 || hindex == 0)
+			h[hindex++] = q;
+		return hindex;
+	}
+
+	/**
+	 * Stores the expansion <b>e</b> times <b>b</b> in <b>h</b> (Shewchuk's
+	 * scale_expansion_zeroelim), that needs 2 * elen components.
+	 * @return The length of the product.
+	 */
+	private static int scale(double e[], int elen, double b, double h[]) {
+		int hindex = 0;
+		double q = e[0] * b;
+		double hh = productTail(e[0], b, q);
+		if (hh != 0)
+			h[hindex++] = hh;
+		for (int eindex = 1; eindex < elen; eindex++) {
+			double product1 = e[eindex] * b;
+			double product0 = productTail(e[eindex], b, product1);
+			double s = q + product0;
+			hh = sumTail(q, product0, s);
+			if (hh != 0)
+				h[hindex++] = hh;
+			q = product1 + s;
+			hh = s - (q - product1);
+			if (hh != 0)
+				h[hindex++] = hh;
+		}
+		if (q != 0 || hindex == 0)
+			h[hindex++] = q;
+		return hindex;
+	}
+
+	/**
+	 * @return The rounding error of <b>x</b> = a + b, so that a + b = x + error exactly.
+	 */
+	private static double sumTail(double a, double b, double x) {
+		double bvirt = x - a;
+		double avirt = x - bvirt;
+		return (a - avirt) + (b - bvirt);
+	}
+
+	/**
+	 * @return The rounding error of <b>x</b> = a - b.
+	 */
+	private static double diffTail(double a, double b, double x) {
+		double bvirt = a - x;
+		double avirt = x + bvirt;
+		return (a - avirt) + (bvirt - b);
+	}
+
+	/**
+	 * @return The rounding error of <b>x</b> = a * b (Dekker's product).
+	 */
+	private static double productTail(double a, double b, double x) {
+		double c = SPLITTER * a;
+		double ahi = c - (c - a);
+		double alo = a - ahi;
+		c = SPLITTER * b;
+		double bhi = c - (c - b);
+		double blo = b - bhi;
+		double err = x - ahi * bhi - alo * bhi - ahi * blo;
+		return alo * blo - err;
+	}
+
+	// Every double is a finite binary fraction, so new BigDecimal(double) and
+	// BigDecimal addition, subtraction and multiplication are all exact.
+
+	private static double orient2dBig(double ax, double ay, double bx, double by,
+			double cx, double cy) {
+		BigDecimal acx = exact(ax).subtract(exact(cx));
+		BigDecimal acy = exact(ay).subtract(exact(cy));
+		BigDecimal bcx = exact(bx).subtract(exact(cx));
+		BigDecimal bcy = exact(by).subtract(exact(cy));
+		return acx.multiply(bcy).subtract(acy.multiply(bcx)).signum();
+	}
+
+	private static double inCircleBig(double ax, double ay, double bx, double by,
+			double cx, double cy, double dx, double dy) {
+		BigDecimal edx = exact(dx), edy = exact(dy);
+		BigDecimal adx = exact(ax).subtract(edx), ady = exact(ay).subtract(edy);
+		BigDecimal bdx = exact(bx).subtract(edx), bdy = exact(by).subtract(edy);
+		BigDecimal cdx = exact(cx).subtract(edx), cdy = exact(cy).subtract(edy);
+
+		BigDecimal aLift = adx.multiply(adx).add(ady.multiply(ady));
+		BigDecimal bLift = bdx.multiply(bdx).add(bdy.multiply(bdy));
+		BigDecimal cLift = cdx.multiply(cdx).add(cdy.multiply(cdy));
+
+		BigDecimal det = aLift.multiply(bdx.multiply(cdy).subtract(cdx.multiply(bdy)))
+				.add(bLift.multiply(cdx.multiply(ady).subtract(adx.multiply(cdy))))
+				.add(cLift.multiply(adx.multiply(bdy).subtract(bdx.multiply(ady))));
+		return det.signum();
+	}
+
+	private static BigDecimal exact(double d) {
+		return new BigDecimal(d);
+	}
+}
@@ -0,0 +1,181 @@
+package com.marcrh.graph.delaunay;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.marcrh.graph.PointBuffer;
+
+/**
+ * Delaunay triangulation of a stream of points too big to be kept in memory.<p>
+ * The points come a batch at a time, and no point of a batch may be below a
+ * point of the batches before it: e.g. sorted by <b>y</b>. The batches are
+ * inserted in an {@link IncrementalTriangulator}.<p>
+ * When a batch arrives no point can come below its lowest <b>y</b> any more, so
+ * every triad whose circumcircle is entirely below it is final: no later point
+ * can fall in the circle and flip it. Those triads are written out and forgotten,
+ * and so are the vertices left without triads, as in the spatial finalisation of
+ * Isenburg, Liu, Shewchuk and Snoeyink, "Streaming Computation of Delaunay
+ * Triangulations" (2006). Only the triads along the sweep front, the hull and
+ * the current batch are in memory.<p>
+ * The output is a sequence of records: a byte 'v' followed by <b>x</b>,
+ * <b>y</b> and <b>z</b> of a vertex as doubles, or a byte 't' followed by the
+ * three vertices of a triangle as ints, in clockwise order. Vertices are numbered
+ * from 0 in the order of their records, and a vertex comes right before the
+ * first triangle using it. Points on top of another one are not written.
+ */
+public class StreamingTriangulator {
+	/**
+	 * Neighbour of a triad across an edge shared with a triad already written.
+	 */
+	private static final int FINAL = -2;
+
+	private final DataOutput out;
+
+	/**
+	 * The triangulation of the vertices in memory.
+	 */
+	private final IncrementalTriangulator triangulation = new IncrementalTriangulator();
+	/**
+	 * The number of the record of each vertex in memory, -1 if not written yet.
+	 */
+	private int id[] = new int[0];
+
+	/**
+	 * The highest <b>y</b> added so far.
+	 */
+	private double maxY = Double.NEGATIVE_INFINITY;
+
+	private int numWrittenVertices;
+	private long numWrittenTriangles;
+	private int maxTriads;
+
+	/**
+	 * @param out Where the vertices and the triangles are written.
+	 */
+	public StreamingTriangulator(DataOutput out) {
+		this.out = out;
+	}
+
+	/**
+	 * Adds a batch of points, writing the triangles that no later point can
+	 * change.
+	 * @param batch Points not below any of the points added before.
+	 * @throws IOException If the output cannot be written.
+	 */
+	public void add(PointBuffer batch) throws IOException {
+		int n = batch.size();
+		if (n == 0)
+			return;
+		double y[] = batch.getYArray();
+		double low = Double.POSITIVE_INFINITY, high = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < n; i++) {
+			low = Math.min(low, y[i]);
+			high = Math.max(high, y[i]);
+		}
+		if (low < maxY)
+			throw new RuntimeException("Points must come sorted by y");
+		maxY = high;
+
+		if (triangulation.triads != null) {
+			maxTriads = Math.max(maxTriads, triangulation.triads.size());
+			int vertex[] = triangulation.compact(writeFinal(low), FINAL);
+			int ids[] = new int[triangulation.points.size()];
+			for (int v = 0; v < vertex.length; v++) {
+				if (vertex[v] >= 0)
+					ids[vertex[v]] = id[v];
+			}
+			id = ids;
+		}
+
+		triangulation.add(batch);
+		int old = id.length;
+		id = Arrays.copyOf(id, triangulation.points.size());
+		Arrays.fill(id, old, id.length, -1);
+	}
+
+	/**
+	 * Writes the triangles still in memory: to be called after the last batch.
+	 * @throws IOException If the output cannot be written.
+	 */
+	public void finish() throws IOException {
+		if (triangulation.triads != null) {
+			maxTriads = Math.max(maxTriads, triangulation.triads.size());
+			writeFinal(Double.POSITIVE_INFINITY);
+		}
+	}
+
+	/**
+	 * Writes the triads whose circumcircle is entirely below <b>y</b>, and
+	 * their vertices not written yet.
+	 * @return The new index of each triad, {@link #FINAL} for the written ones.
+	 */
+	private int[] writeFinal(double y) throws IOException {
+		TriadStore triads = triangulation.triads;
+		double px[] = triangulation.px, py[] = triangulation.py;
+		int numt = triads.size();
+		int map[] = new int[numt];
+		int kept = 0;
+		for (int t = 0; t < numt; t++) {
+			double r = Math.sqrt(triads.r2[t]);
+			double top = triads.cy[t] + r;
+			// the cached circle is rounded: keep a margin
+			if (top + (Math.abs(top) + r) * 1e-9 < y) {
+				triads.makeCW(t, px, py);
+				int a = write(triads.a[t]), b = write(triads.b[t]), c = write(triads.c[t]);
+				out.writeByte('t');
+				out.writeInt(a);
+				out.writeInt(b);
+				out.writeInt(c);
+				numWrittenTriangles++;
+				map[t] = FINAL;
+			} else {
+				map[t] = kept++;
+			}
+		}
+		return map;
+	}
+
+	/**
+	 * Writes vertex <b>v</b> if it was not written yet.
+	 * @return The number of its record.
+	 */
+	private int write(int v) throws IOException {
+		if (id[v] < 0) {
+			id[v] = numWrittenVertices++;
+			out.writeByte('v');
+			out.writeDouble(triangulation.px[v]);
+			out.writeDouble(triangulation.py[v]);
+			out.writeDouble(triangulation.points.getZ(v));
+		}
+		return id[v];
+	}
+
+	/**
+	 * @return How many vertices have been written.
+	 */
+	public int getNumVertices() {
+		return numWrittenVertices;
+	}
+
+	/**
+	 * @return How many triangles have been written.
+	 */
+	public long getNumTriangles() {
+		return numWrittenTriangles;
+	}
+
+	/**
+	 * @return How many points were left out, almost always duplicates.
+	 */
+	public long getNumSkipped() {
+		return triangulation.getNumSkipped();
+	}
+
+	/**
+	 * @return The largest number of triads that were in memory together.
+	 */
+	public int getMaxTriads() {
+		return maxTriads;
+	}
+}
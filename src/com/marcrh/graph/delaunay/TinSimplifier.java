@@ -0,0 +1,432 @@
+package com.marcrh.graph.delaunay;
+
+import java.util.Arrays;
+
+import com.marcrh.graph.PointBuffer;
+import com.marcrh.graph.RadixSort;
+
+/**
+ * Greedy insertion simplification of a terrain (Garland and Heckbert, "Fast
+ * Polygonal Approximation of Terrains and Height Fields", 1995).<p>
+ * The points are <b>x</b>, <b>y</b> positions with a height in <b>z</b>. The
+ * simplification starts from the Delaunay triangulation of the convex hull and
+ * keeps inserting the point with the largest vertical error, i.e. the distance
+ * between its height and the plane of the triad containing it, until no error is
+ * above the tolerance. The result is a Delaunay triangulation of the inserted
+ * points only; on smooth terrain they are a small fraction of the input.<p>
+ * Every triad keeps the list of the points not inserted yet that fall inside it,
+ * and its worst point is kept in a max-heap on the error. An insertion only
+ * changes the triads around the new vertex (see {@link PointInserter}), so only
+ * their points are moved to the new triads and only their errors are computed
+ * again.<p>
+ * Points with the same <b>x</b>, <b>y</b> of a vertex cannot be inserted: their
+ * error is counted in {@link #getMaxError()} and {@link #getRmsError()} anyway.
+ */
+public class TinSimplifier {
+	private double px[];
+	private double py[];
+	private double pz[];
+	private TriadStore triads;
+	private PointInserter inserter;
+	/**
+	 * The sort of the hull and the flips of its fan, kept between two
+	 * simplifications with their work arrays.
+	 */
+	private final RadixSort sort = new RadixSort();
+	private final Triangulator flipper = new Triangulator(1, sort);
+
+	/**
+	 * First point not inserted in each triad, -1 if none.
+	 */
+	private int head[];
+	/**
+	 * Next point in the same triad, -1 at the end.
+	 */
+	private int next[];
+	/**
+	 * Triad holding each point not inserted yet, the last one for the others.
+	 */
+	private int holder[];
+	private boolean inserted[];
+
+	/**
+	 * Worst point of each triad and its error.
+	 */
+	private int worst[];
+	private double error[];
+	/**
+	 * Max-heap of the triads with points left, on {@link #error}.
+	 */
+	private int heap[];
+	private int heapSize;
+	/**
+	 * Position of each triad in {@link #heap}, -1 if it is not there.
+	 */
+	private int position[];
+
+	/**
+	 * Work array of the points moved by an insertion.
+	 */
+	private int moved[] = new int[64];
+
+	private int numVertices;
+	private double maxError;
+	private double rmsError;
+	/**
+	 * Largest and sum of the squares of the errors of the points that
+	 * coincide with a vertex.
+	 */
+	private double duplicateMax;
+	private double duplicateSum2;
+
+	/**
+	 * Simplifies the terrain until no point is more than <b>tolerance</b> away,
+	 * vertically, from the triangulation.
+	 * @param points The points, with the height in <b>z</b>.
+	 * @param tolerance The largest vertical error allowed.
+	 * @return A Delaunay triangulation of some of the points; the vertices are
+	 * indexes of the points in <b>points</b>.
+	 */
+	public TriadStore simplify(PointBuffer points, double tolerance) {
+		int n = points.size();
+		if (n < 3)
+			throw new RuntimeException("Number of points supplied must be >= 3");
+		px = points.getXArray();
+		py = points.getYArray();
+		pz = points.getZArray();
+		inserted = new boolean[n];
+		next = new int[n];
+		holder = new int[n];
+		numVertices = 0;
+		duplicateMax = 0;
+		duplicateSum2 = 0;
+
+		triads = triangulateHull(n);
+		inserter = new PointInserter(triads, px, py, n);
+		int capacity = Math.max(16, triads.size() * 2);
+		head = new int[capacity];
+		worst = new int[capacity];
+		error = new double[capacity];
+		heap = new int[capacity];
+		position = new int[capacity];
+		Arrays.fill(head, -1);
+		Arrays.fill(position, -1);
+		heapSize = 0;
+
+		// the points are located in input order, starting from the triad of the
+		// one before: survey and track points come one close to the other
+		int t = 0;
+		for (int p = 0; p < n; p++) {
+			if (inserted[p])
+				continue;
+			t = inserter.locate(p, t);
+			add(p, t);
+		}
+		for (t = 0; t < triads.size(); t++)
+			update(t);
+
+		while (heapSize > 0 && error[heap[0]] > tolerance) {
+			t = heap[0];
+			int p = worst[t];
+			inserted[p] = true;
+			numVertices++;
+			inserter.insert(p, t);
+			redistribute(p);
+		}
+
+		computeErrors(n);
+		TriadStore result = triads;
+		triads = null;
+		inserter = null;
+		head = next = holder = worst = heap = position = null;
+		error = null;
+		inserted = null;
+		return result;
+	}
+
+	/**
+	 * Delaunay triangulation of the convex hull of the points, whose vertices
+	 * are marked as inserted. Points in the middle of a hull edge are not
+	 * vertices: they are inserted later like the others, splitting the edge.
+	 */
+	private TriadStore triangulateHull(int n) {
+		int hull[] = convexHull(n);
+		int m = hull.length;
+		if (m < 3)
+			throw new RuntimeException("The points are collinear");
+		for (int i = 0; i < m; i++)
+			inserted[hull[i]] = true;
+		numVertices = m;
+
+		// a fan from the first vertex, then flipped to Delaunay
+		TriadStore fan = new TriadStore(2 * m);
+		for (int i = 1; i < m - 1; i++) {
+			int t = fan.add(hull[0], hull[i], hull[i + 1], px, py);
+			fan.ab[t] = i > 1 ? t - 1 : -1;
+			fan.ac[t] = i < m - 2 ? t + 1 : -1;
+		}
+		flipper.setPoints(px, py, n);
+		flipper.legalise(fan, 0);
+		flipper.setPoints(null, null, 0);
+		return fan;
+	}
+
+	/**
+	 * Andrew's monotone chain on the points sorted by <b>x</b> and then by
+	 * <b>y</b>. Collinear points on an edge are left out.
+	 * @return The indexes of the hull vertices.
+	 */
+	private int[] convexHull(int n) {
+		int order[] = new int[n];
+		double keys[] = new double[n];
+		for (int i = 0; i < n; i++) {
+			order[i] = i;
+			keys[i] = py[i];
+		}
+		// the sort is stable: by y first, then by x
+		sort.sort(keys, order, 0, n);
+		for (int i = 0; i < n; i++)
+			keys[i] = px[order[i]];
+		sort.sort(keys, order, 0, n);
+
+		int hull[] = new int[2 * n];
+		int k = 0;
+		for (int i = 0; i < n; i++) {
+			int p = order[i];
+			while (k >= 2 && !turnsLeft(hull[k - 2], hull[k - 1], p))
+				k--;
+			hull[k++] = p;
+		}
+		for (int i = n - 2, lower = k + 1; i >= 0; i--) {
+			int p = order[i];
+			while (k >= lower && !turnsLeft(hull[k - 2], hull[k - 1], p))
+				k--;
+			hull[k++] = p;
+		}
+		// the last point is the first one again
+		return Arrays.copyOf(hull, Math.max(k - 1, 0));
+	}
+
+	private boolean turnsLeft(int a, int b, int c) {
+		return Predicates.orient2d(px[a], py[a], px[b], py[b], px[c], py[c]) > 0;
+	}
+
+	/**
+	 * Moves the points of the triads changed by the insertion of <b>p</b> to
+	 * the triads now containing them and updates the worst point of each
+	 * changed triad.
+	 */
+	private void redistribute(int p) {
+		int changed[] = inserter.getChanged();
+		int numChanged = inserter.getNumChanged();
+		int size = triads.size();
+		if (size > head.length) {
+			int capacity = Math.max(size, head.length * 2);
+			int old = head.length;
+			head = Arrays.copyOf(head, capacity);
+			worst = Arrays.copyOf(worst, capacity);
+			error = Arrays.copyOf(error, capacity);
+			heap = Arrays.copyOf(heap, capacity);
+			position = Arrays.copyOf(position, capacity);
+			Arrays.fill(head, old, capacity, -1);
+			Arrays.fill(position, old, capacity, -1);
+		}
+
+		int numMoved = 0;
+		for (int i = 0; i < numChanged; i++) {
+			int t = changed[i];
+			for (int q = head[t]; q >= 0; q = next[q]) {
+				if (q == p)
+					continue;
+				if (numMoved == moved.length)
+					moved = Arrays.copyOf(moved, numMoved * 2);
+				moved[numMoved++] = q;
+			}
+			head[t] = -1;
+		}
+		// the changed triads cover the area of the old ones, so the walks
+		// from the old triad of a point stay among them
+		for (int i = 0; i < numMoved; i++) {
+			int q = moved[i];
+			add(q, inserter.locate(q, holder[q]));
+		}
+		for (int i = 0; i < numChanged; i++)
+			update(changed[i]);
+	}
+
+	/**
+	 * Puts point <b>p</b> in the list of triad <b>t</b>, or counts its error if
+	 * it coincides with a vertex of <b>t</b>.
+	 */
+	private void add(int p, int t) {
+		holder[p] = t;
+		int v = vertexAt(p, t);
+		if (v >= 0) {
+			double e = Math.abs(pz[p] - pz[v]);
+			duplicateMax = Math.max(duplicateMax, e);
+			duplicateSum2 += e * e;
+			return;
+		}
+		next[p] = head[t];
+		head[t] = p;
+	}
+
+	/**
+	 * @return The vertex of triad <b>t</b> with the same position of point
+	 * <b>p</b>, -1 if none.
+	 */
+	private int vertexAt(int p, int t) {
+		int a = triads.a[t], b = triads.b[t], c = triads.c[t];
+		if (px[a] == px[p] && py[a] == py[p])
+			return a;
+		if (px[b] == px[p] && py[b] == py[p])
+			return b;
+		if (px[c] == px[p] && py[c] == py[p])
+			return c;
+		return -1;
+	}
+
+	/**
+	 * Finds the worst point of triad <b>t</b> and moves it in the heap.
+	 */
+	private void update(int t) {
+		int w = -1;
+		double max = -1;
+		if (head[t] >= 0) {
+			Plane plane = new Plane(t);
+			for (int q = head[t]; q >= 0; q = next[q]) {
+				double e = plane.error(q);
+				if (e > max) {
+					max = e;
+					w = q;
+				}
+			}
+		}
+		worst[t] = w;
+		error[t] = max;
+
+		int i = position[t];
+		if (w < 0) {
+			if (i >= 0)
+				removeAt(i);
+		} else if (i < 0) {
+			heap[heapSize] = t;
+			position[t] = heapSize;
+			siftUp(heapSize++);
+		} else {
+			siftUp(i);
+			siftDown(position[t]);
+		}
+	}
+
+	private void removeAt(int i) {
+		int t = heap[i];
+		position[t] = -1;
+		int last = heap[--heapSize];
+		if (i == heapSize)
+			return;
+		heap[i] = last;
+		position[last] = i;
+		siftUp(i);
+		siftDown(position[last]);
+	}
+
+	private void siftUp(int i) {
+		int t = heap[i];
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			int u = heap[parent];
+			if (error[u] >= error[t])
+				break;
+			heap[i] = u;
+			position[u] = i;
+			i = parent;
+		}
+		heap[i] = t;
+		position[t] = i;
+	}
+
+	private void siftDown(int i) {
+		int t = heap[i];
+		int half = heapSize >>> 1;
+		while (i < half) {
+			int child = 2 * i + 1;
+			if (child + 1 < heapSize && error[heap[child + 1]] > error[heap[child]])
+				child++;
+			int u = heap[child];
+			if (error[t] >= error[u])
+				break;
+			heap[i] = u;
+			position[u] = i;
+			i = child;
+		}
+		heap[i] = t;
+		position[t] = i;
+	}
+
+	/**
+	 * Max and RMS of the errors of all the points, 0 for the inserted ones.
+	 */
+	private void computeErrors(int n) {
+		double max = duplicateMax;
+		double sum2 = duplicateSum2;
+		for (int t = 0; t < triads.size(); t++) {
+			if (head[t] < 0)
+				continue;
+			Plane plane = new Plane(t);
+			for (int q = head[t]; q >= 0; q = next[q]) {
+				double e = plane.error(q);
+				max = Math.max(max, e);
+				sum2 += e * e;
+			}
+		}
+		maxError = max;
+		rmsError = Math.sqrt(sum2 / n);
+	}
+
+	/**
+	 * The plane through the vertices of a triad.
+	 */
+	private class Plane {
+		private final double x0, y0, z0;
+		private final double dzdx, dzdy;
+
+		Plane(int t) {
+			int a = triads.a[t], b = triads.b[t], c = triads.c[t];
+			x0 = px[a];
+			y0 = py[a];
+			z0 = pz[a];
+			double bx = px[b] - x0, by = py[b] - y0, bz = pz[b] - z0;
+			double cx = px[c] - x0, cy = py[c] - y0, cz = pz[c] - z0;
+			double d = bx * cy - by * cx;
+			dzdx = (bz * cy - by * cz) / d;
+			dzdy = (bx * cz - bz * cx) / d;
+		}
+
+		double error(int q) {
+			return Math.abs(pz[q] - (z0 + dzdx * (px[q] - x0) + dzdy * (py[q] - y0)));
+		}
+	}
+
+	/**
+	 * @return How many points the last simplification kept.
+	 */
+	public int getNumVertices() {
+		return numVertices;
+	}
+
+	/**
+	 * @return The largest vertical error of the last simplification.
+	 */
+	public double getMaxError() {
+		return maxError;
+	}
+
+	/**
+	 * @return The root mean square of the vertical errors of all the points
+	 * in the last simplification, the kept ones included.
+	 */
+	public double getRmsError() {
+		return rmsError;
+	}
+}
@@ -16,8 +16,6 @@ public class Triad extends Point {
 	public static final int TR_EDGE_AC = 2;
 	public static final int TR_EDGE_INVALID = -1;
 
-	private static double EPSILON = 0.000001;
-
 	public int a, b, c;
 	public int ab, bc, ac; // adjacent edges index to neighbouring triangle.
 
@@ -33,6 +31,48 @@ public class Triad extends Point {
 		findCircumcircle(points);
 	}
 
+	/**
+	 * A triad with known neighbours and circumcircle, see {@link TriadStore#getTriad(int)}.
+	 */
+	Triad(int a, int b, int c, int ab, int bc, int ac, double x, double y,
+			double circumcircleR2) {
+		this.a = a;
+		this.b = b;
+		this.c = c;
+		this.ab = ab;
+		this.bc = bc;
+		this.ac = ac;
+		this.x = x;
+		this.y = y;
+		this.circumcircleR2 = circumcircleR2;
+	}
+
+	/**
+	 * A new triad whose vertices are indices into the coordinate arrays
+	 * <b>px</b> and <b>py</b>.
+	 */
+	public Triad(int a, int b, int c, double px[], double py[]) {
+		this.a = a;
+		this.b = b;
+		this.c = c;
+		ab = -1;
+		bc = -1;
+		ac = -1;
+		findCircumcircle(px, py);
+	}
+
+	public void set(int a, int b, int c, int ab, int bc, int ac,
+			double px[], double py[]) {
+		this.a = a;
+		this.b = b;
+		this.c = c;
+		this.ab = ab;
+		this.bc = bc;
+		this.ac = ac;
+
+		findCircumcircle(px, py);
+	}
+
 	public void set(int a, int b, int c, int ab, int bc, int ac,
 			List<? extends Point> points) {
 		this.a = a;
@@ -199,16 +239,29 @@ public class Triad extends Point {
 	 * @param points
 	 */
 	void makeCW(List<? extends Point> points) {
-		if (isClockwise(points)) {
-			// Need to swap vertices b<->c and edges ab<->bc
-			int t = b;
-			b = c;
-			c = t;
-
-			t = ab;
-			ab = ac;
-			ac = t;
-		}
+		if (isClockwise(points))
+			swapBC();
+	}
+
+	/**
+	 * If current orientation is not clockwise, swap b<->c
+	 * @param px The <b>x</b> coordinates of the points.
+	 * @param py The <b>y</b> coordinates of the points.
+	 */
+	public void makeCW(double px[], double py[]) {
+		if (isClockwise(px[a], py[a], px[b], py[b], px[c], py[c]))
+			swapBC();
+	}
+
+	private void swapBC() {
+		// Need to swap vertices b<->c and edges ab<->bc
+		int t = b;
+		b = c;
+		c = t;
+
+		t = ab;
+		ab = ac;
+		ac = t;
 	}
 
 	public double area(List<? extends Point> points) {
@@ -225,70 +278,48 @@ public class Triad extends Point {
 		Point pa = points.get(a);
 		Point pb = points.get(b);
 		Point pc = points.get(c);
-		double pax = pa.x;
-		double pay = pa.y;
-		double pbx = pb.x;
-		double pby = pb.y;
-		double pcx = pc.x;
-		double pcy = pc.y;
-		double centroidX = (pax + pbx + pcx) / 3d;
-		double centroidY = (pay + pby + pcy) / 3d;
-
-		double dr0 = pax - centroidX;
-		double dc0 = pay - centroidY;
-		double dx01 = pbx - pax;
-		double dy01 = pby - pay;
-
-		double df = -dx01 * dc0 + dy01 * dr0;
-		return df > 0;
+		return isClockwise(pa.x, pa.y, pb.x, pb.y, pc.x, pc.y);
+	}
+
+	/**
+	 * Despite the name, true when the triangle is anticlockwise in a y-up
+	 * frame: {@link #makeCW(double[], double[])} swaps the vertices then.
+	 */
+	static boolean isClockwise(double pax, double pay, double pbx,
+			double pby, double pcx, double pcy) {
+		return Predicates.orient2d(pax, pay, pbx, pby, pcx, pcy) > 0;
 	}
 
 	boolean findCircumcircle(List<? extends Point> points) {
 		Point pa = points.get(a);
 		Point pb = points.get(b);
 		Point pc = points.get(c);
-		double x1 = pa.x;
-		double y1 = pa.y;
-		double x2 = pb.x;
-		double y2 = pb.y;
-		double x3 = pc.x;
-		double y3 = pc.y;
-		double m1, m2, mx1, mx2, my1, my2;
-		double dx, dy, rsqr, drsqr;
-		double xc, yc;
-
-		if (Math.abs(y2 - y1) < EPSILON) {
-			m2 = -(x3 - x2) / (y3 - y2);
-			mx2 = (x2 + x3) / 2.0;
-			my2 = (y2 + y3) / 2.0;
-			xc = (x2 + x1) / 2.0;
-			yc = m2 * (xc - mx2) + my2;
-		} else if (Math.abs(y3 - y2) < EPSILON) {
-			m1 = -(x2 - x1) / (y2 - y1);
-			mx1 = (x1 + x2) / 2.0;
-			my1 = (y1 + y2) / 2.0;
-			xc = (x3 + x2) / 2.0;
-			yc = m1 * (xc - mx1) + my1;
-		} else {
-			m1 = -(x2 - x1) / (y2 - y1);
-			m2 = -(x3 - x2) / (y3 - y2);
-			mx1 = (x1 + x2) / 2.0;
-			mx2 = (x2 + x3) / 2.0;
-			my1 = (y1 + y2) / 2.0;
-			my2 = (y2 + y3) / 2.0;
-			xc = (m1 * mx1 - m2 * mx2 + my2 - my1) / (m1 - m2);
-			yc = m1 * (xc - mx1) + my1;
-		}
+		return findCircumcircle(pa.x, pa.y, pb.x, pb.y, pc.x, pc.y);
+	}
 
-		dx = x2 - xc;
-		dy = y2 - yc;
-		rsqr = dx * dx + dy * dy;
+	boolean findCircumcircle(double px[], double py[]) {
+		return findCircumcircle(px[a], py[a], px[b], py[b], px[c], py[c]);
+	}
 
-		x = xc;
-		y = yc;
-		circumcircleR2 = Math.sqrt(rsqr);
-		circumcircleR2 = circumcircleR2 * circumcircleR2;
-		return true;
+	/**
+	 * @return false if the three points are aligned, then the circle is infinite.
+	 */
+	private boolean findCircumcircle(double x1, double y1, double x2,
+			double y2, double x3, double y3) {
+		// centre relative to the first vertex, no special case for
+		// horizontal edges
+		double bx = x2 - x1, by = y2 - y1;
+		double cx = x3 - x1, cy = y3 - y1;
+		double d = 2 * (bx * cy - by * cx);
+		double b2 = bx * bx + by * by;
+		double c2 = cx * cx + cy * cy;
+		double ux = (cy * b2 - by * c2) / d;
+		double uy = (bx * c2 - cx * b2) / d;
+
+		x = x1 + ux;
+		y = y1 + uy;
+		circumcircleR2 = ux * ux + uy * uy;
+		return Predicates.orient2d(x1, y1, x2, y2, x3, y3) != 0;
 	}
 
 	/**
@@ -297,8 +328,18 @@ public class Triad extends Point {
 	 * @return true if p is inside the circumcircle, false otherwise.
 	 */
 	public boolean isInCircumcircle(Point p) {
-		double dx = x - p.x;
-		double dy = y - p.y;
+		return isInCircumcircle(p.x, p.y);
+	}
+
+	/**
+	 * Return true iff the point (<b>px</b>, <b>py</b>) is inside the circumcircle of this triangle
+	 * @param px The <b>x</b> coordinate of the point to check.
+	 * @param py The <b>y</b> coordinate of the point to check.
+	 * @return true if the point is inside the circumcircle, false otherwise.
+	 */
+	public boolean isInCircumcircle(double px, double py) {
+		double dx = x - px;
+		double dy = y - py;
 		double r2 = dx * dx + dy * dy;
 		return r2 < circumcircleR2;
 	}
@@ -0,0 +1,361 @@
+package com.marcrh.graph.delaunay;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Structure-of-arrays storage of the triangles of a triangulation.<p>
+ * Triangle <b>t</b> is made of the vertices <b>a[t]</b>, <b>b[t]</b> and <b>c[t]</b>
+ * (indices of points), of the neighbours <b>ab[t]</b>, <b>bc[t]</b> and <b>ac[t]</b>
+ * (indices of triangles, -1 on the outside) and of its circumcircle. The fields have
+ * the same meaning of the ones of {@link Triad}, but a triangle costs 48 bytes in nine
+ * flat arrays instead of an object per triangle.<p>
+ * The getters are a read-only view of the store; {@link #getTriad(int)} and
+ * {@link #toTriads()} materialize {@link Triad} objects for code that needs them.
+ */
+public class TriadStore {
+
+	int a[];
+	int b[];
+	int c[];
+	int ab[];
+	int bc[];
+	int ac[];
+	double cx[];
+	double cy[];
+	double r2[];
+	private int size;
+
+	/**
+	 * A new empty store able to hold <b>capacity</b> triangles before growing.
+	 * @param capacity Initial number of triangles.
+	 */
+	public TriadStore(int capacity) {
+		if (capacity < 1)
+			capacity = 1;
+		a = new int[capacity];
+		b = new int[capacity];
+		c = new int[capacity];
+		ab = new int[capacity];
+		bc = new int[capacity];
+		ac = new int[capacity];
+		cx = new double[capacity];
+		cy = new double[capacity];
+		r2 = new double[capacity];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Empties the store. The arrays are kept for the triangles added next.
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Appends a triangle without neighbours and computes its circumcircle.
+	 * @return The index of the new triangle.
+	 */
+	int add(int va, int vb, int vc, double px[], double py[]) {
+		if (size == a.length)
+			grow();
+		int t = size++;
+		a[t] = va;
+		b[t] = vb;
+		c[t] = vc;
+		ab[t] = -1;
+		bc[t] = -1;
+		ac[t] = -1;
+		findCircumcircle(t, px, py);
+		return t;
+	}
+
+	/**
+	 * Appends <b>count</b> triangles to be filled by {@link #copy(TriadStore, int[], int)}.
+	 * @return The index of the first of them.
+	 */
+	int reserve(int count) {
+		if (size + count > a.length)
+			grow(size + count);
+		int t = size;
+		size += count;
+		return t;
+	}
+
+	/**
+	 * Overwrites the triangles from <b>base</b> on with those of <b>other</b>,
+	 * renumbering their vertices through <b>vertex</b> and shifting their
+	 * neighbours by <b>base</b>. Copies to separate ranges can run concurrently.
+	 * @param other The triangles to copy.
+	 * @param vertex The index in this store of each vertex index of <b>other</b>.
+	 * @param base Index of the first triangle to overwrite.
+	 */
+	void copy(TriadStore other, int vertex[], int base) {
+		int n = other.size;
+		for (int t = 0; t < n; t++) {
+			int u = base + t;
+			a[u] = vertex[other.a[t]];
+			b[u] = vertex[other.b[t]];
+			c[u] = vertex[other.c[t]];
+			ab[u] = other.ab[t] < 0 ? -1 : other.ab[t] + base;
+			bc[u] = other.bc[t] < 0 ? -1 : other.bc[t] + base;
+			ac[u] = other.ac[t] < 0 ? -1 : other.ac[t] + base;
+		}
+		System.arraycopy(other.cx, 0, cx, base, n);
+		System.arraycopy(other.cy, 0, cy, base, n);
+		System.arraycopy(other.r2, 0, r2, base, n);
+	}
+
+	/**
+	 * Moves triangle <b>from</b> to index <b>to</b>, pointing its neighbours
+	 * at the new index; the old one is left unused.
+	 */
+	void move(int from, int to) {
+		a[to] = a[from];
+		b[to] = b[from];
+		c[to] = c[from];
+		ab[to] = ab[from];
+		bc[to] = bc[from];
+		ac[to] = ac[from];
+		cx[to] = cx[from];
+		cy[to] = cy[from];
+		r2[to] = r2[from];
+		if (ab[to] >= 0)
+			changeAdjacentIndex(ab[to], from, to);
+		if (bc[to] >= 0)
+			changeAdjacentIndex(bc[to], from, to);
+		if (ac[to] >= 0)
+			changeAdjacentIndex(ac[to], from, to);
+	}
+
+	/**
+	 * Drops the triangles from <b>size</b> on; no triangle left may have them
+	 * as neighbours.
+	 */
+	void truncate(int size) {
+		this.size = size;
+	}
+
+	/**
+	 * Grows the arrays, if needed, to hold <b>capacity</b> triangles.
+	 */
+	void ensureCapacity(int capacity) {
+		if (capacity > a.length)
+			grow(capacity);
+	}
+
+	private void grow() {
+		grow(0);
+	}
+
+	private void grow(int minCapacity) {
+		int capacity = Math.max(a.length + (a.length >> 1) + 1, minCapacity);
+		a = Arrays.copyOf(a, capacity);
+		b = Arrays.copyOf(b, capacity);
+		c = Arrays.copyOf(c, capacity);
+		ab = Arrays.copyOf(ab, capacity);
+		bc = Arrays.copyOf(bc, capacity);
+		ac = Arrays.copyOf(ac, capacity);
+		cx = Arrays.copyOf(cx, capacity);
+		cy = Arrays.copyOf(cy, capacity);
+		r2 = Arrays.copyOf(r2, capacity);
+	}
+
+	/**
+	 * @see Triad#set(int, int, int, int, int, int, double[], double[])
+	 */
+	void set(int t, int va, int vb, int vc, int nab, int nbc, int nac,
+			double px[], double py[]) {
+		a[t] = va;
+		b[t] = vb;
+		c[t] = vc;
+		ab[t] = nab;
+		bc[t] = nbc;
+		ac[t] = nac;
+		findCircumcircle(t, px, py);
+	}
+
+	/**
+	 * If the orientation of triangle <b>t</b> is not clockwise, swap b<->c
+	 * @see Triad#makeCW(double[], double[])
+	 */
+	public void makeCW(int t, double px[], double py[]) {
+		if (Triad.isClockwise(px[a[t]], py[a[t]], px[b[t]], py[b[t]],
+				px[c[t]], py[c[t]])) {
+			int tmp = b[t];
+			b[t] = c[t];
+			c[t] = tmp;
+
+			tmp = ab[t];
+			ab[t] = ac[t];
+			ac[t] = tmp;
+		}
+	}
+
+	/**
+	 * Same computation of {@link Triad#findCircumcircle(double[], double[])}.
+	 */
+	void findCircumcircle(int t, double px[], double py[]) {
+		double x1 = px[a[t]];
+		double y1 = py[a[t]];
+		double bx = px[b[t]] - x1, by = py[b[t]] - y1;
+		double qx = px[c[t]] - x1, qy = py[c[t]] - y1;
+		double d = 2 * (bx * qy - by * qx);
+		double b2 = bx * bx + by * by;
+		double q2 = qx * qx + qy * qy;
+		double ux = (qy * b2 - by * q2) / d;
+		double uy = (bx * q2 - qx * b2) / d;
+
+		cx[t] = x1 + ux;
+		cy[t] = y1 + uy;
+		r2[t] = ux * ux + uy * uy;
+	}
+
+	/**
+	 * Return true iff the point <b>p</b> is strictly inside the circumcircle of triangle <b>t</b>.<p>
+	 * The test is exact and does not use the cached circle; cocircular points are
+	 * decided by a symbolic perturbation, so every order of flips ends in the same
+	 * triangulation. When <b>p</b> is the opposite vertex of a neighbour the answer
+	 * is the same from the neighbour's side, so one test tells if the shared edge
+	 * must be flipped.
+	 * @see Predicates#inCircumcirclePerturbed(double, double, double, double, double, double, double, double)
+	 */
+	boolean isInCircumcircle(int t, int p, double px[], double py[]) {
+		return Predicates.inCircumcirclePerturbed(px[a[t]], py[a[t]], px[b[t]], py[b[t]],
+				px[c[t]], py[c[t]], px[p], py[p]);
+	}
+
+	/**
+	 * @see Triad#changeAdjacentIndex(int, int)
+	 */
+	void changeAdjacentIndex(int t, int fromIndex, int toIndex) {
+		if (ab[t] == fromIndex)
+			ab[t] = toIndex;
+		else if (bc[t] == fromIndex)
+			bc[t] = toIndex;
+		else if (ac[t] == fromIndex)
+			ac[t] = toIndex;
+	}
+
+	/**
+	 * @return The triangle across the edge <b>u</b>-<b>v</b> of triangle <b>t</b>.
+	 */
+	int getAdjacent(int t, int u, int v) {
+		if (a[t] != u && a[t] != v)
+			return bc[t];
+		if (b[t] != u && b[t] != v)
+			return ac[t];
+		return ab[t];
+	}
+
+	/**
+	 * Sets <b>neighbour</b> as the triangle across the edge <b>u</b>-<b>v</b> of triangle <b>t</b>.
+	 */
+	void setAdjacent(int t, int u, int v, int neighbour) {
+		if ((a[t] == u || a[t] == v) && (b[t] == u || b[t] == v))
+			ab[t] = neighbour;
+		else if ((b[t] == u || b[t] == v) && (c[t] == u || c[t] == v))
+			bc[t] = neighbour;
+		else
+			ac[t] = neighbour;
+	}
+
+	/**
+	 * @see Triad#findAdjacency(int, int, int[])
+	 */
+	void findAdjacency(int t, int pointIndex, int triangleIndex, int indexes[]) {
+		if (ab[t] == triangleIndex) {
+			indexes[0] = c[t];
+			if (pointIndex == a[t]) {
+				indexes[1] = ac[t];
+				indexes[2] = bc[t];
+			} else {
+				indexes[1] = bc[t];
+				indexes[2] = ac[t];
+			}
+		} else if (ac[t] == triangleIndex) {
+			indexes[0] = b[t];
+			if (pointIndex == a[t]) {
+				indexes[1] = ab[t];
+				indexes[2] = bc[t];
+			} else {
+				indexes[1] = bc[t];
+				indexes[2] = ab[t];
+			}
+		} else if (bc[t] == triangleIndex) {
+			indexes[0] = a[t];
+			if (pointIndex == b[t]) {
+				indexes[1] = ab[t];
+				indexes[2] = ac[t];
+			} else {
+				indexes[1] = ac[t];
+				indexes[2] = ab[t];
+			}
+		} else {
+			indexes[0] = 0;
+			indexes[1] = 0;
+			indexes[2] = 0;
+		}
+	}
+
+	public int getA(int t) {
+		return a[t];
+	}
+
+	public int getB(int t) {
+		return b[t];
+	}
+
+	public int getC(int t) {
+		return c[t];
+	}
+
+	public int getAB(int t) {
+		return ab[t];
+	}
+
+	public int getBC(int t) {
+		return bc[t];
+	}
+
+	public int getAC(int t) {
+		return ac[t];
+	}
+
+	public double getCircumcentreX(int t) {
+		return cx[t];
+	}
+
+	public double getCircumcentreY(int t) {
+		return cy[t];
+	}
+
+	public double getCircumcircleR2(int t) {
+		return r2[t];
+	}
+
+	/**
+	 * @param t Index of a triangle.
+	 * @return A new {@link Triad} with the data of the triangle.
+	 */
+	public Triad getTriad(int t) {
+		return new Triad(a[t], b[t], c[t], ab[t], bc[t], ac[t], cx[t], cy[t], r2[t]);
+	}
+
+	/**
+	 * @return A new {@link Triad} for every triangle, in the same order.
+	 */
+	public ArrayList<Triad> toTriads() {
+		ArrayList<Triad> triads = new ArrayList<Triad>(size);
+		for (int t = 0; t < size; t++)
+			triads.add(getTriad(t));
+		return triads;
+	}
+
+	public String toString() {
+		return "TriadStore --> " + size + " triangles";
+	}
+}
@@ -1,10 +1,12 @@
 package com.marcrh.graph.delaunay;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import com.marcrh.graph.Line;
 import com.marcrh.graph.Point;
+import com.marcrh.graph.PointBuffer;
 import com.marcrh.graph.Range;
 import com.marcrh.graph.Segment;
 import com.marcrh.utils.Stopwatch;
@@ -12,15 +14,33 @@ import com.marcrh.utils.Stopwatch;
 public class Voronoi {
 	
 	private Triangulator triangulator;
+	//created by the first add() from the buffer and triads of regenerate()
+	private IncrementalTriangulator incremental;
+	private PointBuffer buffer;
+	private TriadStore store;
 	private ArrayList<Triad> triads;
 	private int[][] indexedTriads;
 	private ArrayList<Point> points;
 	private BoundingPolygon boundingPolygon;
 			
 	public Voronoi(){		
-		triangulator = new Triangulator();
+		this(new Triangulator());
 	}
 	
+	/**
+	 * A diagram triangulating with <b>triangulator</b>, whose work arrays
+	 * can so be shared by many diagrams built one after the other.
+	 */
+	public Voronoi(Triangulator triangulator){
+		this.triangulator = triangulator;
+	}
+	
+	/**
+	 * @param points The sites of the diagram. The list is not copied:
+	 * {@link #regenerate()} triangulates what it holds then, and
+	 * {@link #add(List)} appends the new points to it, so the indices of
+	 * the triads are always indices in this list.
+	 */
 	public void generate(ArrayList<Point> points, Range boundingBox){
 		this.points = points;
 		this.boundingPolygon = new BoundingPolygon(boundingBox);		
@@ -31,7 +51,10 @@ public class Voronoi {
 		Stopwatch sw = new Stopwatch();
 		sw.start();
 		System.out.println("Start triangulation");
-		this.triads = triangulator.getTriangulation(points,true);
+		buffer = toBuffer(points);
+		store = triangulator.getTriadStore(buffer,true);
+		incremental = null;
+		this.triads = store.toTriads();
 		
 		for (Triad tr : triads) {
 			tr.makeCW(points);
@@ -41,6 +64,65 @@ public class Voronoi {
 		System.out.println("Triangulated in: " + sw);		
 	}
 	
+	/**
+	 * Adds points to the diagram without triangulating all of them again:
+	 * only the triads around the new points change (see IncrementalTriangulator).
+	 * @param newPoints The points to add, they go after the points of the
+	 * diagram, at the end of the list given to {@link #generate(ArrayList, Range)}.
+	 */
+	public void add(List<? extends Point> newPoints){
+		if(store==null){
+			throw new RuntimeException("Points must be generated before adding others");
+		}
+		Stopwatch sw = new Stopwatch();
+		sw.start();
+		if(incremental==null){
+			incremental = new IncrementalTriangulator(buffer, store);
+		}
+		int first = points.size();
+		points.addAll(newPoints);
+		incremental.add(toBuffer(newPoints));
+		
+		TriadStore store = incremental.getTriadStore();
+		int changed[] = incremental.getChanged();
+		int numChanged = incremental.getNumChanged();
+		for(int i=triads.size();i<store.size();i++){
+			triads.add(null);
+		}
+		indexedTriads = Arrays.copyOf(indexedTriads, points.size());
+		for(int i=first;i<points.size();i++){
+			indexedTriads[i] = new int[]{Triad.PIVOT_INVALID, Triad.PIVOT_INVALID};
+		}
+		for(int i=0;i<numChanged;i++){
+			int index = changed[i];
+			Triad tr = store.getTriad(index);
+			tr.makeCW(points);
+			triads.set(index, tr);
+			indexTriad(index, tr.a, Triad.PIVOT_A);
+			indexTriad(index, tr.b, Triad.PIVOT_B);
+			indexTriad(index, tr.c, Triad.PIVOT_C);
+		}
+		sw.stop();
+		System.out.println("Added " + newPoints.size() + " points in: " + sw);
+	}
+	
+	/**
+	 * Points a vertex of a changed triad to it. A vertex that an old triad
+	 * pointed to is always a vertex of one of the changed triads.
+	 */
+	private void indexTriad(int triadIndex, int pointIndex, int pivot){
+		indexedTriads[pointIndex][0] = triadIndex;
+		indexedTriads[pointIndex][1] = pivot;
+	}
+	
+	private static PointBuffer toBuffer(List<? extends Point> points){
+		PointBuffer buffer = new PointBuffer(points.size());
+		for (Point p : points) {
+			buffer.add(p.x, p.y, p.z);
+		}
+		return buffer;
+	}
+	
 	private void indexTriads(){
 		indexedTriads = new int[points.size()][2];
 		initializeIndex(indexedTriads);
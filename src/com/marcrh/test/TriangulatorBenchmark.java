@@ -0,0 +1,47 @@
+package com.marcrh.test;
+
+import java.util.Random;
+
+import com.marcrh.graph.PointBuffer;
+import com.marcrh.graph.delaunay.ParallelTriangulator;
+import com.marcrh.graph.delaunay.Triangulator;
+
+/**
+ * Speedup of {@link ParallelTriangulator} over {@link Triangulator} by number of threads.<p>
+ * Usage: TriangulatorBenchmark [points] [maxThreads]. Every configuration is run a
+ * few times on the same random points and the best time is printed.
+ */
+public class TriangulatorBenchmark {
+
+	private static final int RUNS = 3;
+
+	public static void main(String[] args) {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int maxThreads = args.length > 1 ? Integer.parseInt(args[1])
+				: Runtime.getRuntime().availableProcessors();
+
+		Random random = new Random(42);
+		PointBuffer points = new PointBuffer(n);
+		for (int i = 0; i < n; i++)
+			points.add(random.nextDouble() * 10000, random.nextDouble() * 10000, 0);
+
+		long sequential = Long.MAX_VALUE;
+		for (int run = 0; run < RUNS; run++) {
+			long start = System.nanoTime();
+			new Triangulator().getTriadStore(points, true);
+			sequential = Math.min(sequential, System.nanoTime() - start);
+		}
+		System.out.printf("%d points, sequential: %d ms%n", n, sequential / 1000000);
+
+		for (int threads = 1; threads <= maxThreads; threads *= 2) {
+			long best = Long.MAX_VALUE;
+			for (int run = 0; run < RUNS; run++) {
+				long start = System.nanoTime();
+				new ParallelTriangulator(threads).getTriadStore(points, true);
+				best = Math.min(best, System.nanoTime() - start);
+			}
+			System.out.printf("%3d threads: %d ms, speedup %.2f%n", threads,
+					best / 1000000, (double) sequential / best);
+		}
+	}
+}
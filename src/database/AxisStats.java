@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2011 David Costa <david@zarel.net>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package database;
+
+/**
+ * Running statistics of the values of one Axis: how many there are, their
+ * minimum, maximum and sum.
+ * NULL values are not counted, like SQL aggregates do.
+ * @author David Costa <david@zarel.net>
+ */
+class AxisStats {
+    long count;
+    double min=Double.POSITIVE_INFINITY;
+    double max=Double.NEGATIVE_INFINITY;
+    double sum;
+
+    /**
+     * statistics of no values.
+     */
+    AxisStats(){
+    }
+
+    /**
+     * a copy of other.
+     */
+    AxisStats(AxisStats other){
+        count=other.count;
+        min=other.min;
+        max=other.max;
+        sum=other.sum;
+    }
+
+    void add(double value){
+        count++;
+        if(value<min) min=value;
+        if(value>max) max=value;
+        sum+=value;
+    }
+
+    void merge(AxisStats other){
+        count+=other.count;
+        if(other.min<min) min=other.min;
+        if(other.max>max) max=other.max;
+        sum+=other.sum;
+    }
+
+    /**
+     * the following getters return 0 when there are no values, like
+     * ResultSet.getDouble() does for the NULL of an empty aggregate.
+     */
+    double getMin(){
+        return count>0 ? min : 0;
+    }
+
+    double getMax(){
+        return count>0 ? max : 0;
+    }
+
+    double getAvg(){
+        return count>0 ? sum/count : 0;
+    }
+}
@@ -17,6 +17,7 @@
  */
 package database;
 
+import com.marcrh.graph.PointBuffer;
 import java.io.File;
 import java.sql.Connection;
 import java.sql.DriverManager;
@@ -55,6 +56,38 @@ public class GisDb {
      * the JDBC connection to the points database.
      */
     private Connection conn;
+    /**
+     * how many points addPoints(PointsReader, int) should read and insert at
+     * a time when the caller has no better idea.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 50000;
+    /**
+     * the INSERT used by addPoints, prepared once per connection.
+     */
+    private PreparedStatement insertStatement;
+    /**
+     * journal mode and synchronous flag to restore at the end of a bulk
+     * load. savedJournalMode is null when no bulk load is in progress.
+     */
+    private String savedJournalMode;
+    private int savedSynchronous;
+    /**
+     * whether the spatial index is an R*Tree (see initializeSpatialIndex()).
+     */
+    private boolean rtree;
+    /**
+     * the highest rowid of points already stored in the R*Tree.
+     */
+    private long lastIndexedRowid;
+    /**
+     * cached {minN, maxN, minE, maxE} of the data, null when unknown.
+     */
+    private double[] extent;
+    /**
+     * statistics of the committed points, indexed by Axis.ordinal(). They
+     * mirror the stats table (see initializeStats()).
+     */
+    private AxisStats[] stats;
 
     /**
      * The constructor. It opens a JDBC connection and creates the specified
@@ -86,6 +119,9 @@ public class GisDb {
             if(!initializeConnection()) throw new Exception("Cannot create DB");
             initializeSchema();
         }
+        //old databases get their spatial index and statistics here
+        initializeSpatialIndex();
+        initializeStats();
     }
 
     /**
@@ -115,17 +151,6 @@ public class GisDb {
         return true;
     }
 
-    public double getMaxPerturb(Axis a) throws SQLException{
-        ResultSet res;
-        Double perturb;
-        String sqlGetPerturb="SELECT (max("+a+")-min("+a+"))/count(distinct "+a+") "+
-                "FROM points WHERE "+a+" IS NOT NULL";
-        Statement q=conn.createStatement();
-        res=q.executeQuery(sqlGetPerturb);
-        perturb=res.getDouble(1);
-        res.close();
-        return perturb;  
-    }
     /**
      * verifies that the file has the expected schema.
      * @return whether the schema is okay or not.
@@ -156,48 +181,358 @@ public class GisDb {
         q.execute(sql);
     }
 
+    /**
+     * Makes sure the spatial index used by getPoints() and countPoints()
+     * exists, building it for databases created before it was introduced.
+     *
+     * If the SQLite library has the R*Tree module the bounding box of every
+     * point is kept in the points_rtree virtual table (id = rowid of the
+     * point). Otherwise a second index on (easting, northing) is created
+     * next to the (northing, easting) primary key, and each region query
+     * uses the index of its most selective axis.
+     * @throws SQLException
+     */
+    private void initializeSpatialIndex() throws SQLException{
+        Statement q=conn.createStatement();
+        conn.setAutoCommit(true);
+        rtree=hasRtreeModule();
+        if(rtree){
+            ResultSet res=q.executeQuery("SELECT count(*) FROM sqlite_master "+
+                    "WHERE name='points_rtree'");
+            boolean exists=res.getInt(1)>0;
+            res.close();
+            if(!exists){
+                Logger.getLogger(GisDb.class.getName())
+                        .log(Level.INFO, "Building the R*Tree index of "+dbPath);
+                conn.setAutoCommit(false);
+                q.execute("CREATE VIRTUAL TABLE points_rtree "+
+                        "USING rtree(id, minN, maxN, minE, maxE)");
+                q.execute("INSERT INTO points_rtree "+
+                        "SELECT rowid, northing, northing, easting, easting FROM points");
+                conn.commit();
+                conn.setAutoCommit(true);
+            }
+            ResultSet last=q.executeQuery("SELECT max(rowid) FROM points");
+            lastIndexedRowid=last.getLong(1);
+            last.close();
+        }else{
+            q.execute("CREATE INDEX IF NOT EXISTS points_easting "+
+                    "ON points(easting, northing)");
+        }
+        q.close();
+    }
+
+    /**
+     * Loads the statistics of every Axis from the stats table. If the table
+     * does not exist (a new database or one created before it was introduced)
+     * it is created and filled with a single scan of the points.
+     *
+     * addPoints() keeps the table up to date in the same transaction that
+     * inserts the points, so the statistics are only valid as long as the
+     * points table is written through this class.
+     * @throws SQLException
+     */
+    private void initializeStats() throws SQLException{
+        Statement q=conn.createStatement();
+        conn.setAutoCommit(true);
+        stats=new AxisStats[Axis.values().length];
+        for(int i=0; i<stats.length; i++) stats[i]=new AxisStats();
+
+        ResultSet res=q.executeQuery("SELECT count(*) FROM sqlite_master "+
+                "WHERE name='stats'");
+        boolean exists=res.getInt(1)>0;
+        res.close();
+        if(exists){
+            res=q.executeQuery("SELECT axis, n, minimum, maximum, total "+
+                    "FROM stats");
+            while(res.next()){
+                AxisStats st=stats[Axis.valueOf(res.getString(1)).ordinal()];
+                st.count=res.getLong(2);
+                st.min=res.getDouble(3);
+                st.max=res.getDouble(4);
+                st.sum=res.getDouble(5);
+            }
+            res.close();
+        }else{
+            Logger.getLogger(GisDb.class.getName())
+                    .log(Level.INFO, "Computing the statistics of "+dbPath);
+            conn.setAutoCommit(false);
+            q.execute("CREATE TABLE stats(axis TEXT PRIMARY KEY, n INTEGER, "+
+                    "minimum REAL, maximum REAL, total REAL)");
+            res=q.executeQuery("SELECT northing, easting, height FROM points");
+            while(res.next()){
+                for(Axis a:Axis.values()){
+                    double value=res.getDouble(a.ordinal()+1);
+                    if(!res.wasNull()) stats[a.ordinal()].add(value);
+                }
+            }
+            res.close();
+            saveStats(stats);
+            conn.commit();
+            conn.setAutoCommit(true);
+        }
+        q.close();
+    }
+
+    /**
+     * writes the statistics into the stats table.
+     * @param newStats statistics indexed by Axis.ordinal().
+     */
+    private void saveStats(AxisStats[] newStats) throws SQLException{
+        //the columns are named: the tables of older files have a sketch
+        //column too, that is not used any more
+        PreparedStatement q=conn.prepareStatement("INSERT OR REPLACE INTO stats"+
+                "(axis, n, minimum, maximum, total) VALUES (?, ?, ?, ?, ?)");
+        for(Axis a:Axis.values()){
+            AxisStats st=newStats[a.ordinal()];
+            q.setString(1, a.toString());
+            q.setLong(2, st.count);
+            q.setDouble(3, st.min);
+            q.setDouble(4, st.max);
+            q.setDouble(5, st.sum);
+            q.executeUpdate();
+        }
+        q.close();
+    }
+
+    /**
+     * @return whether the SQLite library has been compiled with the R*Tree
+     * module.
+     */
+    private boolean hasRtreeModule(){
+        try{
+            Statement q=conn.createStatement();
+            q.execute("CREATE VIRTUAL TABLE temp.rtree_probe USING rtree(id, a, b)");
+            q.execute("DROP TABLE temp.rtree_probe");
+            q.close();
+            return true;
+        }catch(SQLException sqle){
+            return false;
+        }
+    }
+
+    /**
+     * adds the points inserted after lastIndexedRowid to the R*Tree.
+     * Must be called inside the transaction that inserted them.
+     */
+    private void updateSpatialIndex() throws SQLException{
+        if(!rtree) return;
+        PreparedStatement q=conn.prepareStatement("INSERT INTO points_rtree "+
+                "SELECT rowid, northing, northing, easting, easting FROM points "+
+                "WHERE rowid > ?");
+        q.setLong(1, lastIndexedRowid);
+        q.executeUpdate();
+        q.close();
+    }
+
     /**
      * store points into the database. The list is tipically provided by a PointsReader
      * like UtmGridHeightReader.
+     * The points are committed DEFAULT_BATCH_SIZE at a time, so a failing
+     * row only rolls back its own chunk.
      * @param data the points to be saved into the database.
      * @param nullSpecialValue a value that actually means NULL. For example
      * -9999 is a popular value to specify "no data".
      * @throws SQLException
      */
     public void addPoints(LinkedList<Point3d> data, double nullSpecialValue)throws SQLException{
-        //start transaction
-        conn.setAutoCommit(false);
-
-        PreparedStatement prep = conn.prepareStatement(
-            "INSERT OR IGNORE INTO points VALUES (?, ?, ?)");
+        PointBuffer chunk=new PointBuffer(Math.min(data.size(), DEFAULT_BATCH_SIZE));
 
         //foreach cycle
         //see http://docs.oracle.com/javase/1.5.0/docs/guide/language/foreach.html
         for( Point3d p:data ){
-            prep.setDouble(1, p.y); //northing
-            prep.setDouble(2, p.x); //easting
-            //check for nulls (-9999)
-            if(p.z != nullSpecialValue)
-                prep.setDouble(3, p.z); //height
-            else
-                prep.setNull(3, java.sql.Types.NULL);
-
-            //queue operation in the transaction
-            prep.addBatch();
+            chunk.add(p.x, p.y, p.z);
+            if(chunk.size()==DEFAULT_BATCH_SIZE){
+                addPoints(chunk, nullSpecialValue);
+                chunk.clear();
+            }
+        }
+        if(!chunk.isEmpty()) addPoints(chunk, nullSpecialValue);
+    }
+
+    /**
+     * store a chunk of points into the database in its own transaction.
+     * Coordinates follow the getAllPoints() convention: x is the easting,
+     * y the northing and z the height.
+     * If the chunk cannot be inserted only the chunk is rolled back.
+     * @param data the points to be saved into the database.
+     * @param nullSpecialValue a value that actually means NULL.
+     * @return whether the chunk has been committed.
+     * @throws SQLException
+     * @see #addPoints(LinkedList, double)
+     */
+    public boolean addPoints(PointBuffer data, double nullSpecialValue)throws SQLException{
+        return addPoints(data, nullSpecialValue, null);
+    }
+
+    /**
+     * like addPoints(PointBuffer, double), and also tells which points have
+     * actually been stored.
+     * @param stored if not null it is cleared and, when the chunk is
+     * committed, filled with the points of data stored with a height: the
+     * ones getPoints() can return, without the duplicates the table ignored.
+     * @return whether the chunk has been committed.
+     * @throws SQLException
+     */
+    public boolean addPoints(PointBuffer data, double nullSpecialValue,
+            PointBuffer stored)throws SQLException{
+        if(stored!=null) stored.clear();
+        //start transaction
+        conn.setAutoCommit(false);
+
+        if(insertStatement==null){
+            insertStatement=conn.prepareStatement(
+                "INSERT OR IGNORE INTO points VALUES (?, ?, ?)");
         }
+        PreparedStatement prep=insertStatement;
+
         try{
+            for(int i=0; i<data.size(); i++){
+                prep.setDouble(1, data.getY(i)); //northing
+                prep.setDouble(2, data.getX(i)); //easting
+                //check for nulls (-9999)
+                if(data.getZ(i) != nullSpecialValue)
+                    prep.setDouble(3, data.getZ(i)); //height
+                else
+                    prep.setNull(3, java.sql.Types.NULL);
+
+                //queue operation in the transaction
+                prep.addBatch();
+            }
             //execute the transaction
-            prep.executeBatch();
+            int[] inserted=prep.executeBatch();
+
+            //statistics of the rows actually inserted (duplicates are ignored)
+            AxisStats[] newStats=new AxisStats[stats.length];
+            for(int i=0; i<stats.length; i++) newStats[i]=new AxisStats(stats[i]);
+            for(int i=0; i<data.size(); i++){
+                if(inserted[i]==0) continue;
+                newStats[Axis.Northing.ordinal()].add(data.getY(i));
+                newStats[Axis.Easting.ordinal()].add(data.getX(i));
+                if(data.getZ(i) != nullSpecialValue){
+                    newStats[Axis.Height.ordinal()].add(data.getZ(i));
+                    if(stored!=null) stored.add(data.getX(i), data.getY(i), data.getZ(i));
+                }
+            }
+            saveStats(newStats);
+
+            updateSpatialIndex();
             conn.commit();
+            stats=newStats;
+            if(rtree){
+                Statement q=conn.createStatement();
+                try{
+                    ResultSet last=q.executeQuery("SELECT max(rowid) FROM points");
+                    lastIndexedRowid=last.getLong(1);
+                    last.close();
+                }finally{
+                    q.close();
+                }
+            }
+            extent=null;
+            return true;
         }catch(SQLException sqle){
             Logger.getLogger(GisDb.class.getName())
-                    .log(Level.WARNING, "Cannot insert a row");
-            System.err.println(sqle);
-            System.err.println("Rollbacking...");
+                    .log(Level.WARNING, "Cannot insert a chunk of "+data.size()+" rows", sqle);
+            prep.clearBatch();
             conn.rollback();
+            if(stored!=null) stored.clear();
+            return false;
         }
     }
 
+    /**
+     * store every point read by a PointsReader, a batch at a time.
+     * Only batchSize points are kept in memory, whatever the size of the
+     * source is, and each batch is committed on its own.
+     * @param reader a reader whose source has already been set.
+     * @param batchSize how many points are read and inserted at a time.
+     * @throws Exception if the reader fails.
+     * @see #bulkLoad
+     */
+    public void addPoints(PointsReader reader, int batchSize) throws Exception{
+        bulkLoad(reader, batchSize, null);
+    }
+
+    /**
+     * Loads every point of a PointsReader committing chunkSize rows at a
+     * time, with SQLite in bulk mode (see beginBulkLoad()).
+     * A chunk that cannot be inserted is rolled back and skipped, the load
+     * goes on with the next one.
+     * @param reader a reader whose source has already been set.
+     * @param chunkSize how many rows each transaction contains.
+     * @param listener is told about the progress after every chunk. Can be null.
+     * @return how many rows have been committed (ignored duplicates included).
+     * @throws Exception if the reader fails.
+     */
+    public long bulkLoad(PointsReader reader, int chunkSize,
+            final LoadProgressListener listener) throws Exception{
+        final double nullSpecialValue=reader.getNullValue();
+        final long start=System.nanoTime();
+        final long[] rows={0, 0}; //committed, failed
+        beginBulkLoad();
+        try{
+            reader.streamPoints(chunkSize, new PointsConsumer() {
+                @Override
+                public void consume(PointBuffer chunk) throws SQLException {
+                    if(addPoints(chunk, nullSpecialValue)) rows[0]+=chunk.size();
+                    else rows[1]+=chunk.size();
+                    if(listener!=null){
+                        listener.progress(rows[0], rows[1],
+                            rowsPerSecond(rows[0]+rows[1], start));
+                    }
+                }
+            });
+        }finally{
+            endBulkLoad();
+        }
+        return rows[0];
+    }
+
+    /**
+     * @return rows per second elapsed since start (a System.nanoTime() value).
+     */
+    static double rowsPerSecond(long rows, long start){
+        double seconds=(System.nanoTime()-start)/1e9;
+        return seconds>0 ? rows/seconds : 0;
+    }
+
+    /**
+     * Puts SQLite in a mode suited to big imports: the rollback journal is
+     * kept in memory (a chunk can still be rolled back) and the file is not
+     * synced at every commit. Call endBulkLoad() when done: until then a
+     * power failure can corrupt the database.
+     * @throws SQLException
+     */
+    public void beginBulkLoad() throws SQLException{
+        if(savedJournalMode!=null) return;
+        conn.setAutoCommit(true);
+        Statement q=conn.createStatement();
+        ResultSet res=q.executeQuery("PRAGMA journal_mode");
+        savedJournalMode=res.next() ? res.getString(1) : "delete";
+        res.close();
+        res=q.executeQuery("PRAGMA synchronous");
+        savedSynchronous=res.next() ? res.getInt(1) : 2;
+        res.close();
+        q.executeQuery("PRAGMA journal_mode=MEMORY").close();
+        q.executeUpdate("PRAGMA synchronous=OFF");
+        q.close();
+    }
+
+    /**
+     * Restores the journal and synchronous modes that were active before
+     * beginBulkLoad().
+     * @throws SQLException
+     */
+    public void endBulkLoad() throws SQLException{
+        if(savedJournalMode==null) return;
+        conn.setAutoCommit(true);
+        Statement q=conn.createStatement();
+        q.executeQuery("PRAGMA journal_mode="+savedJournalMode).close();
+        q.executeUpdate("PRAGMA synchronous="+savedSynchronous);
+        q.close();
+        savedJournalMode=null;
+    }
 
     /**
      * reads all the points stored in the database and returns them as a
@@ -224,56 +559,38 @@ public class GisDb {
 
     /**
      * Find the minimum value of a certain axis in the data.
+     * The value comes from the statistics kept by addPoints(), no query is
+     * run.
      * @param a Direction of which we're about to calculate the minimum.
      * @see Axis
-     * @return the minimum value found
+     * @return the minimum value found, 0 if there is no data.
      * @throws SQLException
      */
     public double getMin(Axis a) throws SQLException{
-        ResultSet res;
-        Double min;
-        String sqlGetMin="SELECT min("+a+") FROM points WHERE "+a+" IS NOT NULL";
-        Statement q=conn.createStatement();
-        res=q.executeQuery(sqlGetMin);
-        min=res.getDouble(1);
-        res.close();
-        return min;
+        return stats[a.ordinal()].getMin();
     }
 
     /**
      * Find the maximum value of a certain axis in the data.
      * @param a Direction of which we're about to calculate the maximum.
      * @see Axis
-     * @return the maximum value found
+     * @see #getMin
+     * @return the maximum value found, 0 if there is no data.
      * @throws SQLException
      */
     public double getMax(Axis a) throws SQLException{
-        ResultSet res;
-        Double max;
-        String sqlGetMax="SELECT max("+a+") FROM points WHERE "+a+" IS NOT NULL";
-        Statement q=conn.createStatement();
-        res=q.executeQuery(sqlGetMax);
-        max=res.getDouble(1);
-        res.close();
-        return max;  
+        return stats[a.ordinal()].getMax();
     }
 
     /**
      * Calculate the average of the data in a particular direction.
-     * @see #getMax
+     * @see #getMin
      * @param a the Axis we are averaging to.
-     * @return the data average on that axis.
+     * @return the data average on that axis, 0 if there is no data.
      * @throws SQLException
      */
     public double getAvg(Axis a) throws SQLException{
-        ResultSet res;
-        Double avg;
-        String sqlGetAvg="SELECT avg("+a+") FROM points WHERE "+a+" IS NOT NULL";
-        Statement q=conn.createStatement();
-        res=q.executeQuery(sqlGetAvg);
-        avg=res.getDouble(1);
-        res.close();
-        return avg;  
+        return stats[a.ordinal()].getAvg();
     }
     
     /**
@@ -284,37 +601,62 @@ public class GisDb {
     }
     
     /**
-     * Retrieve all points in a certain range
+     * Retrieve all points in a certain range.
+     * Like getAllPoints() of the readers, x is the easting, y the northing
+     * and z the height.
+     * @return a buffer with the points that have a height.
      */
-    public LinkedList<Point3d> getPoints(
+    public PointBuffer getPoints(
             double minN, double minE, double maxN, double maxE)
             throws SQLException
     {
-        double north,east,z;
         ResultSet rs;
-        String selectPart="SELECT * FROM points WHERE height IS NOT NULL"+
-                          " AND northing BETWEEN ? and ?"+
-                          " AND easting BETWEEN ? and ?";
-        PreparedStatement q=conn.prepareStatement(selectPart);
-        q.setDouble(1,minN);
-        q.setDouble(2,maxN);
-        q.setDouble(3,minE);
-        q.setDouble(4,maxE);
-        q.executeQuery();
+        PreparedStatement q=prepareRegionQuery("northing, easting, height",
+                minN, minE, maxN, maxE);
         rs=q.executeQuery();
         
-        LinkedList <Point3d> resultList = new LinkedList<Point3d>();
+        PointBuffer result=new PointBuffer();
         while (rs.next()) {
-            north = rs.getDouble("northing");
-            east = rs.getDouble("easting");
-            z = rs.getDouble("height");
-            Point3d p = new Point3d(east, north, z);
-            resultList.add(p);
+            //east, north, height
+            result.add(rs.getDouble(2), rs.getDouble(1), rs.getDouble(3));
         }
         rs.close();
-        return resultList;
+        q.close();
+        return result;
     }
     
+    /**
+     * hands all the points with a height to the consumer in batches, sorted
+     * by northing and then by easting. The order is the one of the primary
+     * key, so nothing is sorted and only batchSize points are in memory at a
+     * time.
+     * Like getPoints(), x is the easting, y the northing and z the height.
+     * @param batchSize how many points each batch can hold.
+     * @param consumer who receives the batches.
+     * @throws Exception if the query or the consumer fails.
+     */
+    public void streamPoints(int batchSize, PointsConsumer consumer) throws Exception{
+        if(batchSize<1) throw new IllegalArgumentException("The batch size must be positive.");
+        Statement q=conn.createStatement();
+        try{
+            ResultSet rs=q.executeQuery("SELECT northing, easting, height FROM points"+
+                    " WHERE height IS NOT NULL ORDER BY northing, easting");
+            PointBuffer batch=new PointBuffer(batchSize);
+            while(rs.next()){
+                //east, north, height
+                batch.add(rs.getDouble(2), rs.getDouble(1), rs.getDouble(3));
+                if(batch.size()==batchSize){
+                    consumer.consume(batch);
+                    batch.clear();
+                }
+            }
+            rs.close();
+            if(!batch.isEmpty()) consumer.consume(batch);
+        }finally{
+            q.close();
+        }
+    }
+
     /**
      * count how many points are in the defined region
      */
@@ -323,18 +665,93 @@ public class GisDb {
     {
         ResultSet rs;
         int count;
-        String selectPart="SELECT count(*) FROM points WHERE height IS NOT NULL"+
-                          " AND northing BETWEEN ? and ?"+
-                          " AND easting BETWEEN ? and ?";
-        PreparedStatement q=conn.prepareStatement(selectPart);
-        q.setDouble(1,minN);
-        q.setDouble(2,maxN);
-        q.setDouble(3,minE);
-        q.setDouble(4,maxE);
-        q.executeQuery();
+        PreparedStatement q=prepareRegionQuery("count(*)",
+                minN, minE, maxN, maxE);
         rs=q.executeQuery();
         count=rs.getInt(1);
         rs.close();
+        q.close();
         return count;
     }
+
+    /**
+     * builds the query selecting the given columns of the points with a
+     * height in the region, going through the spatial index.
+     */
+    private PreparedStatement prepareRegionQuery(String columns,
+            double minN, double minE, double maxN, double maxE)
+            throws SQLException
+    {
+        PreparedStatement q;
+        if(rtree){
+            //the R*Tree stores 32 bit floats: widen its box a bit, the
+            //exact test is done on the points table
+            q=conn.prepareStatement("SELECT "+columns+
+                    " FROM points_rtree JOIN points ON points.rowid=points_rtree.id"+
+                    " WHERE maxN >= ? AND minN <= ? AND maxE >= ? AND minE <= ?"+
+                    " AND height IS NOT NULL"+
+                    " AND northing BETWEEN ? and ?"+
+                    " AND easting BETWEEN ? and ?");
+            q.setDouble(1,widen(minN,-1));
+            q.setDouble(2,widen(maxN,1));
+            q.setDouble(3,widen(minE,-1));
+            q.setDouble(4,widen(maxE,1));
+            q.setDouble(5,minN);
+            q.setDouble(6,maxN);
+            q.setDouble(7,minE);
+            q.setDouble(8,maxE);
+        }else{
+            //a unary + hides a column from the planner: only the index of
+            //the axis that selects fewer rows is used
+            boolean byEasting=isEastingMoreSelective(minN, minE, maxN, maxE);
+            q=conn.prepareStatement("SELECT "+columns+
+                    " FROM points WHERE height IS NOT NULL"+
+                    " AND "+(byEasting ? "+" : "")+"northing BETWEEN ? and ?"+
+                    " AND "+(byEasting ? "" : "+")+"easting BETWEEN ? and ?");
+            q.setDouble(1,minN);
+            q.setDouble(2,maxN);
+            q.setDouble(3,minE);
+            q.setDouble(4,maxE);
+        }
+        return q;
+    }
+
+    /**
+     * moves a coordinate outwards by more than a float rounding error.
+     */
+    private static double widen(double value, int direction){
+        return value+direction*(Math.abs(value)*1e-6+1e-6);
+    }
+
+    /**
+     * tells whether the window is narrower along the easting than along the
+     * northing, relatively to the extent of the data.
+     */
+    private boolean isEastingMoreSelective(
+            double minN, double minE, double maxN, double maxE)
+            throws SQLException
+    {
+        if(extent==null){
+            //both columns lead an index: these are four index lookups
+            Statement q=conn.createStatement();
+            extent=new double[4];
+            String[] sql={
+                "SELECT northing FROM points WHERE northing >= -1e308 ORDER BY northing LIMIT 1",
+                "SELECT northing FROM points WHERE northing >= -1e308 ORDER BY northing DESC LIMIT 1",
+                "SELECT easting FROM points WHERE easting >= -1e308 ORDER BY easting LIMIT 1",
+                "SELECT easting FROM points WHERE easting >= -1e308 ORDER BY easting DESC LIMIT 1"
+            };
+            for(int i=0; i<4; i++){
+                ResultSet res=q.executeQuery(sql[i]);
+                extent[i]=res.next() ? res.getDouble(1) : 0;
+                res.close();
+            }
+            q.close();
+        }
+        double rangeN=Math.max(extent[1]-extent[0], Double.MIN_VALUE);
+        double rangeE=Math.max(extent[3]-extent[2], Double.MIN_VALUE);
+        double fractionN=(Math.min(maxN, extent[1])-Math.max(minN, extent[0]))/rangeN;
+        double fractionE=(Math.min(maxE, extent[3])-Math.max(minE, extent[2]))/rangeE;
+        return fractionE<fractionN;
+    }
 }
@@ -17,15 +17,24 @@
  */
 package database;
 
+import com.marcrh.graph.PointBuffer;
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
 import java.util.LinkedList;
 import javax.vecmath.Point3d;
-import us.zuercher.gpx2map.data.GpxParser;
-import us.zuercher.gpx2map.data.Track;
-import us.zuercher.gpx2map.data.TrackPoint;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
 
 /**
  * Parses a common .gpx format containing a GPS track log.
+ *
+ * The document is read in a single pass with a StAX XMLStreamReader: only
+ * the lat/lon attributes and the ele child of every trkpt are looked at and
+ * no object is built for tracks, segments or other elements.
+ * Waypoints and routes are ignored like they always were.
  * @author David Costa <david@zarel.net>
  */
 public class GpxReader implements PointsReader{
@@ -51,32 +60,92 @@ public class GpxReader implements PointsReader{
     
     @Override
     public LinkedList<Point3d> getAllPoints() throws Exception {
-        LinkedList<Point3d> result=new LinkedList<Point3d>();
-        Point3d element;
+        final LinkedList<Point3d> result=new LinkedList<Point3d>();
+        streamPoints(GisDb.DEFAULT_BATCH_SIZE, new PointsConsumer() {
+            @Override
+            public void consume(PointBuffer batch) {
+                for(int i=0; i<batch.size(); i++){
+                    result.add(new Point3d(batch.getX(i), batch.getY(i), batch.getZ(i)));
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Reads the track points of the file and hands them to the consumer.
+     * x is the longitude, y the latitude and z the elevation (ellipsoidal!)
+     * of each point. A point without an ele element gets getNullValue() as
+     * elevation, a point without lat or lon is skipped.
+     */
+    @Override
+    public void streamPoints(int batchSize, PointsConsumer consumer) throws Exception {
         //did we set the source?
         if(!ready) throw new Exception("The reader is not ready. Set source before.");
-        
-        
-        //create a new GpxParser (3rd party library)
-        GpxParser gpxparser=new GpxParser(new File(filename));
-        //do the actual parsing
-        gpxparser.parse();
-        for(Track t:gpxparser.getTracks()){
-            //per ogni track ci sono diversi punti
-            for(TrackPoint p:t){
-                //ogni punto della track diventa un punto nella lista
-                element=new Point3d();
-                element.x=p.getLocation().getLongitude();
-                element.y=p.getLocation().getLatitude();
-                //altezza ellissoidica!
-                //se il modello del terreno copre pochi kilometri
-                //geoide ed ellissoide sono quasi un piano, solamente sfalsati
-                //di una quota (costante) h0
-                element.z=p.getDecimalProperty("ele");
-                result.add(element);
+        if(batchSize<1) throw new IllegalArgumentException("The batch size must be positive.");
+
+        PointBuffer batch=new PointBuffer(batchSize);
+        XMLInputFactory factory=XMLInputFactory.newInstance();
+        //il GPX non ha bisogno di DTD o entità esterne
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        InputStream in=new BufferedInputStream(new FileInputStream(filename), 1<<16);
+        XMLStreamReader xml=factory.createXMLStreamReader(in);
+        try{
+            //profondità corrente e profondità del trkpt aperto (-1 = nessuno)
+            int depth=0, pointDepth=-1;
+            boolean inTrack=false, validPoint=false;
+            double lat=0, lon=0, ele=getNullValue();
+            while(xml.hasNext()){
+                int event=xml.next();
+                if(event==XMLStreamConstants.START_ELEMENT){
+                    depth++;
+                    String name=xml.getLocalName();
+                    if(pointDepth<0){
+                        if("trk".equals(name)){
+                            inTrack=true;
+                        }else if(inTrack && "trkpt".equals(name)){
+                            pointDepth=depth;
+                            String la=xml.getAttributeValue(null, "lat");
+                            String lo=xml.getAttributeValue(null, "lon");
+                            validPoint=la!=null && lo!=null;
+                            if(validPoint){
+                                lat=Double.parseDouble(la.trim());
+                                lon=Double.parseDouble(lo.trim());
+                            }
+                            ele=getNullValue();
+                        }
+                    }else if(depth==pointDepth+1 && "ele".equals(name)){
+                        //altezza ellissoidica!
+                        //se il modello del terreno copre pochi kilometri
+                        //geoide ed ellissoide sono quasi un piano, solamente
+                        //sfalsati di una quota (costante) h0
+                        ele=Double.parseDouble(xml.getElementText().trim());
+                        //getElementText() consuma anche END_ELEMENT
+                        depth--;
+                    }
+                }else if(event==XMLStreamConstants.END_ELEMENT){
+                    if(depth==pointDepth){
+                        pointDepth=-1;
+                        if(validPoint){
+                            //ogni punto della track diventa un punto del batch
+                            batch.add(lon, lat, ele);
+                            if(batch.size()==batchSize){
+                                consumer.consume(batch);
+                                batch.clear();
+                            }
+                        }
+                    }else if(pointDepth<0 && "trk".equals(xml.getLocalName())){
+                        inTrack=false;
+                    }
+                    depth--;
+                }
             }
+            if(!batch.isEmpty()) consumer.consume(batch);
+        }finally{
+            xml.close();
+            in.close();
         }
-        return result;
     }
 
     @Override
@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2011 David Costa <david@zarel.net>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package database;
+
+import com.marcrh.graph.PointBuffer;
+import java.nio.ByteBuffer;
+
+/**
+ * Byte level parser for the rows of a FVG grid file.
+ *
+ * It accepts exactly the rows the old regular expression
+ * "(\d*\.?\d+),(\d*\.?\d+),(-?\d*\.?\d+)" accepted, but it reads the bytes
+ * straight from a (memory mapped) buffer and converts the decimals by hand,
+ * so no String, Matcher or boxed Double is created for a valid row.
+ * Rows are terminated by '\n', '\r' or "\r\n" like BufferedReader.readLine().
+ *
+ * A parser is not thread safe: use one instance per thread.
+ * @author David Costa <david@zarel.net>
+ */
+class GridLineParser {
+    /**
+     * exact powers of ten. A mantissa below 2^53 divided by one of these is
+     * correctly rounded, so the result is the same of Double.valueOf().
+     */
+    private static final double[] POW10 = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    /**
+     * above this value another digit could push the mantissa over 2^53
+     */
+    private static final long MAX_MANTISSA = ((1L << 53) - 9) / 10;
+
+    /**
+     * the buffer we are reading from
+     */
+    private ByteBuffer buf;
+    /**
+     * position of the next byte to read
+     */
+    private int pos;
+    /**
+     * end of the current row (exclusive)
+     */
+    private int rowEnd;
+    /**
+     * whether the last parsed field was well formed
+     */
+    private boolean valid;
+    /**
+     * how many rows have been rejected since the parser was created.
+     */
+    private long invalidRows;
+    /**
+     * index of out where the next valid row is stored
+     */
+    private int next;
+
+    /**
+     * Parses every row in buf[from, to) and appends the valid ones to out.
+     * The first column goes to x, the second to y and the third to z.
+     * @param buffer the bytes to parse. Only absolute reads are used, so the
+     * buffer position is left untouched.
+     * @param from index of the first byte of the first row.
+     * @param to index after the last byte to parse.
+     * @param out where the points are stored.
+     * @return the number of invalid rows found in the range.
+     */
+    long parse(ByteBuffer buffer, int from, int to, PointBuffer out){
+        long before=invalidRows;
+        parse(buffer, from, to, out, Integer.MAX_VALUE);
+        return invalidRows-before;
+    }
+
+    /**
+     * Like parse(buffer, from, to, out) but stops as soon as out holds limit
+     * points, so that a range can be consumed a batch at a time.
+     * @param limit the size out must reach to stop the parsing.
+     * @return the index of the first byte not parsed yet: to if the whole
+     * range has been parsed.
+     */
+    int parse(ByteBuffer buffer, int from, int to, PointBuffer out, int limit){
+        return scan(buffer, from, to, out, out.size(), limit);
+    }
+
+    /**
+     * Like parse(buffer, from, to, out) but the points overwrite the ones of
+     * out from index at on, instead of being appended: out must already hold
+     * room for every row of the range (see countRows). Different parsers can
+     * fill disjoint ranges of the same buffer at the same time.
+     * @return the number of points stored.
+     */
+    int parseInto(ByteBuffer buffer, int from, int to, PointBuffer out, int at){
+        scan(buffer, from, to, out, at, Integer.MAX_VALUE);
+        return next-at;
+    }
+
+    /**
+     * counts the rows in buf[from, to) the way parse() splits them, valid
+     * or not: an upper bound of the points the range holds.
+     */
+    static int countRows(ByteBuffer buffer, int from, int to){
+        int rows=0;
+        byte c=0;
+        for(int i=from; i<to; i++){
+            c=buffer.get(i);
+            if(c=='\n'){
+                rows++;
+            }else if(c=='\r'){
+                rows++;
+                //"\r\n" counts as one
+                if(i+1<to && buffer.get(i+1)=='\n') i++;
+            }
+        }
+        //the last row may have no terminator
+        if(to>from && c!='\n' && c!='\r') rows++;
+        return rows;
+    }
+
+    /**
+     * parses the rows, storing the valid ones at out[at], out[at+1]... (an
+     * index equal to the size of out appends) until next reaches limit.
+     * @return the index of the first byte not parsed yet.
+     */
+    private int scan(ByteBuffer buffer, int from, int to, PointBuffer out, int at, int limit){
+        double n, e=0, h=0;
+        buf=buffer;
+        pos=from;
+        next=at;
+        while(pos<to && next<limit){
+            //find the end of the row
+            rowEnd=pos;
+            byte c=0;
+            while(rowEnd<to){
+                c=buf.get(rowEnd);
+                if(c=='\n' || c=='\r') break;
+                rowEnd++;
+            }
+
+            n=field(false);
+            if(valid && comma()) e=field(false);
+            else valid=false;
+            if(valid && comma()) h=field(true);
+            else valid=false;
+
+            if(valid && pos==rowEnd){
+                if(next<out.size()) out.set(next, n, e, h);
+                else out.add(n, e, h);
+                next++;
+            }else invalidRows++;
+
+            //skip the terminator ("\r\n" counts as one)
+            pos=rowEnd+1;
+            if(c=='\r' && pos<to && buf.get(pos)=='\n') pos++;
+        }
+        return Math.min(pos, to);
+    }
+
+    /**
+     * @return how many rows have been rejected by this parser.
+     */
+    long getInvalidRows(){
+        return invalidRows;
+    }
+
+    private boolean comma(){
+        if(pos<rowEnd && buf.get(pos)==','){
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * reads a \d*\.?\d+ decimal (with an optional leading minus sign when
+     * signed is true) starting at pos. On return valid tells if a well formed
+     * number was found and pos points after its last digit.
+     */
+    private double field(boolean signed){
+        int start=pos;
+        boolean negative=false;
+        long mantissa=0;
+        boolean exact=true;
+        int digits=0, fraction=0;
+        byte c;
+
+        if(signed && pos<rowEnd && buf.get(pos)=='-'){
+            negative=true;
+            pos++;
+        }
+        while(pos<rowEnd && (c=buf.get(pos))>='0' && c<='9'){
+            if(mantissa<=MAX_MANTISSA) mantissa=mantissa*10+(c-'0');
+            else exact=false;
+            digits++;
+            pos++;
+        }
+        if(pos<rowEnd && buf.get(pos)=='.'){
+            pos++;
+            while(pos<rowEnd && (c=buf.get(pos))>='0' && c<='9'){
+                if(mantissa<=MAX_MANTISSA) mantissa=mantissa*10+(c-'0');
+                else exact=false;
+                fraction++;
+                pos++;
+            }
+            //"12." is not accepted, a digit must follow the dot
+            valid=fraction>0;
+        }else{
+            valid=digits>0;
+        }
+        if(!valid) return 0;
+
+        double value;
+        if(exact && fraction<POW10.length){
+            value=mantissa/POW10[fraction];
+        }else{
+            //too many digits to be exact: let the JDK do the rounding
+            char[] text=new char[pos-start];
+            for(int i=0; i<text.length; i++) text[i]=(char)buf.get(start+i);
+            return Double.parseDouble(new String(text));
+        }
+        return negative ? -value : value;
+    }
+}
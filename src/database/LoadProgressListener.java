@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2011 David Costa <david@zarel.net>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package database;
+
+/**
+ * Gets notified about the progress of a bulk load.
+ * @see GisDb#bulkLoad
+ * @author David Costa <david@zarel.net>
+ */
+public interface LoadProgressListener {
+    /**
+     * called after every committed (or rolled back) chunk.
+     * @param rowsCommitted how many rows have been committed so far.
+     * @param rowsFailed how many rows belonged to chunks that were rolled back.
+     * @param rowsPerSecond the average speed of the load so far.
+     */
+    public void progress(long rowsCommitted, long rowsFailed, double rowsPerSecond);
+}
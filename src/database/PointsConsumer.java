@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2011 David Costa <david@zarel.net>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package database;
+
+import com.marcrh.graph.PointBuffer;
+
+/**
+ * Receives the points of a PointsReader a batch at a time.
+ * @see PointsReader#streamPoints
+ * @author David Costa <david@zarel.net>
+ */
+public interface PointsConsumer {
+    /**
+     * called by the reader every time a batch is full, and once more at the
+     * end for the last (possibly smaller) batch.
+     * @param batch the points read so far. The reader clears and refills the
+     * same buffer after this method returns, so copy what you want to keep.
+     * @throws Exception to stop the reading. The reader propagates it.
+     */
+    public void consume(PointBuffer batch) throws Exception;
+}
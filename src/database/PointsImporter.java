@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2011 David Costa <david@zarel.net>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package database;
+
+import com.marcrh.graph.PointBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Imports the points of a PointsReader into a GisDb with a two stage
+ * pipeline: a parser thread reads the source and fills batches while the
+ * calling thread inserts them into the database.
+ *
+ * The two stages are connected by a bounded queue: when the database is
+ * slower than the parser the parser blocks (backpressure), so no more than
+ * queueCapacity+2 batches are ever in memory. Batch buffers are recycled
+ * through a second queue, so a long import allocates a fixed amount of memory.
+ *
+ * The database is kept in bulk mode (see GisDb.beginBulkLoad()) for the
+ * whole import and every batch is committed on its own.
+ *
+ * How to use this class:
+ *  new PointsImporter(aGisDbObject).importPoints(aPointsReaderObject);
+ * @author David Costa <david@zarel.net>
+ */
+public class PointsImporter {
+    /**
+     * how many full batches can wait for the database by default.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 4;
+    /**
+     * marks the end of the stream in the queue of full batches.
+     */
+    private static final PointBuffer END = new PointBuffer(1);
+
+    private final GisDb db;
+    private final int batchSize;
+    private final int queueCapacity;
+
+    /**
+     * error raised by the parser thread, if any.
+     */
+    private volatile Exception parserError;
+    /**
+     * who is told about the progress of the import. Can be null.
+     */
+    private LoadProgressListener listener;
+    /**
+     * who receives the batches committed to the database. Can be null.
+     */
+    private PointsConsumer committedConsumer;
+    /**
+     * how many points of the last import were in chunks rolled back.
+     */
+    private long failedRows;
+
+    /**
+     * an importer with the default batch size and queue capacity.
+     * @param db the database that will receive the points.
+     */
+    public PointsImporter(GisDb db){
+        this(db, GisDb.DEFAULT_BATCH_SIZE, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * @param db the database that will receive the points.
+     * @param batchSize how many points are inserted in a single transaction.
+     * @param queueCapacity how many full batches the parser can be ahead of
+     * the database before it has to wait.
+     */
+    public PointsImporter(GisDb db, int batchSize, int queueCapacity){
+        if(batchSize<1 || queueCapacity<1)
+            throw new IllegalArgumentException("Batch size and queue capacity must be positive.");
+        this.db=db;
+        this.batchSize=batchSize;
+        this.queueCapacity=queueCapacity;
+    }
+
+    /**
+     * @param listener who is told about the progress after every batch,
+     * null to disable the notifications.
+     */
+    public void setProgressListener(LoadProgressListener listener){
+        this.listener=listener;
+    }
+
+    /**
+     * @param consumer who receives, after every committed batch, the points
+     * of the batch the database has stored (see GisDb.addPoints(PointBuffer,
+     * double, PointBuffer)), null if nobody needs them. Batches rolled back
+     * are not handed over. The buffer is reused after consume() returns.
+     */
+    public void setCommittedConsumer(PointsConsumer consumer){
+        this.committedConsumer=consumer;
+    }
+
+    /**
+     * @return how many points of the last import were not stored because
+     * their chunk could not be inserted and was rolled back. Set also when
+     * importPoints() throws.
+     */
+    public long getFailedRows(){
+        return failedRows;
+    }
+
+    /**
+     * reads every point of the reader and stores it into the database.
+     * The reader runs on its own thread, the inserts on the calling one.
+     * @param reader a reader whose source has already been set.
+     * @return the number of points committed to the database. Chunks that
+     * cannot be inserted are rolled back, reported to the listener and
+     * counted by getFailedRows().
+     * @throws Exception the first error raised by the reader or by the DB.
+     * When the DB fails the parser thread is stopped.
+     */
+    public long importPoints(final PointsReader reader) throws Exception{
+        final BlockingQueue<PointBuffer> full=new ArrayBlockingQueue<PointBuffer>(queueCapacity);
+        //queueCapacity waiting, one being filled and one being inserted
+        final BlockingQueue<PointBuffer> free=new ArrayBlockingQueue<PointBuffer>(queueCapacity+2);
+        for(int i=0; i<queueCapacity+2; i++) free.add(new PointBuffer(batchSize));
+        parserError=null;
+
+        Thread parser=new Thread(new Runnable() {
+            @Override
+            public void run() {
+                boolean ended=false;
+                try{
+                    reader.streamPoints(batchSize, new PointsConsumer() {
+                        @Override
+                        public void consume(PointBuffer batch) throws InterruptedException {
+                            //the reader reuses its batch: hand over a copy
+                            PointBuffer copy=free.take();
+                            copy.clear();
+                            copy.addAll(batch);
+                            full.put(copy);
+                        }
+                    });
+                    full.put(END);
+                    ended=true;
+                }catch(InterruptedException ie){
+                    //the inserting thread gave up, nobody is waiting for us
+                    parserError=ie;
+                    ended=true;
+                }catch(Exception e){
+                    parserError=e;
+                }finally{
+                    if(!ended){
+                        if(parserError==null)
+                            parserError=new Exception("The parser thread died.");
+                        //wake up the inserting thread, the pending batches
+                        //are useless now
+                        full.clear();
+                        full.offer(END);
+                    }
+                }
+            }
+        }, "PointsImporter parser");
+        parser.setDaemon(true);
+        parser.start();
+
+        long committed=0, failed=0;
+        failedRows=0;
+        long start=System.nanoTime();
+        double nullSpecialValue=reader.getNullValue();
+        PointBuffer stored=committedConsumer!=null ? new PointBuffer(batchSize) : null;
+        try{
+            db.beginBulkLoad();
+            PointBuffer batch;
+            while((batch=full.take())!=END){
+                //every batch is a chunk committed (or rolled back) on its own
+                if(db.addPoints(batch, nullSpecialValue, stored)){
+                    committed+=batch.size();
+                    if(committedConsumer!=null) committedConsumer.consume(stored);
+                }else{
+                    failed+=batch.size();
+                    failedRows=failed;
+                }
+                if(listener!=null){
+                    listener.progress(committed, failed,
+                        GisDb.rowsPerSecond(committed+failed, start));
+                }
+                free.put(batch);
+            }
+        }catch(Exception e){
+            //stop the parser, it would wait for us forever
+            parser.interrupt();
+            throw e;
+        }finally{
+            db.endBulkLoad();
+        }
+        parser.join();
+        if(parserError!=null) throw parserError;
+        return committed;
+    }
+}
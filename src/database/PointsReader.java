@@ -31,6 +31,16 @@ public interface PointsReader {
      * @return a LinkedList with all the read points.
      */
     public LinkedList<Point3d> getAllPoints() throws Exception;
+    /**
+     * make the reader read all the points at the specified source, handing
+     * them to a consumer in batches of at most batchSize points instead of
+     * keeping them all in memory.
+     * The coordinates are the same getAllPoints() would return.
+     * @see #setSource
+     * @param batchSize how many points each batch can hold.
+     * @param consumer who receives the batches, in source order.
+     */
+    public void streamPoints(int batchSize, PointsConsumer consumer) throws Exception;
     /**
      * Tell the reader where to obtain the points data.
      * 
@@ -17,15 +17,27 @@
  */
 package database;
 
-import java.io.BufferedReader;
+import com.marcrh.graph.PointBuffer;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import javax.vecmath.Point3d;
 
 /**
@@ -37,9 +49,25 @@ import javax.vecmath.Point3d;
  * A point on each row. Rows contain Northern, Eastern and Height coordinates in
  * this order, separated by a comma. They are the UTM coordinates based on the
  * 33N zone, on the WGS-84 ellipsoid.
+ *
+ * The file is memory mapped and scanned byte by byte (see GridLineParser),
+ * comment and invalid rows are skipped and counted.
  * @author David Costa <david@zarel.net>
  */
 public class UtmGridHeightReader implements PointsReader{
+    /**
+     * size of the window of the file that is mapped at once. A MappedByteBuffer
+     * cannot be larger than 2GB so big tiles are read a window at a time.
+     */
+    private static final long MAP_WINDOW = 1L << 28;
+    /**
+     * files smaller than this are not worth a thread pool.
+     */
+    private static final long PARALLEL_THRESHOLD = 8L << 20;
+    /**
+     * seconds an idle parsing thread waits for the next file.
+     */
+    private static final long KEEP_ALIVE = 5;
     /**
      * indicates that the reader is ready and getAllPoints() can be called.
      * @see #getAllPoints()
@@ -51,8 +79,24 @@ public class UtmGridHeightReader implements PointsReader{
      * @see #UtmGridHeightReader
      */
     private String filename;
-    private BufferedReader dataReader;
     private double specialNullValue=-9999;
+    /**
+     * how many rows were rejected by the last read.
+     */
+    private long invalidRows;
+    /**
+     * how many rows were rejected in each chunk by the last read.
+     */
+    private long[] invalidRowsPerChunk=new long[0];
+    /**
+     * how many threads parse the file. 1 means sequential parsing.
+     */
+    private int parallelism=Runtime.getRuntime().availableProcessors();
+    /**
+     * the threads that parse the chunks, created by the first parallel read
+     * and kept for the next ones. They are daemons and end when idle.
+     */
+    private ThreadPoolExecutor pool;
 
     /**
      * constructor. Does nothing. REMEMBER to use setSource before doing
@@ -70,69 +114,334 @@ public class UtmGridHeightReader implements PointsReader{
         return specialNullValue;
     }
 
+    /**
+     * @return how many rows (comments included) were skipped by the last read
+     * because they didn't contain a valid point.
+     */
+    public long getInvalidRows(){
+        return invalidRows;
+    }
+
+    /**
+     * @return how many rows were skipped in each chunk by the last read, in
+     * file order. A sequential read has a single chunk.
+     */
+    public long[] getInvalidRowsPerChunk(){
+        return invalidRowsPerChunk.clone();
+    }
+
+    /**
+     * @return how many threads are used to parse big files.
+     */
+    public int getParallelism(){
+        return parallelism;
+    }
+
+    /**
+     * Sets how many threads are used to parse big files. The default is the
+     * number of available processors.
+     * @param threads the number of threads, 1 to parse on the calling thread.
+     */
+    public void setParallelism(int threads){
+        if(threads<1) throw new IllegalArgumentException("At least one thread is needed.");
+        if(pool!=null && threads!=parallelism){
+            pool.shutdown();
+            pool=null;
+        }
+        parallelism=threads;
+    }
+
     /**
      * Parses the text file and returns a list of points.
      * @return a LinkedList of Point3f with the parsed data found in the file.
      * @throws Exception if the source hasn't been set or the file doesn't exists
      * anymore.
+     * @see #readPoints()
      */
     @Override
     public LinkedList<Point3d> getAllPoints() throws Exception {
-        //Contains a line of the file at a time
-        String line="";
-        int counter=0;
-        /**
-         * Pattern object containing the data structure of each row:
-         * "northern,eastern,height"
-         */
-        Pattern structure = Pattern.compile(
-                "(\\d*\\.?\\d+),(\\d*\\.?\\d+),(-?\\d*\\.?\\d+)"
-                );
-        Matcher value;
-        String northing="", easting="", height="";
+        PointBuffer points=readPoints();
         LinkedList<Point3d> result=new LinkedList<Point3d>();
+        for(int i=0; i<points.size(); i++){
+            result.add(new Point3d(points.getX(i), points.getY(i), points.getZ(i)));
+        }
+        return result;
+    }
 
+    /**
+     * Parses the text file into primitive coordinate arrays.
+     * The first column of each row goes to x, the second to y and the height
+     * to z, exactly like getAllPoints().
+     * Files bigger than a few MB are split in chunks that are parsed in
+     * parallel, see setParallelism().
+     * @return the points found in the file, in file order.
+     * @throws Exception if the source hasn't been set or the file cannot be read.
+     */
+    public PointBuffer readPoints() throws Exception {
         //did we set the source?
         if(!ready) throw new Exception("The reader is not ready. Set source before.");
 
-        dataReader=new BufferedReader(new FileReader(filename));
-
-        //process one line at a time
-        value=structure.matcher(line);
-        while((line=dataReader.readLine()) != null){
-            try{
-                //recycling the same matcher to improve performance
-                value.reset(line);
-                if(value.matches()){
-                    //the row matches against the pattern
-                    //extract the values from the pattern groups
-                    northing=value.group(1);
-                    easting=value.group(2);
-                    height=value.group(3);
-                    //assign them to a new Point3f
-                    Point3d temp=new Point3d();
-                    temp.x=Double.valueOf(northing);
-                    temp.y=Double.valueOf(easting);
-                    temp.z=Double.valueOf(height);
-                    //queue it in the linked list
-                    result.add(temp);
-                    //counter++;
-                    //if(counter%100==0) System.out.println(counter);
-
-                }else{
-                    //the row didn't match against the pattern
-                    throw new Exception("Invalid data row.");
-                }
-            }catch(Exception e){
-                //an invalid row is not fatal. throw an exception and keep going
+        RandomAccessFile file=new RandomAccessFile(filename, "r");
+        try{
+            FileChannel channel=file.getChannel();
+            PointBuffer result;
+            if(parallelism>1 && channel.size()>=PARALLEL_THRESHOLD){
+                result=readParallel(channel);
+            }else{
+                result=readSequential(channel);
+            }
+            if(invalidRows>0){
+                //an invalid row is not fatal, just tell how many we skipped
                 Logger.getLogger(UtmGridHeightReader.class.getName())
-                    .log(Level.WARNING, "Found line with invalid data structure");
+                    .log(Level.WARNING, "Found {0} lines with invalid data structure",
+                    invalidRows);
+            }
+            return result;
+        }finally{
+            file.close();
+        }
+    }
+
+    /**
+     * Parses the text file on the calling thread and hands the points to the
+     * consumer in batches, so only batchSize points are in memory at a time.
+     * @param batchSize how many points each batch can hold.
+     * @param consumer who receives the batches, in file order.
+     * @throws Exception if the source hasn't been set, the file cannot be read
+     * or the consumer fails.
+     */
+    @Override
+    public void streamPoints(int batchSize, PointsConsumer consumer) throws Exception {
+        //did we set the source?
+        if(!ready) throw new Exception("The reader is not ready. Set source before.");
+        if(batchSize<1) throw new IllegalArgumentException("The batch size must be positive.");
+
+        GridLineParser parser=new GridLineParser();
+        PointBuffer batch=new PointBuffer(batchSize);
+        RandomAccessFile file=new RandomAccessFile(filename, "r");
+        try{
+            FileChannel channel=file.getChannel();
+            long size=channel.size();
+            long position=0;
+            while(position<size){
+                long length=Math.min(MAP_WINDOW, size-position);
+                MappedByteBuffer window=channel.map(
+                        FileChannel.MapMode.READ_ONLY, position, length);
+                int end=(int)length;
+                //don't cut a row in half: stop at the last terminator
+                if(position+length<size) end=lastRowEnd(window, end);
+                int next=0;
+                while(next<end){
+                    next=parser.parse(window, next, end, batch, batchSize);
+                    if(batch.size()==batchSize){
+                        consumer.consume(batch);
+                        batch.clear();
+                    }
+                }
+                position+=end;
             }
+            if(!batch.isEmpty()) consumer.consume(batch);
+        }finally{
+            file.close();
+        }
+        invalidRows=parser.getInvalidRows();
+        invalidRowsPerChunk=new long[]{invalidRows};
+        if(invalidRows>0){
+            Logger.getLogger(UtmGridHeightReader.class.getName())
+                .log(Level.WARNING, "Found {0} lines with invalid data structure",
+                invalidRows);
+        }
+    }
+
+    /**
+     * parses the whole file on the calling thread, a window at a time.
+     */
+    private PointBuffer readSequential(FileChannel channel) throws IOException{
+        GridLineParser parser=new GridLineParser();
+        long size=channel.size();
+        //a FVG row is about 30 bytes long
+        PointBuffer result=new PointBuffer((int)Math.min(size/30+1, Integer.MAX_VALUE-8));
+        long position=0;
+        while(position<size){
+            long length=Math.min(MAP_WINDOW, size-position);
+            MappedByteBuffer window=channel.map(
+                    FileChannel.MapMode.READ_ONLY, position, length);
+            int end=(int)length;
+            //don't cut a row in half: stop at the last terminator
+            if(position+length<size) end=lastRowEnd(window, end);
+            parser.parse(window, 0, end, result);
+            position+=end;
+        }
+        invalidRows=parser.getInvalidRows();
+        invalidRowsPerChunk=new long[]{invalidRows};
+        return result;
+    }
+
+    /**
+     * splits the file in chunks at row boundaries and parses them on the
+     * thread pool in two rounds: the first counts the rows of every chunk, so
+     * the result is allocated once, the second parses every chunk into its
+     * own range of the result. The ranges are then moved together to drop
+     * the room left by invalid rows, so the points are never copied from a
+     * buffer to another and the peak memory is the one of the result.
+     */
+    private PointBuffer readParallel(final FileChannel channel) throws Exception{
+        long size=channel.size();
+        //a few chunks per thread keep the threads busy when rows are uneven
+        long chunks=Math.max(parallelism*4L, (size+MAP_WINDOW-1)/MAP_WINDOW);
+        chunks=Math.min(chunks, Math.max(1, size/(PARALLEL_THRESHOLD/4)));
+        long[] bounds=new long[(int)chunks+1];
+        for(int k=1; k<chunks; k++){
+            bounds[k]=nextRowStart(channel, Math.max(bounds[k-1], size/chunks*k));
+        }
+        bounds[(int)chunks]=size;
+
+        //first round: the rows of every chunk
+        final int[] rows=new int[(int)chunks];
+        List<Future<Object>> parts=new ArrayList<Future<Object>>();
+        for(int k=0; k<chunks; k++){
+            final int chunk=k;
+            final long from=bounds[k];
+            final long length=bounds[k+1]-bounds[k];
+            parts.add(getPool().submit(new Callable<Object>(){
+                @Override
+                public Object call() throws IOException{
+                    if(length>0){
+                        rows[chunk]=GridLineParser.countRows(channel.map(
+                            FileChannel.MapMode.READ_ONLY, from, length), 0, (int)length);
+                    }
+                    return null;
+                }
+            }));
+        }
+        waitFor(parts);
+        final int[] offsets=new int[(int)chunks];
+        long total=0;
+        for(int k=0; k<chunks; k++){
+            offsets[k]=(int)Math.min(total, Integer.MAX_VALUE);
+            total+=rows[k];
+        }
+        if(total>Integer.MAX_VALUE-8) throw new IOException("Too many points in "+filename);
+
+        //second round: every chunk fills its own range of the result
+        final PointBuffer result=new PointBuffer((int)total);
+        result.reserve((int)total);
+        final int[] found=new int[(int)chunks];
+        final long[] invalid=new long[(int)chunks];
+        parts.clear();
+        for(int k=0; k<chunks; k++){
+            final int chunk=k;
+            final long from=bounds[k];
+            final long length=bounds[k+1]-bounds[k];
+            parts.add(getPool().submit(new Callable<Object>(){
+                @Override
+                public Object call() throws IOException{
+                    if(length>0){
+                        GridLineParser parser=new GridLineParser();
+                        found[chunk]=parser.parseInto(channel.map(
+                            FileChannel.MapMode.READ_ONLY, from, length), 0, (int)length,
+                            result, offsets[chunk]);
+                        invalid[chunk]=parser.getInvalidRows();
+                    }
+                    return null;
+                }
+            }));
         }
+        waitFor(parts);
 
+        //close the gaps left by the invalid rows, in file order
+        double[] x=result.getXArray(), y=result.getYArray(), z=result.getZArray();
+        int count=0;
+        invalidRows=0;
+        invalidRowsPerChunk=invalid;
+        for(int k=0; k<chunks; k++){
+            System.arraycopy(x, offsets[k], x, count, found[k]);
+            System.arraycopy(y, offsets[k], y, count, found[k]);
+            System.arraycopy(z, offsets[k], z, count, found[k]);
+            count+=found[k];
+            invalidRows+=invalid[k];
+            if(invalid[k]>0){
+                Logger.getLogger(UtmGridHeightReader.class.getName())
+                    .log(Level.FINE, "Chunk {0} (bytes {1}-{2}): {3} invalid lines",
+                    new Object[]{k, bounds[k], bounds[k+1], invalid[k]});
+            }
+        }
+        result.truncate(count);
         return result;
     }
 
+    private ThreadPoolExecutor getPool(){
+        if(pool==null){
+            final ThreadFactory threads=Executors.defaultThreadFactory();
+            pool=new ThreadPoolExecutor(parallelism, parallelism, KEEP_ALIVE, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory(){
+                        @Override
+                        public Thread newThread(Runnable r){
+                            Thread t=threads.newThread(r);
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+            //a reader that is not used any more leaves no threads behind
+            pool.allowCoreThreadTimeOut(true);
+        }
+        return pool;
+    }
+
+    /**
+     * waits for every task; the first one that failed is rethrown and the
+     * others are cancelled.
+     */
+    private static void waitFor(List<Future<Object>> tasks) throws Exception{
+        try{
+            for(Future<Object> task : tasks) task.get();
+        }catch(ExecutionException ee){
+            for(Future<Object> task : tasks) task.cancel(true);
+            if(ee.getCause() instanceof Exception) throw (Exception)ee.getCause();
+            throw ee;
+        }
+    }
+
+    /**
+     * finds where the row containing the byte at position ends.
+     * @return the offset of the first byte of the following row, or the file
+     * size if there is no other row.
+     */
+    private static long nextRowStart(FileChannel channel, long position) throws IOException{
+        ByteBuffer probe=ByteBuffer.allocate(1<<16);
+        long size=channel.size();
+        long cr=-1;
+        while(position<size){
+            probe.clear();
+            int read=channel.read(probe, position);
+            if(read<=0) break;
+            for(int i=0; i<read; i++){
+                byte c=probe.get(i);
+                if(c=='\n') return position+i+1;
+                //a lone '\r' ends a row only if no '\n' follows
+                if(c=='\r' && cr<0) cr=position+i+1;
+                else if(cr>=0 && c!='\r') return cr;
+            }
+            position+=read;
+        }
+        return cr>=0 ? cr : size;
+    }
+
+    /**
+     * finds where the last complete row of a mapped window ends.
+     * @return the index after the last row terminator, or length if the
+     * window doesn't contain any terminator.
+     */
+    private static int lastRowEnd(MappedByteBuffer window, int length){
+        for(int i=length-1; i>=0; i--){
+            if(window.get(i)=='\n') return i+1;
+        }
+        for(int i=length-1; i>=0; i--){
+            if(window.get(i)=='\r') return i+1;
+        }
+        return length;
+    }
+
     /**
      * Before UtmGridHeightReader can be used successfully a source must be set.
      * This class read the data files provided by the FVG website, so a String
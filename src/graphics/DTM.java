@@ -17,10 +17,9 @@
  */
 package graphics;
 
+import com.marcrh.graph.PointBuffer;
 import com.sun.j3d.utils.geometry.GeometryInfo;
 import com.sun.j3d.utils.geometry.NormalGenerator;
-import java.util.Iterator;
-import java.util.List;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -30,7 +29,6 @@ import javax.media.j3d.Material;
 import javax.media.j3d.PolygonAttributes;
 import javax.media.j3d.Shape3D;
 import javax.vecmath.Color3f;
-import javax.vecmath.Point3d;
 
 /**
  * Gestore del DTM
@@ -38,7 +36,7 @@ import javax.vecmath.Point3d;
  */
 public class DTM {
     private static final Logger dtmLogger = Logger.getLogger(DTM.class .getCanonicalName());
-    private List<DTMTriangle> rawDtm;
+    private TriangleMesh mesh;
     private Geometry dtmGeometry;
     private Appearance dtmAppearance;
     private Shape3D dtmShape;
@@ -54,17 +52,17 @@ public class DTM {
                                      Double.MAX_VALUE
     };
 
-    public DTM(List<DTMTriangle> rawDtm, double[] minCoord, double[] maxCoord)
+    public DTM(TriangleMesh mesh, double[] minCoord, double[] maxCoord)
     {
         dtmLogger.setLevel(Level.ALL);
         dtmLogger.addHandler(new ConsoleHandler());
-        if(rawDtm == null){
+        if(mesh == null){
             dtmLogger.warning("Raw DTM is empty");
             return;
         }
         dtmLogger.fine("Setting Raw DTM");
-        this.rawDtm = rawDtm;
-        System.out.println("Number of Triangles = " + rawDtm.size());
+        this.mesh = mesh;
+        System.out.println("Number of Triangles = " + mesh.getTriangleCount());
         if(minCoord == null || minCoord.length != 3)
         {
             dtmLogger.fine("Finding min Coordinates");
@@ -84,47 +82,35 @@ public class DTM {
         {
             this.maxCoord = maxCoord;
         }
-        //ciclo di attesa, perde pochi microsecondi se non sono vuoti
-        //in questo modo elimino le attese su findMin/MaxCoord e lancio
-        //tutto in parallelo
-        while(this.maxCoord == null && this.minCoord == null);
-        for (int i = 0; i < this.maxCoord.length; i++)
-        {
-            while (this.maxCoord[i] == Double.MIN_VALUE);
-            while (this.minCoord[i] == Double.MAX_VALUE);
-        }
         dtmLogger.fine("Setting DTM appearance");
         initAppearance();
     }
 
-    public DTM(List<DTMTriangle> triangles)
+    public DTM(TriangleMesh mesh)
     {
-        this(triangles, null, null);
+        this(mesh, null, null);
     }
 
     /**
-     * Costruisce il DTM da una lista di DTMTriangles
+     * Costruisce il DTM dalla superficie triangolata.
+     * I vertici sono già condivisi tra i triangoli, quindi la geometria
+     * viene creata direttamente indicizzata.
      */
     public void createDTM()
     {
-        int triangleVertexCount = rawDtm.size() * 3;
+        PointBuffer vertices = mesh.getVertices();
         GeometryInfo upperGI = new GeometryInfo(GeometryInfo.TRIANGLE_ARRAY);
-        Point3d[] upperCoordinates = new Point3d[triangleVertexCount];
+        double[] upperCoordinates = new double[vertices.size() * 3];
         NormalGenerator ng = new NormalGenerator();
-        int vertexIndex = 0;
         dtmLogger.fine("Creating DTM");
-        for (DTMTriangle triangle : rawDtm)
+        for (int i = 0; i < vertices.size(); i++)
         {
-            for (int i = 0; i < 3; i++)
-            {
-                //shallow copy
-                upperCoordinates[vertexIndex] = triangle.getVertex(i);
-                vertexIndex ++;
-            }
+            upperCoordinates[i * 3] = vertices.getX(i);
+            upperCoordinates[i * 3 + 1] = vertices.getY(i);
+            upperCoordinates[i * 3 + 2] = vertices.getZ(i);
         }
         upperGI.setCoordinates(upperCoordinates);
-        System.gc();
-        upperGI.indexify();
+        upperGI.setCoordinateIndices(mesh.getIndices());
         dtmLogger.fine("Generate DTM normals");
         ng.generateNormals(upperGI);
         System.gc();
@@ -156,183 +142,51 @@ public class DTM {
     }
 
     /**
-     * Scorre i punti per trovare le coordinate massime per entrambi gli assi.
-     * La funzione sfrutta la ricerca parallela su una lista.
-     * Ciò implica che si deve impostare un ciclo di attesa se si vuole utilizzare
-     * immediatamente l'array di ritorno
+     * Scorre i vertici per trovare le coordinate massime per tutti gli assi.
      * @return un array di double = {x_max, y_max, z_max}
      */
     private double[] findMaxCoord()
     {
-        //calcolo X massima
-        new Runnable()
-        {
-
-            @Override
-            public void run()
-            {
-                Iterator<DTMTriangle> it = rawDtm.iterator();
-                Iterator<Point3d> pointIt;
-                Point3d vertex;
-                while (it.hasNext())
-                {
-                    pointIt = it.next().getVertices().iterator();
-                    while (pointIt.hasNext())
-                    {
-                        vertex = pointIt.next();
-                        if (vertex.x > maxCoord[0])
-                        {
-                            maxCoord[0] = vertex.x;
-                        }
-                    }
-                }
-            }
-        }.run();
-        //calcolo Y massima
-        new Runnable()
+        PointBuffer vertices = mesh.getVertices();
+        for (int i = 0; i < vertices.size(); i++)
         {
-            @Override
-            public void run()
-            {
-                Iterator<DTMTriangle> it = rawDtm.iterator();
-                Iterator<Point3d> pointIt;
-                Point3d vertex;
-                while (it.hasNext())
-                {
-                    pointIt = it.next().getVertices().iterator();
-                    while (pointIt.hasNext())
-                    {
-                        vertex = pointIt.next();
-                        if (vertex.y >maxCoord[1])
-                        {
-                            maxCoord[1] = vertex.y;
-                        }
-                    }
-                }
-            }
-        }.run();
-        //calcolo Z massima
-        new Runnable()
-        {
-            @Override
-            public void run()
-            {
-                Iterator<DTMTriangle> it = rawDtm.iterator();
-                Iterator<Point3d> pointIt;
-                Point3d vertex;
-                while (it.hasNext())
-                {
-                    pointIt = it.next().getVertices().iterator();
-                    while (pointIt.hasNext())
-                    {
-                        vertex = pointIt.next();
-                        if (vertex.z >maxCoord[2])
-                        {
-                            maxCoord[2] = vertex.z;
-                        }
-                    }
-                }
-            }
-        }.run();
-        //si deve fare attenzione al valore di ritorno
+            maxCoord[0] = Math.max(maxCoord[0], vertices.getX(i));
+            maxCoord[1] = Math.max(maxCoord[1], vertices.getY(i));
+            maxCoord[2] = Math.max(maxCoord[2], vertices.getZ(i));
+        }
         return maxCoord;
     }
 
     /**
-     * Scorre i punti per trovare le coordinate minime per entrambi gli assi
-     * La funzione sfrutta la ricerca parallela su una lista.
-     * Ciò implica che si deve impostare un ciclo di attesa se si vuole utilizzare
-     * immediatamente l'array di ritorno
+     * Scorre i vertici per trovare le coordinate minime per tutti gli assi.
      * @return un array di double = {x_min, y_min, z_min}
      */
     private double[] findMinCoord()
     {
-        //calcolo X minima
-        new Runnable()
-        {
-            @Override
-            public void run()
-            {
-                Iterator<DTMTriangle> it = rawDtm.iterator();
-                Iterator<Point3d> pointIt;
-                Point3d vertex;
-                while (it.hasNext())
-                {
-                    pointIt = it.next().getVertices().iterator();
-                    while (pointIt.hasNext())
-                    {
-                        vertex = pointIt.next();
-                        if (vertex.x < minCoord[0])
-                        {
-                            minCoord[0] = vertex.x;
-                        }
-                    }
-                }
-            }
-        }.run();
-        //calcolo Y minima
-        new Runnable()
+        PointBuffer vertices = mesh.getVertices();
+        for (int i = 0; i < vertices.size(); i++)
         {
-            @Override
-            public void run()
-            {
-                Iterator<DTMTriangle> it = rawDtm.iterator();
-                Iterator<Point3d> pointIt;
-                Point3d vertex;
-                while (it.hasNext())
-                {
-                    pointIt = it.next().getVertices().iterator();
-                    while (pointIt.hasNext())
-                    {
-                        vertex = pointIt.next();
-                        if (vertex.y < minCoord[1])
-                        {
-                            minCoord[1] = vertex.y;
-                        }
-                    }
-                }
-            }
-        }.run();
-        //calcolo Z minima
-        new Runnable()
-        {
-            @Override
-            public void run()
-            {
-                Iterator<DTMTriangle> it = rawDtm.iterator();
-                Iterator<Point3d> pointIt;
-                Point3d vertex;
-                while (it.hasNext())
-                {
-                    pointIt = it.next().getVertices().iterator();
-                    while (pointIt.hasNext())
-                    {
-                        vertex = pointIt.next();
-                        if (vertex.z < minCoord[2])
-                        {
-                            minCoord[2] = vertex.z;
-                        }
-                    }
-                }
-            }
-        }.run();
+            minCoord[0] = Math.min(minCoord[0], vertices.getX(i));
+            minCoord[1] = Math.min(minCoord[1], vertices.getY(i));
+            minCoord[2] = Math.min(minCoord[2], vertices.getZ(i));
+        }
         return minCoord;
     }
 
     /**
-     * @return the rawDtm
+     * @return la superficie triangolata
      */
-    public List<DTMTriangle> getRawDtm()
+    public TriangleMesh getMesh()
     {
-        return rawDtm;
+        return mesh;
     }
 
     /**
-     * @param rawDtm the rawDtm to set
+     * @param mesh la superficie triangolata da impostare
      */
-    public void setRawDtm(List<DTMTriangle> rawDtm)
+    public void setMesh(TriangleMesh mesh)
     {
-        this.rawDtm = rawDtm;
+        this.mesh = mesh;
     }
 
     /**
@@ -356,7 +210,7 @@ public class DTM {
      */
     public Shape3D getDtmShape()
     {
-        if(rawDtm == null)
+        if(mesh == null)
         {
             throw new NullPointerException("RawDTM is not set");
         }
@@ -17,18 +17,21 @@
  */
 package graphics;
 
-import com.marcrh.graph.Point;
-import com.marcrh.graph.Range;
-import com.marcrh.graph.delaunay.Triad;
-import com.marcrh.graph.delaunay.Voronoi;
-import java.util.ArrayList;
+import com.marcrh.graph.PointBuffer;
+import com.marcrh.graph.delaunay.ParallelTriangulator;
+import com.marcrh.graph.delaunay.StreamingTriangulator;
+import com.marcrh.graph.delaunay.TinSimplifier;
+import com.marcrh.graph.delaunay.TriadStore;
+import database.GisDb;
+import database.PointsConsumer;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
 import java.util.Iterator;
 import java.util.LinkedList;
-import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.media.j3d.PointArray;
-import javax.vecmath.Point2d;
 import javax.vecmath.Point3d;
 
 /**
@@ -156,78 +159,116 @@ public class DTMCreator {
         maxCoord[1] = y;
     }
 
-    public static LinkedList<DTMTriangle> PerturbDelaunay(LinkedList<Point3d> data, Range r,
-                double maxPerturbN, double maxPerturbE){
-        System.out.println("Perturbazione dei dati.");
-        //perturbazione dei punti per evitare spiacevoli allineamenti
-        //che non fanno convergere l'algoritmo
-        double pertE;
-        double pertN;
-        maxPerturbE=0.2*maxPerturbE;
-        maxPerturbN=0.2*maxPerturbN;
-        for(Point3d p:data){
-            pertE=Math.random()*maxPerturbE;
-            pertN=Math.random()*maxPerturbN;
-            p.setX(p.getX()+pertE);
-            p.setY(p.getY()+pertN);
-        }
-
-        //il range è leggermente più grande del previsto
-        System.out.println("Fine della perturbazione dei dati.");
+    /**
+     * Triangola solo i punti che servono a descrivere il terreno entro una
+     * tolleranza verticale, con l'inserimento greedy di Garland-Heckbert (vedi
+     * TinSimplifier): si parte dall'involucro convesso e si aggiunge ogni volta
+     * il punto piu' lontano in quota dalla superficie, finche' nessuno supera
+     * la tolleranza. Sui terreni regolari i triangoli sono da 10 a 100 volte
+     * meno di quelli di {@link #Delaunay(PointBuffer)}.
+     * @param data i punti (solitamente forniti da GisDb)
+     * @param tolerance lo scarto verticale massimo in metri
+     * @return la superficie triangolata, i cui vertici sono alcuni dei punti
+     * in data.
+     */
+    public static TriangleMesh Simplify(PointBuffer data, double tolerance){
+        TinSimplifier simplifier = new TinSimplifier();
+        TriadStore triads = simplifier.simplify(data, tolerance);
+        Logger.getLogger(DTMCreator.class.getName()).log(Level.FINE,
+                "TIN: {0} punti su {1}, errore massimo {2,number,0.00} m, rms {3,number,0.00} m",
+                new Object[]{simplifier.getNumVertices(), data.size(),
+                    simplifier.getMaxError(), simplifier.getRmsError()});
+        return toMesh(data, triads);
+    }
 
-        //chiama l'algoritmo originale
-        return Delaunay(data,r);
+    /**
+     * Triangola i punti con l'algoritmo di sweep-hull (s-hull).
+     * La triangolazione avviene solo sulla planimetria (x, y): la quota dei
+     * punti viene ignorata ma resta nel buffer, che diventa l'insieme dei
+     * vertici della superficie senza essere copiato.
+     * Con piu' processori i punti vengono divisi in fasce triangolate in
+     * parallelo (vedi ParallelTriangulator).
+     * I test geometrici sono esatti (vedi Predicates): punti allineati o
+     * sulla stessa circonferenza, come i nodi di una griglia regolare, non
+     * vanno perturbati.
+     * Se i punti coprono tutti i nodi di una griglia regolare (i DTM raster)
+     * i triangoli vengono costruiti cella per cella da {@link GridMesher},
+     * senza sweep ne' flip: sono gli stessi, ma arrivano prima.
+     * @param data i punti (solitamente forniti da GisDb)
+     * @return la superficie triangolata, usata poi per il rendering.
+     */
+    public static TriangleMesh Delaunay(PointBuffer data){
+        return toMesh(data, triangulate(data));
     }
+
     /**
-     *
-     * @param data la lista di punti (solitamente fornita da GisDb)
-     * @return Una lista di triangoli (cioè tre vertici 3d) usati poi per il rendering.
+     * i triangoli di Delaunay dei punti, usati anche da DTMWindow quando
+     * ricostruisce la finestra. Le griglie complete vengono triangolate cella
+     * per cella da GridMesher; negli altri casi durante la triangolazione i
+     * punti sono numerati lungo una curva di Hilbert, cosi' i vicini stanno
+     * vicini anche in memoria: il risultato non cambia ma arriva prima.
      */
-    public static LinkedList<DTMTriangle> Delaunay(LinkedList<Point3d> data, Range r){
-        LinkedList<DTMTriangle> finalResult=new LinkedList<DTMTriangle>();
-
-        //bisogna convertire da LinkedList<Point3d> ad ArrayList<Point>
-        //Point3d appartiene a vecmath, Point a js-hull
-        //quindi la conversione non è immediata
-        ArrayList<Point> points=new ArrayList<Point>(data.size());
-
-        for(Point3d p:data){
-            //La quota dei punti è NULLA! in quanto la triangolazione deve
-            //avvenire solo sulla planimetria.
-            Point item=new Point(p.x,p.y,0);
-            points.add(item);
+    static TriadStore triangulate(PointBuffer data){
+        TriadStore grid = GridMesher.triangulate(data);
+        if(grid != null){
+            return grid;
         }
+        ParallelTriangulator triangulator = new ParallelTriangulator();
+        triangulator.setHilbertOrder(true);
+        TriadStore triads = triangulator.getTriadStore(data, true);
+        if(triangulator.getNumDuplicates() > 0){
+            Logger.getLogger(DTMCreator.class.getName()).log(Level.FINE,
+                    "{0} punti doppi scartati su {1}",
+                    new Object[]{triangulator.getNumDuplicates(), data.size()});
+        }
+        return triads;
+    }
 
-        //ora points contiene i punti per Voronoi
-        Voronoi v=new Voronoi();
-
-        //ordiniamo alla libreria di triangolare con l'algoritmo di sweep-hull
-        //altrimenti noto come s-hull
-        v.generate(points, r);
-
-        //Lettura del risultato (espresso come una lista di Triad)
-        //e costruzione di una LinkedList di DTMTriangle
-        ArrayList<Triad> voronoiTriangs=v.getTriads();
-
-        ArrayList<Point3d> dati=new ArrayList(data);
-
-        //per ogni triangolo fornitoci da Voronoi
-        //dobbiamo creare un DTMTriangle e aggiungerlo alla lista
-        for(Triad t:voronoiTriangs){
-            DTMTriangle singleShape;
-
-            //t.a, t.b e t.c sono INDICI dei punti sia in points che in data
-            singleShape=new DTMTriangle(dati.get(t.a),dati.get(t.b),dati.get(t.c));
-
-            finalResult.add(singleShape);
-
-            //test per capire come funzionano i Triad
-            //System.out.print("Triangolo:");
-            //System.out.print(data.get(t.b) + " ");
-            //System.out.print(data.get(t.a) + " ");
-            //System.out.println(data.get(t.c));
+    /**
+     * Triangola tutti i punti del database senza tenerli in memoria: i punti
+     * arrivano da GisDb in ordine di northing e i triangoli che nessun punto
+     * successivo puo' cambiare vengono scritti subito su file (vedi
+     * StreamingTriangulator, anche per il formato del file). In memoria resta
+     * solo il fronte della triangolazione, quindi si puo' triangolare un
+     * database di qualunque dimensione.
+     * @param db il database da triangolare
+     * @param path il file in cui scrivere vertici e triangoli
+     * @return il numero di triangoli scritti
+     * @throws Exception se il database non puo' essere letto o il file scritto
+     */
+    public static long StreamDelaunay(GisDb db, String path) throws Exception{
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(path), 1 << 16));
+        try{
+            final StreamingTriangulator triangulator = new StreamingTriangulator(out);
+            db.streamPoints(GisDb.DEFAULT_BATCH_SIZE, new PointsConsumer() {
+                public void consume(PointBuffer batch) throws Exception {
+                    triangulator.add(batch);
+                }
+            });
+            triangulator.finish();
+            Logger.getLogger(DTMCreator.class.getName()).log(Level.FINE,
+                    "{0}: {1} vertici, {2} triangoli, al massimo {3} triangoli in memoria",
+                    new Object[]{path, triangulator.getNumVertices(),
+                        triangulator.getNumTriangles(), triangulator.getMaxTriads()});
+            return triangulator.getNumTriangles();
+        }finally{
+            out.close();
         }
+    }
 
-        return finalResult;
+    /**
+     * costruisce la superficie dai triangoli, orientati tutti in senso orario
+     */
+    static TriangleMesh toMesh(PointBuffer data, TriadStore triads){
+        TriangleMesh mesh = new TriangleMesh(data, triads.size());
+        double[] x = data.getXArray();
+        double[] y = data.getYArray();
+        //i vertici dei triangoli sono INDICI dei punti in data
+        for(int t=0; t<triads.size(); t++){
+            triads.makeCW(t, x, y);
+            mesh.addTriangle(triads.getA(t), triads.getB(t), triads.getC(t));
+        }
+        return mesh;
     }
-}
\ No newline at end of file
+}
@@ -17,7 +17,7 @@
  */
 package graphics;
 
-import java.util.List;
+import java.util.concurrent.ExecutionException;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -25,6 +25,7 @@ import java.util.logging.SimpleFormatter;
 import javax.media.j3d.Canvas3D;
 import javax.media.j3d.PolygonAttributes;
 import javax.media.j3d.View;
+import javax.swing.SwingWorker;
 import javax.vecmath.Vector3d;
 
 /**
@@ -43,6 +44,18 @@ public class DTMEngine
     private double defaultDTMRotation = -Math.PI/4;
 
     private final double SCROLL_PERCENT = 0.2;
+    /**
+     * Tolleranza verticale in metri della superficie vista da lontano
+     */
+    public static final double OVERVIEW_TOLERANCE = 5.0;
+    /**
+     * Tolleranza verticale in metri della superficie vista da vicino
+     */
+    public static final double CLOSEUP_TOLERANCE = 0.5;
+    /**
+     * Sotto questa frazione dei confini dell'applicazione la vista è da vicino
+     */
+    private static final double CLOSEUP_DISTANCE = 0.25;
     /**
      * Il DTM
      */
@@ -58,29 +71,55 @@ public class DTMEngine
      */
     private Canvas3D canvas;
 
+    /**
+     * La gerarchia da cui estrarre il DTM con più o meno dettaglio, null se
+     * il DTM non è una griglia regolare
+     */
+    private Rtin rtin;
+
+    /**
+     * La tolleranza del DTM estratto da rtin
+     */
+    private double tolerance;
+
+    /**
+     * L'ultima tolleranza chiesta con setTolerance()
+     */
+    private double requestedTolerance;
+
+    /**
+     * L'estrazione in corso in un altro thread, null se non ce n'è
+     */
+    private SwingWorker<DTM, Void> extraction;
+
+    /**
+     * Come sono disegnati i poligoni: pieni o solo i bordi
+     */
+    private int polygonMode = PolygonAttributes.POLYGON_FILL;
+
     /**
      * Costruttore di default del gestore della scena.
      * @param canvas    dove la scena è renderizzata
-     * @param triangles la {@link List} di {@link DTMTriangle} che contiene
+     * @param triangles la {@link TriangleMesh} che contiene
      * @param
      * i triangoli da renderizzare
      */
-    public DTMEngine(Canvas3D canvas, List<DTMTriangle> triangles, String dtmName)
+    public DTMEngine(Canvas3D canvas, TriangleMesh triangles, String dtmName)
     {
 
     }
 
-    public DTMEngine(Canvas3D canvas, List<DTMTriangle> triangles, String dtmName, double[] maxCoord)
+    public DTMEngine(Canvas3D canvas, TriangleMesh triangles, String dtmName, double[] maxCoord)
     {
         this(canvas, triangles, dtmName, maxCoord, null);
     }
 
-    public DTMEngine(Canvas3D canvas, List<DTMTriangle> triangles)
+    public DTMEngine(Canvas3D canvas, TriangleMesh triangles)
     {
         this(canvas, triangles, DEFAULT_DTM_NAME);
     }
 
-    public DTMEngine(Canvas3D canvas, List<DTMTriangle> triangles, String dtmName, double[] maxCoord, double[] minCoord)
+    public DTMEngine(Canvas3D canvas, TriangleMesh triangles, String dtmName, double[] maxCoord, double[] minCoord)
     {
         setLogger();
         dtmEngineLogger.fine("Creating Engine");
@@ -93,12 +132,14 @@ public class DTMEngine
 
     public void setGrillView()
     {
+        polygonMode = PolygonAttributes.POLYGON_LINE;
         if(dtm == null || dtm.getDtmShape() == null) return;
         dtm.changeAppearance(PolygonAttributes.POLYGON_LINE);
     }
 
     public void setFillView()
     {
+        polygonMode = PolygonAttributes.POLYGON_FILL;
         if(dtm == null || dtm.getDtmShape() == null) return;
         dtm.changeAppearance(PolygonAttributes.POLYGON_FILL);
     }
@@ -152,6 +193,113 @@ public class DTMEngine
         dtmScene.setMouseTranslateFactor(1.0);
     }
 
+    /**
+     * Imposta la gerarchia da cui è stato estratto il DTM, così che il suo
+     * dettaglio possa cambiare con lo zoom
+     * @param rtin la gerarchia, null se il DTM non è una griglia regolare
+     * @param tolerance la tolleranza in metri con cui è stato estratto il DTM
+     */
+    public void setRtin(Rtin rtin, double tolerance)
+    {
+        this.rtin = rtin;
+        this.tolerance = tolerance;
+        this.requestedTolerance = tolerance;
+    }
+
+    /**
+     * Sostituisce il DTM con uno estratto dalla gerarchia con un'altra
+     * tolleranza. Non fa niente se non c'è una gerarchia.
+     * L'estrazione avviene in un altro thread e il DTM mostrato resta finché
+     * quello nuovo non è pronto, così la rotella del mouse non blocca
+     * l'interfaccia. Va chiamato dall'event dispatch thread.
+     * @param newTolerance la tolleranza verticale in metri
+     */
+    public void setTolerance(double newTolerance)
+    {
+        if(rtin == null || dtm == null) return;
+        requestedTolerance = newTolerance;
+        if(extraction == null && newTolerance != tolerance) extract();
+    }
+
+    /**
+     * Estrae dalla gerarchia il DTM con la tolleranza richiesta. Alla fine, se
+     * nel frattempo ne è stata chiesta un'altra, riparte con quella: le
+     * richieste intermedie vengono saltate e rtin non viene mai usata da due
+     * thread insieme.
+     */
+    private void extract()
+    {
+        final Rtin source = rtin;
+        final double extracted = requestedTolerance;
+        final String name = dtm.getName();
+        final double[] minCoord = dtm.getMinCoord();
+        final double[] maxCoord = dtm.getMaxCoord();
+        final int mode = polygonMode;
+        dtmEngineLogger.fine("Extracting DTM with tolerance " + extracted);
+        extraction = new SwingWorker<DTM, Void>()
+        {
+            @Override
+            protected DTM doInBackground()
+            {
+                DTM detail = new DTM(source.mesh(extracted), minCoord, maxCoord);
+                detail.setName(name);
+                detail.createDTM();
+                if(mode != PolygonAttributes.POLYGON_FILL)
+                {
+                    detail.changeAppearance(mode);
+                }
+                return detail;
+            }
+
+            @Override
+            protected void done()
+            {
+                extraction = null;
+                DTM detail;
+                try
+                {
+                    detail = get();
+                }
+                catch(InterruptedException ie)
+                {
+                    return;
+                }
+                catch(ExecutionException ee)
+                {
+                    dtmEngineLogger.log(Level.WARNING, "Cannot extract the DTM", ee.getCause());
+                    return;
+                }
+                //nel frattempo il DTM può essere stato tolto o sostituito
+                if(rtin == source && dtm != null)
+                {
+                    if(polygonMode != mode) detail.changeAppearance(polygonMode);
+                    tolerance = extracted;
+                    if(dtmScene != null) dtmScene.removeAllChildren();
+                    dtm = detail;
+                    if(dtmScene != null) renderScene(name);
+                }
+                if(rtin != null && dtm != null && requestedTolerance != tolerance) extract();
+            }
+        };
+        extraction.execute();
+    }
+
+    /**
+     * Mostra il DTM con poco dettaglio, per la vista d'insieme
+     */
+    public void showOverview()
+    {
+        setTolerance(OVERVIEW_TOLERANCE);
+    }
+
+    /**
+     * Mostra il DTM con il massimo dettaglio utile, per la vista da vicino
+     */
+    public void showCloseUp()
+    {
+        setTolerance(CLOSEUP_TOLERANCE);
+    }
+
     /**
      * Elimina il DTM presente
      */
@@ -165,26 +313,27 @@ public class DTMEngine
 
     /**
      * Aggiunge un nuovo DTM alla scena con un nome di default
-     * @param triangles la {@link List} di {@link DTMTriangle} che contengono
+     * @param triangles la {@link TriangleMesh} che contiene
      * le informazioni sul DTM
      */
-    public void addDTM(List<DTMTriangle> triangles)
+    public void addDTM(TriangleMesh triangles)
     {
         addDTM(triangles, DEFAULT_DTM_NAME);
     }
 
     /**
      * Aggiunge un nuovo DTM alla scena con nome {@code name}
-     * @param trianglesla {@link List} di {@link DTMTriangle} che contengono
+     * @param trianglesla {@link TriangleMesh} che contiene
      * le informazioni sul DTM
      * @param name nome da dare al DTM. Utile per facilitare le operazioni di
      * eliminazione
      */
-    public void addDTM(List<DTMTriangle> triangles, String name)
+    public void addDTM(TriangleMesh triangles, String name)
     {
         if(dtm != null) removeDTM();
         dtm = new DTM(triangles);
         dtm.setName(name);
+        rtin = null;
     }
 
     /**
@@ -315,5 +464,8 @@ public class DTMEngine
             scaleFactor = (oldDistance - newDistance) / Math.abs(unit2scroll);
         }
         dtmScene.setMouseZoomFactor(scaleFactor);
+        //da vicino serve più dettaglio
+        if(oldDistance < appBound * CLOSEUP_DISTANCE) showCloseUp();
+        else showOverview();
     }
 }
\ No newline at end of file
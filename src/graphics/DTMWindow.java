@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2011 giuliano
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package graphics;
+
+import com.marcrh.graph.PointBuffer;
+import com.marcrh.graph.delaunay.IncrementalTriangulator;
+import com.marcrh.graph.delaunay.TriadStore;
+import database.GisDb;
+import java.sql.SQLException;
+
+/**
+ * Finestra che scorre su un DTM mantenendo la triangolazione di Delaunay dei
+ * punti che contiene.
+ * Quando la finestra si sposta di poco non si rifa' tutto: i vertici usciti
+ * vengono tolti dalla triangolazione (vedi
+ * {@link IncrementalTriangulator#retain(double, double, double, double)}),
+ * al database si chiedono solo le fasce entrate e i loro punti vengono
+ * inseriti. Il costo di uno spostamento e' quindi proporzionale ai punti che
+ * cambiano e non a quelli della finestra. Solo se la nuova finestra non
+ * tocca la vecchia la triangolazione viene ricostruita da capo.
+ * Come in GisDb, northing e easting sono y e x dei punti e i bordi della
+ * finestra sono inclusi.
+ * @author giuliano
+ */
+public class DTMWindow {
+    private final GisDb db;
+    //la triangolazione dei punti nella finestra, null prima di moveTo()
+    private IncrementalTriangulator triangulation;
+    private double minN, minE, maxN, maxE;
+
+    public DTMWindow(GisDb db) {
+        this.db = db;
+    }
+
+    /**
+     * Sposta la finestra e aggiorna la triangolazione.
+     * @return quanti punti sono entrati nella finestra.
+     * @throws SQLException se i punti non possono essere letti
+     */
+    public int moveTo(double minN, double minE, double maxN, double maxE)
+            throws SQLException {
+        int count;
+        if (triangulation == null || minN > this.maxN || maxN < this.minN
+                || minE > this.maxE || maxE < this.minE) {
+            //nessuna sovrapposizione: si ricostruisce tutto
+            PointBuffer data = db.getPoints(minN, minE, maxN, maxE);
+            TriadStore triads = data.size() < 3 ? null
+                    : DTMCreator.triangulate(data);
+            if (triads != null && triads.size() > 0) {
+                triangulation = new IncrementalTriangulator(data, triads);
+            } else {
+                //pochi punti o tutti allineati
+                triangulation = new IncrementalTriangulator();
+                triangulation.add(data);
+            }
+            count = data.size();
+        } else {
+            triangulation.retain(minE, minN, maxE, maxN);
+            PointBuffer batch = new PointBuffer();
+            //fasce sopra e sotto la vecchia finestra, larghe quanto la nuova
+            if (minN < this.minN) {
+                query(minN, minE, this.minN, maxE, true, batch);
+            }
+            if (maxN > this.maxN) {
+                query(this.maxN, minE, maxN, maxE, true, batch);
+            }
+            //fasce a sinistra e a destra, alte quanto la parte in comune
+            double lowN = Math.max(minN, this.minN);
+            double highN = Math.min(maxN, this.maxN);
+            if (minE < this.minE) {
+                query(lowN, minE, highN, this.minE, false, batch);
+            }
+            if (maxE > this.maxE) {
+                query(lowN, this.maxE, highN, maxE, false, batch);
+            }
+            triangulation.add(batch);
+            count = batch.size();
+        }
+        this.minN = minN;
+        this.minE = minE;
+        this.maxN = maxN;
+        this.maxE = maxE;
+        return count;
+    }
+
+    /**
+     * Inserisce nella triangolazione i punti appena salvati nel database che
+     * cadono nella finestra, senza rileggerla: gli altri vengono ignorati.
+     * Prima di moveTo() non fa niente, la finestra li leggera' dal database.
+     * @param points punti che il database non aveva, con la quota, come
+     * quelli dati da GisDb.addPoints(PointBuffer, double, PointBuffer).
+     * Non vengono modificati.
+     * @return quanti punti cadono nella finestra.
+     */
+    public int add(PointBuffer points) {
+        if (triangulation == null) {
+            return 0;
+        }
+        PointBuffer batch = new PointBuffer();
+        for (int i = 0; i < points.size(); i++) {
+            double e = points.getX(i), n = points.getY(i);
+            if (n >= minN && n <= maxN && e >= minE && e <= maxE) {
+                batch.add(e, n, points.getZ(i));
+            }
+        }
+        triangulation.add(batch);
+        return batch.size();
+    }
+
+    /**
+     * aggiunge a batch i punti della fascia che stanno fuori dalla vecchia
+     * finestra lungo il northing (rows) o lungo l'easting: la query include
+     * i bordi, che la vecchia finestra aveva gia', e le fasce si toccano
+     * negli angoli, quindi ogni punto deve finire in una fascia sola
+     */
+    private void query(double minN, double minE, double maxN, double maxE,
+            boolean rows, PointBuffer batch) throws SQLException {
+        PointBuffer strip = db.getPoints(minN, minE, maxN, maxE);
+        for (int i = 0; i < strip.size(); i++) {
+            double e = strip.getX(i), n = strip.getY(i);
+            boolean outside = rows ? n < this.minN || n > this.maxN
+                    : e < this.minE || e > this.maxE;
+            if (outside) {
+                batch.add(e, n, strip.getZ(i));
+            }
+        }
+    }
+
+    /**
+     * @return una copia dei vertici della triangolazione, nello stesso
+     * ordine: si possono spostare (ad esempio centrare nel Canvas3D) e
+     * passare poi a {@link #mesh(PointBuffer)}.
+     */
+    public PointBuffer copyPoints() {
+        PointBuffer points = triangulation.getPoints();
+        PointBuffer copy = new PointBuffer(points.size());
+        copy.addAll(points);
+        return copy;
+    }
+
+    /**
+     * Costruisce la superficie della finestra a risoluzione piena.
+     * @param vertices i vertici dati da {@link #copyPoints()}, eventualmente
+     * traslati.
+     * @return la superficie, che usa vertices come vertici.
+     */
+    public TriangleMesh mesh(PointBuffer vertices) {
+        TriadStore triads = triangulation.getTriadStore();
+        if (triads == null) {
+            return new TriangleMesh(vertices, 0);
+        }
+        return DTMCreator.toMesh(vertices, triads);
+    }
+}
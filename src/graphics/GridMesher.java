@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2011 giuliano
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package graphics;
+
+import com.marcrh.graph.PointBuffer;
+import com.marcrh.graph.delaunay.GridTriangulator;
+import com.marcrh.graph.delaunay.TriadStore;
+import java.util.Arrays;
+
+/**
+ * Riconosce i punti che stanno sui nodi di una griglia regolare, come quelli
+ * dei file DTM della regione FVG, e li triangola senza sweep ne' flip: ogni
+ * cella diventa due triangoli, in tempo lineare (vedi GridTriangulator).
+ * Il risultato e' la stessa triangolazione di Delaunay di
+ * {@link DTMCreator#Delaunay(PointBuffer)}, quindi vale solo se c'e' un
+ * punto su ogni nodo: con i buchi (quote NULL) e con i dati sparsi (ad
+ * esempio le tracce GPX) {@link #triangulate(PointBuffer)} restituisce null
+ * e va usato il triangolatore generico.
+ * @author giuliano
+ */
+public class GridMesher {
+    /**
+     * scarto massimo di un punto dal suo nodo, in frazioni del passo
+     */
+    private static final double TOLERANCE = 1e-3;
+    /**
+     * una griglia con piu' di MAX_HOLES nodi per punto e' troppo vuota per
+     * essere un raster: meglio Delaunay.
+     */
+    private static final int MAX_HOLES = 3;
+
+    private GridMesher() {
+    }
+
+    /**
+     * Triangola secondo Delaunay i punti se stanno su tutti i nodi di una
+     * griglia regolare allineata agli assi. Se piu' punti cadono sullo stesso
+     * nodo si usa il primo e gli altri restano fuori, come i punti doppi per
+     * il triangolatore generico.
+     * @param data i punti (solitamente forniti da GisDb)
+     * @return i triangoli, i cui vertici sono indici dei punti in data, o
+     * null se i punti non coprono tutti i nodi di una griglia regolare.
+     */
+    static TriadStore triangulate(PointBuffer data) {
+        Lattice lattice = lattice(data);
+        if (lattice == null || lattice.holes > 0) {
+            return null;
+        }
+        return GridTriangulator.triangulate(data, lattice.cols, lattice.rows,
+                lattice.node);
+    }
+
+    /**
+     * i nodi di una griglia regolare e il punto che sta su ognuno.
+     */
+    static class Lattice {
+        final int cols;
+        final int rows;
+        /**
+         * indice del punto che sta sul nodo (col, row) in node[row * cols + col],
+         * -1 se il nodo e' un buco.
+         */
+        final int[] node;
+        /**
+         * quanti nodi non hanno un punto
+         */
+        final int holes;
+
+        Lattice(int cols, int rows, int[] node, int holes) {
+            this.cols = cols;
+            this.rows = rows;
+            this.node = node;
+            this.holes = holes;
+        }
+    }
+
+    /**
+     * associa i punti ai nodi della griglia regolare su cui stanno. Se piu'
+     * punti cadono sullo stesso nodo si usa il primo.
+     * @param data i punti
+     * @return la griglia, o null se i punti non formano una griglia regolare.
+     */
+    static Lattice lattice(PointBuffer data) {
+        int n = data.size();
+        if (n < 4) {
+            return null;
+        }
+        double[] x = data.getXArray();
+        double[] y = data.getYArray();
+
+        double minX = x[0], maxX = x[0], minY = y[0], maxY = y[0];
+        for (int i = 1; i < n; i++) {
+            minX = Math.min(minX, x[i]);
+            maxX = Math.max(maxX, x[i]);
+            minY = Math.min(minY, y[i]);
+            maxY = Math.max(maxY, y[i]);
+        }
+        int cols = lines(x, n, minX, maxX);
+        int rows = lines(y, n, minY, maxY);
+        if (cols < 2 || rows < 2 || (long) cols * rows > (long) MAX_HOLES * n + 4) {
+            return null;
+        }
+        double dx = (maxX - minX) / (cols - 1);
+        double dy = (maxY - minY) / (rows - 1);
+
+        int[] node = new int[cols * rows];
+        Arrays.fill(node, -1);
+        int holes = cols * rows;
+        for (int i = 0; i < n; i++) {
+            double c = (x[i] - minX) / dx;
+            double r = (y[i] - minY) / dy;
+            long col = Math.round(c);
+            long row = Math.round(r);
+            if (Math.abs(c - col) > TOLERANCE || Math.abs(r - row) > TOLERANCE) {
+                //fuori dalla griglia: non e' un raster
+                return null;
+            }
+            int k = (int) row * cols + (int) col;
+            if (node[k] < 0) {
+                node[k] = i;
+                holes--;
+            }
+        }
+        return new Lattice(cols, rows, node, holes);
+    }
+
+    /**
+     * conta le righe (o colonne) della griglia lungo un asse: il passo e' la
+     * distanza dal minimo della coordinata piu' vicina che non sia il minimo.
+     * @return il numero di righe, 0 se l'asse non sembra una griglia.
+     */
+    private static int lines(double[] v, int n, double min, double max) {
+        double range = max - min;
+        if (range <= 0) {
+            return 0;
+        }
+        //sotto questa distanza due coordinate sono la stessa riga
+        double same = range * 1e-9;
+        double step = range;
+        for (int i = 0; i < n; i++) {
+            double d = v[i] - min;
+            if (d > same && d < step) {
+                step = d;
+            }
+        }
+        //il passo trovato e' sbagliato al piu' di uno scarto per estremo: su
+        //molte righe l'errore si somma, quindi si confrontano i passi e non
+        //il numero di righe. I punti vengono poi controllati uno per uno
+        long rounded = Math.round(range / step);
+        if (rounded >= Integer.MAX_VALUE
+                || Math.abs(range / rounded - step) > 2 * TOLERANCE * step) {
+            return 0;
+        }
+        return (int) rounded + 1;
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2011 giuliano
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package graphics;
+
+import com.marcrh.graph.PointBuffer;
+import java.util.Arrays;
+
+/**
+ * Right-Triangulated Irregular Network di un DTM a griglia regolare.
+ * La griglia viene divisa in blocchi quadrati di (2^k + 1) x (2^k + 1) nodi,
+ * con i bordi in comune e 2^k + 1 almeno pari al lato corto della griglia,
+ * cosi' una griglia allungata non viene estesa a un quadrato sul lato lungo.
+ * Ogni blocco e' diviso in triangoli rettangoli isosceli, ognuno dei quali si
+ * divide in due sull'ipotenusa.
+ * Alla costruzione si calcola una volta per tutte, per ogni nodo, l'errore
+ * verticale che si commette se non lo si usa (il massimo scarto dei nodi
+ * dei triangoli che lo hanno come punto medio dell'ipotenusa, e dei loro
+ * discendenti); poi {@link #mesh(double)} estrae in un tempo proporzionale
+ * ai triangoli prodotti la superficie con meno triangoli che rispetta una
+ * tolleranza in metri. Lo scarto e' calcolato su tutti i nodi del
+ * triangolo e non solo sul punto medio, quindi la tolleranza e' garantita.
+ * Due triangoli che condividono un'ipotenusa si dividono sempre insieme,
+ * quindi la superficie non ha crepe. I nodi senza punto (quota NULL) e
+ * quelli aggiunti per completare i blocchi hanno errore infinito: attorno a
+ * loro si scende alla risoluzione piena e i triangoli che li toccano vengono
+ * scartati.
+ * Vedi W. Evans, D. Kirkpatrick, G. Townsend, "Right-Triangulated
+ * Irregular Networks" (2001) e l'implementazione "Martini" di Mapbox.
+ * @author giuliano
+ */
+public class Rtin {
+    //i punti, le quote sono in z
+    private final PointBuffer data;
+    //lato di un blocco in celle: 2^k
+    private final int tile;
+    //blocchi per riga e per colonna
+    private final int tilesX, tilesY;
+    //nodi per riga della griglia estesa ai blocchi: tilesX * tile + 1
+    private final int width;
+    //indice del punto su ogni nodo della griglia estesa, -1 se manca
+    private final int[] node;
+    //errore di ogni nodo
+    private final float[] errors;
+    //la superficie in costruzione in mesh()
+    private TriangleMesh mesh;
+    private float maxError;
+
+    private Rtin(PointBuffer data, GridMesher.Lattice lattice) {
+        this.data = data;
+        int side = 1;
+        while (side + 1 < Math.min(lattice.cols, lattice.rows)) {
+            side <<= 1;
+        }
+        tile = side;
+        tilesX = Math.max(1, (lattice.cols - 1 + tile - 1) / tile);
+        tilesY = Math.max(1, (lattice.rows - 1 + tile - 1) / tile);
+        width = tilesX * tile + 1;
+        int height = tilesY * tile + 1;
+        node = new int[width * height];
+        Arrays.fill(node, -1);
+        for (int row = 0; row < lattice.rows; row++) {
+            System.arraycopy(lattice.node, row * lattice.cols, node, row * width, lattice.cols);
+        }
+        errors = new float[width * height];
+        computeErrors();
+    }
+
+    /**
+     * Costruisce la gerarchia degli errori se i punti stanno su una griglia
+     * regolare.
+     * @param data i punti (solitamente forniti da GisDb)
+     * @return la gerarchia, o null se i punti non formano una griglia
+     * regolare (allora va usata la triangolazione di Delaunay).
+     */
+    public static Rtin build(PointBuffer data) {
+        GridMesher.Lattice lattice = GridMesher.lattice(data);
+        if (lattice == null) {
+            return null;
+        }
+        return new Rtin(data, lattice);
+    }
+
+    /**
+     * Scorre tutti i triangoli della gerarchia, dai piu' piccoli ai piu'
+     * grandi, e assegna al punto medio dell'ipotenusa di ognuno il massimo
+     * scarto tra la quota dei nodi del triangolo e il piano dei suoi vertici,
+     * oppure l'errore dei figli se e' maggiore. Ogni nodo sta in un triangolo
+     * per livello, quindi il costo e' O(n log n).
+     * Ogni triangolo viene fatto in tutti i blocchi prima di passare al
+     * successivo: un nodo sul bordo tra due blocchi e' il punto medio di un
+     * triangolo per parte, della stessa grandezza, e quando si arriva ai
+     * triangoli piu' grandi il suo errore tiene gia' conto di entrambi, cosi'
+     * i due blocchi si dividono insieme anche sul bordo.
+     */
+    private void computeErrors() {
+        int numSmallestTriangles = tile * tile;
+        //tutti i triangoli tranne i due piu' grandi
+        int numTriangles = numSmallestTriangles * 2 - 2;
+        int numParentTriangles = numTriangles - numSmallestTriangles;
+
+        for (int i = numTriangles - 1; i >= 0; i--) {
+            //le coordinate del triangolo dal suo indice in un albero binario
+            int id = i + 2;
+            int ax = 0, ay = 0, bx = 0, by = 0, cx = 0, cy = 0;
+            if ((id & 1) != 0) {
+                bx = by = cx = tile;
+            } else {
+                ax = ay = cy = tile;
+            }
+            while ((id >>= 1) > 1) {
+                int mx = (ax + bx) >> 1;
+                int my = (ay + by) >> 1;
+                if ((id & 1) != 0) {
+                    bx = ax;
+                    by = ay;
+                    ax = cx;
+                    ay = cy;
+                } else {
+                    ax = bx;
+                    ay = by;
+                    bx = cx;
+                    by = cy;
+                }
+                cx = mx;
+                cy = my;
+            }
+
+            for (int oy = 0; oy < tilesY * tile; oy += tile) {
+                for (int ox = 0; ox < tilesX * tile; ox += tile) {
+                    int middle = (oy + ((ay + by) >> 1)) * width + ox + ((ax + bx) >> 1);
+                    float error = deviation(ox + ax, oy + ay, ox + bx, oy + by,
+                            ox + cx, oy + cy);
+                    if (i < numParentTriangles) {
+                        int left = (oy + ((ay + cy) >> 1)) * width + ox + ((ax + cx) >> 1);
+                        int right = (oy + ((by + cy) >> 1)) * width + ox + ((bx + cx) >> 1);
+                        error = Math.max(error, Math.max(errors[left], errors[right]));
+                    }
+                    errors[middle] = Math.max(errors[middle], error);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return il massimo scarto verticale tra i nodi del triangolo (a, b, c) e
+     * il piano per i suoi vertici, infinito se manca un nodo.
+     */
+    private float deviation(int ax, int ay, int bx, int by, int cx, int cy) {
+        int a = node[ay * width + ax], b = node[by * width + bx], c = node[cy * width + cx];
+        if (a < 0 || b < 0 || c < 0) {
+            return Float.POSITIVE_INFINITY;
+        }
+        double[] z = data.getZArray();
+        //coordinate baricentriche intere: il doppio dell'area dei sottotriangoli
+        int area = (bx - ax) * (cy - ay) - (by - ay) * (cx - ax);
+        double za = z[a] / area, zb = z[b] / area, zc = z[c] / area;
+        int minX = Math.min(ax, Math.min(bx, cx)), maxX = Math.max(ax, Math.max(bx, cx));
+        int minY = Math.min(ay, Math.min(by, cy)), maxY = Math.max(ay, Math.max(by, cy));
+        double max = 0;
+        for (int y = minY; y <= maxY; y++) {
+            for (int x = minX; x <= maxX; x++) {
+                int wa = (cx - bx) * (y - by) - (cy - by) * (x - bx);
+                int wb = (ax - cx) * (y - cy) - (ay - cy) * (x - cx);
+                int wc = area - wa - wb;
+                if (area > 0 ? (wa < 0 || wb < 0 || wc < 0) : (wa > 0 || wb > 0 || wc > 0)) {
+                    continue;
+                }
+                int p = node[y * width + x];
+                if (p < 0) {
+                    return Float.POSITIVE_INFINITY;
+                }
+                max = Math.max(max, Math.abs(wa * za + wb * zb + wc * zc - z[p]));
+            }
+        }
+        return (float) max;
+    }
+
+    /**
+     * Estrae la superficie con meno triangoli il cui scarto verticale dai
+     * punti della griglia non supera la tolleranza. I triangoli sono
+     * orientati in senso orario, come quelli di
+     * {@link DTMCreator#Delaunay(PointBuffer)}.
+     * @param maxError la tolleranza in metri: 0 per la risoluzione piena
+     * (tolti solo i nodi allineati con i vicini).
+     * @return la superficie, i cui vertici sono i punti della griglia.
+     */
+    public TriangleMesh mesh(double maxError) {
+        this.maxError = (float) maxError;
+        mesh = new TriangleMesh(data, 1024);
+        for (int y = 0; y < tilesY * tile; y += tile) {
+            for (int x = 0; x < tilesX * tile; x += tile) {
+                processTriangle(x, y, x + tile, y + tile, x + tile, y);
+                processTriangle(x + tile, y + tile, x, y, x, y + tile);
+            }
+        }
+        TriangleMesh result = mesh;
+        mesh = null;
+        return result;
+    }
+
+    /**
+     * aggiunge il triangolo (a, b, c), con l'angolo retto in c, o lo divide
+     * sul punto medio dell'ipotenusa ab.
+     */
+    private void processTriangle(int ax, int ay, int bx, int by, int cx, int cy) {
+        int mx = (ax + bx) >> 1;
+        int my = (ay + by) >> 1;
+        if (Math.abs(ax - cx) + Math.abs(ay - cy) > 1 && errors[my * width + mx] > maxError) {
+            processTriangle(cx, cy, ax, ay, mx, my);
+            processTriangle(bx, by, cx, cy, mx, my);
+        } else {
+            int a = node[ay * width + ax];
+            int b = node[by * width + bx];
+            int c = node[cy * width + cx];
+            //attorno ai buchi si arriva sempre fin qui
+            if (a >= 0 && b >= 0 && c >= 0) {
+                mesh.addTriangle(a, b, c);
+            }
+        }
+    }
+
+}
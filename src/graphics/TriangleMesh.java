@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2011 giuliano
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package graphics;
+
+import com.marcrh.graph.PointBuffer;
+import java.util.Arrays;
+
+/**
+ * Modella la superficie del DTM come un insieme di triangoli indicizzati:
+ * i vertici sono in un {@link PointBuffer} e ogni triangolo è una terna di
+ * indici in un unico array di int, senza un oggetto per triangolo.
+ * @author giuliano
+ */
+public class TriangleMesh {
+    //i vertici (condivisi, non copiati)
+    private PointBuffer vertices;
+    //3 indici per triangolo, solo i primi 3 * triangleCount sono validi
+    private int[] indices;
+    private int triangleCount;
+
+    /**
+     * @param vertices i punti a cui si riferiscono gli indici dei triangoli
+     * @param expectedTriangles quanti triangoli si pensa di aggiungere
+     */
+    public TriangleMesh(PointBuffer vertices, int expectedTriangles) {
+        this.vertices = vertices;
+        this.indices = new int[Math.max(3, expectedTriangles * 3)];
+    }
+
+    /**
+     * Aggiunge un triangolo dati gli indici dei suoi vertici
+     */
+    public void addTriangle(int a, int b, int c) {
+        if (triangleCount * 3 + 3 > indices.length) {
+            indices = Arrays.copyOf(indices, indices.length + (indices.length >> 1) + 3);
+        }
+        int i = triangleCount * 3;
+        indices[i] = a;
+        indices[i + 1] = b;
+        indices[i + 2] = c;
+        triangleCount ++;
+    }
+
+    /**
+     * @return il numero di triangoli
+     */
+    public int getTriangleCount() {
+        return triangleCount;
+    }
+
+    /**
+     * @param triangle l'indice del triangolo
+     * @param corner il vertice del triangolo (0, 1 o 2)
+     * @return l'indice in {@link #getVertices()} del vertice richiesto
+     */
+    public int getVertexIndex(int triangle, int corner) {
+        return indices[triangle * 3 + corner];
+    }
+
+    /**
+     * @return i vertici della superficie
+     */
+    public PointBuffer getVertices() {
+        return vertices;
+    }
+
+    /**
+     * @return una copia degli indici dei triangoli, 3 per triangolo
+     */
+    public int[] getIndices() {
+        return Arrays.copyOf(indices, triangleCount * 3);
+    }
+}
@@ -0,0 +1,83 @@
+package com.marcrh.graph.delaunay;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.marcrh.graph.PointBuffer;
+
+/**
+ * The concurrent flips, the slabs and the Hilbert order must give the same
+ * triangles as the sequential pass, cocircular points included.
+ */
+public class ConcurrentLegaliserTest {
+
+	/**
+	 * 200k points on a 300 x 300 lattice: many duplicates and many
+	 * cocircular quads.
+	 */
+	@Test
+	public void sameTrianglesOnLattice() {
+		Random random = new Random(7);
+		PointBuffer points = new PointBuffer();
+		for (int i = 0; i < 200000; i++)
+			points.add(random.nextInt(300), random.nextInt(300), 0);
+		assertSameTriangles(points);
+	}
+
+	/**
+	 * A full 400 x 400 grid: every cell is a cocircular quad.
+	 */
+	@Test
+	public void sameTrianglesOnGrid() {
+		PointBuffer points = new PointBuffer();
+		for (int i = 0; i < 400; i++) {
+			for (int j = 0; j < 400; j++)
+				points.add(j, i, 0);
+		}
+		assertSameTriangles(points);
+	}
+
+	private static void assertSameTriangles(PointBuffer points) {
+		long expected[] = triangles(points, new Triangulator().getTriadStore(points, true));
+
+		assertArrayEquals("concurrent flips", expected,
+				triangles(points, new Triangulator(8).getTriadStore(points, true)));
+
+		Triangulator hilbert = new Triangulator();
+		hilbert.setHilbertOrder(true);
+		assertArrayEquals("Hilbert order", expected,
+				triangles(points, hilbert.getTriadStore(points, true)));
+
+		assertArrayEquals("slabs", expected,
+				triangles(points, new ParallelTriangulator(4).getTriadStore(points, true)));
+	}
+
+	/**
+	 * @return The triangles as sorted keys made of the coordinates of their
+	 * vertices, which do not depend on which of the duplicates is kept.
+	 */
+	private static long[] triangles(PointBuffer points, TriadStore triads) {
+		long keys[] = new long[triads.size()];
+		for (int t = 0; t < keys.length; t++) {
+			long a = vertex(points, triads.getA(t));
+			long b = vertex(points, triads.getB(t));
+			long c = vertex(points, triads.getC(t));
+			long low = Math.min(a, Math.min(b, c)), high = Math.max(a, Math.max(b, c));
+			long middle = a + b + c - low - high;
+			keys[t] = (low << 40) | (middle << 20) | high;
+		}
+		Arrays.sort(keys);
+		return keys;
+	}
+
+	/**
+	 * @return The lattice node of the vertex in 20 bits.
+	 */
+	private static long vertex(PointBuffer points, int v) {
+		return (long) points.getX(v) * 1000 + (long) points.getY(v);
+	}
+}
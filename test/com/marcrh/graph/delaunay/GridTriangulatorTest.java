@@ -0,0 +1,141 @@
+package com.marcrh.graph.delaunay;
+
+import static com.marcrh.graph.delaunay.TriangulationAssert.assertDelaunay;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.marcrh.graph.PointBuffer;
+
+/**
+ * The cells of a grid must be split like the sequential triangulator does,
+ * and a grid whose triads would not be Delaunay must be refused.
+ */
+public class GridTriangulatorTest {
+
+	/**
+	 * Every cell is a cocircular quad: the diagonals must be the ones of the
+	 * perturbation.
+	 */
+	@Test
+	public void sameTrianglesOnGrid() {
+		PointBuffer points = TestPoints.grid(120, 70);
+		assertSameTriangles(points, GridTriangulator.triangulate(points, 120, 70, rowByRow(120, 70)));
+	}
+
+	@Test
+	public void sameTrianglesOnRectangularCells() {
+		PointBuffer points = new PointBuffer();
+		for (int j = 0; j < 50; j++) {
+			for (int i = 0; i < 80; i++)
+				points.add(10 * i, 3 * j, 0);
+		}
+		assertSameTriangles(points, GridTriangulator.triangulate(points, 80, 50, rowByRow(80, 50)));
+	}
+
+	/**
+	 * Inner nodes moved by a thousandth of the step: each cell picks its own
+	 * diagonal.
+	 */
+	@Test
+	public void sameTrianglesOnJitteredGrid() {
+		PointBuffer points = TestPoints.grid(100, 100);
+		Random random = new Random(5);
+		for (int j = 1; j < 99; j++) {
+			for (int i = 1; i < 99; i++) {
+				int k = j * 100 + i;
+				points.set(k, points.getX(k) + (random.nextDouble() - 0.5) * 0.004,
+						points.getY(k) + (random.nextDouble() - 0.5) * 0.004, 0);
+			}
+		}
+		assertSameTriangles(points, GridTriangulator.triangulate(points, 100, 100, rowByRow(100, 100)));
+	}
+
+	/**
+	 * The nodes are found through <b>node</b>, whatever the order of the
+	 * points.
+	 */
+	@Test
+	public void shuffledPoints() {
+		PointBuffer grid = TestPoints.grid(40, 30);
+		int order[] = rowByRow(40, 30);
+		Random random = new Random(6);
+		for (int k = order.length - 1; k > 0; k--) {
+			int r = random.nextInt(k + 1);
+			int tmp = order[k];
+			order[k] = order[r];
+			order[r] = tmp;
+		}
+		PointBuffer points = new PointBuffer();
+		int node[] = new int[order.length];
+		for (int k = 0; k < order.length; k++) {
+			points.add(grid.getX(order[k]), grid.getY(order[k]), 0);
+			node[order[k]] = k;
+		}
+		assertSameTriangles(points, GridTriangulator.triangulate(points, 40, 30, node));
+	}
+
+	/**
+	 * A border node moved inwards: the hull has no edge to it, the grid
+	 * triads would leave a notch.
+	 */
+	@Test
+	public void concaveBorder() {
+		PointBuffer points = TestPoints.grid(20, 20);
+		int k = 10;
+		points.set(k, points.getX(k), points.getY(k) + 0.001, 0);
+		assertNull(GridTriangulator.triangulate(points, 20, 20, rowByRow(20, 20)));
+	}
+
+	/**
+	 * A node moved across the circle of a triad of the next cell.
+	 */
+	@Test
+	public void notDelaunay() {
+		PointBuffer points = TestPoints.grid(20, 20);
+		int k = 5 * 20 + 5;
+		points.set(k, points.getX(k) + 1.9, points.getY(k) + 1.9, 0);
+		assertNull(GridTriangulator.triangulate(points, 20, 20, rowByRow(20, 20)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void hole() {
+		PointBuffer points = TestPoints.grid(10, 10);
+		int node[] = rowByRow(10, 10);
+		node[55] = -1;
+		GridTriangulator.triangulate(points, 10, 10, node);
+	}
+
+	private static int[] rowByRow(int columns, int rows) {
+		int node[] = new int[columns * rows];
+		for (int k = 0; k < node.length; k++)
+			node[k] = k;
+		return node;
+	}
+
+	private static void assertSameTriangles(PointBuffer points, TriadStore grid) {
+		assertNotNull(grid);
+		assertDelaunay(points, grid);
+		assertArrayEquals(triangles(new Triangulator().getTriadStore(points, true)), triangles(grid));
+	}
+
+	/**
+	 * @return The triangles as sorted keys made of their sorted vertices.
+	 */
+	private static long[] triangles(TriadStore triads) {
+		long keys[] = new long[triads.size()];
+		for (int t = 0; t < keys.length; t++) {
+			long a = triads.getA(t), b = triads.getB(t), c = triads.getC(t);
+			long low = Math.min(a, Math.min(b, c)), high = Math.max(a, Math.max(b, c));
+			long middle = a + b + c - low - high;
+			keys[t] = (low << 40) | (middle << 20) | high;
+		}
+		Arrays.sort(keys);
+		return keys;
+	}
+}
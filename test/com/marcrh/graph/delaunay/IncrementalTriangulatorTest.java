@@ -0,0 +1,137 @@
+package com.marcrh.graph.delaunay;
+
+import static com.marcrh.graph.delaunay.TriangulationAssert.assertDelaunay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.marcrh.graph.PointBuffer;
+
+/**
+ * Vertices removed by
+ * {@link IncrementalTriangulator#retain(double, double, double, double)} must
+ * leave the Delaunay triangulation of the vertices kept, with a hull the next
+ * points can be added to, even when nothing or only a line is left.
+ */
+public class IncrementalTriangulatorTest {
+
+	/**
+	 * A window with no point in it: the triangulation starts again from the
+	 * next batch.
+	 */
+	@Test
+	public void retainEmptiesTheWindow() {
+		PointBuffer all = TestPoints.random(5000, 1);
+		IncrementalTriangulator triangulation = triangulate(all);
+		int vertex[] = triangulation.retain(2000, 2000, 3000, 3000);
+		assertEquals(all.size(), vertex.length);
+		for (int v : vertex)
+			assertEquals(-1, v);
+		assertEquals(0, triangulation.getPoints().size());
+		assertNull(triangulation.getTriadStore());
+
+		PointBuffer batch = TestPoints.random(3000, 2);
+		assertEquals(batch.size(), triangulation.add(batch));
+		assertDelaunay(triangulation.getPoints(), triangulation.getTriadStore(), batch);
+	}
+
+	/**
+	 * Only a row of a grid is left: no triads until a point off the row comes.
+	 */
+	@Test
+	public void retainLeavesALine() {
+		PointBuffer grid = TestPoints.grid(60, 40);
+		IncrementalTriangulator triangulation = triangulate(grid);
+		double y = grid.getY(20 * 60);
+		triangulation.retain(0, y, 1e7, y);
+		assertEquals(60, triangulation.getPoints().size());
+		assertNull(triangulation.getTriadStore());
+
+		PointBuffer batch = new PointBuffer();
+		batch.add(grid.getX(30), y + 1, 0);
+		triangulation.add(batch);
+		PointBuffer expected = inside(grid, 0, y, 1e7, y);
+		expected.addAll(batch);
+		assertDelaunay(triangulation.getPoints(), triangulation.getTriadStore(), expected);
+	}
+
+	/**
+	 * A single hull vertex far out: its triads reach round the whole hull.
+	 * Points added afterwards outside the new hull must see its edges.
+	 */
+	@Test
+	public void hullVertexRemoved() {
+		PointBuffer all = TestPoints.random(5000, 3);
+		all.add(-3000, 500, 0);
+		IncrementalTriangulator triangulation = triangulate(all);
+		int vertex[] = triangulation.retain(0, 0, 1000, 1000);
+		assertEquals(-1, vertex[5000]);
+		assertDelaunay(triangulation.getPoints(), triangulation.getTriadStore(),
+				inside(all, 0, 0, 1000, 1000));
+
+		PointBuffer batch = new PointBuffer();
+		Random random = new Random(4);
+		for (int i = 0; i < 200; i++)
+			batch.add(-100 + random.nextDouble() * 100, random.nextDouble() * 1000, 0);
+		triangulation.add(batch);
+		PointBuffer expected = inside(all, 0, 0, 1000, 1000);
+		expected.addAll(batch);
+		assertDelaunay(triangulation.getPoints(), triangulation.getTriadStore(), expected);
+	}
+
+	/**
+	 * A side of a grid removed: its vertices are collinear hull vertices and
+	 * every cell next to them is cocircular.
+	 */
+	@Test
+	public void gridSideRemoved() {
+		PointBuffer grid = TestPoints.grid(60, 40);
+		IncrementalTriangulator triangulation = triangulate(grid);
+		double x0 = grid.getX(3), y1 = grid.getY(35 * 60);
+		triangulation.retain(x0, 0, 1e7, y1);
+		assertDelaunay(triangulation.getPoints(), triangulation.getTriadStore(),
+				inside(grid, x0, 0, 1e7, y1));
+	}
+
+	/**
+	 * The vertices at the end of the buffer take the places of the removed
+	 * ones, the others keep theirs.
+	 */
+	@Test
+	public void renumbering() {
+		PointBuffer all = TestPoints.random(3000, 5);
+		IncrementalTriangulator triangulation = triangulate(all);
+		int vertex[] = triangulation.retain(200, 200, 800, 800);
+		PointBuffer kept = triangulation.getPoints();
+		for (int v = 0; v < vertex.length; v++) {
+			if (vertex[v] < 0)
+				continue;
+			if (v < kept.size())
+				assertEquals(v, vertex[v]);
+			assertEquals(all.getX(v), kept.getX(vertex[v]), 0);
+			assertEquals(all.getY(v), kept.getY(vertex[v]), 0);
+		}
+		assertEquals(inside(all, 200, 200, 800, 800).size(), kept.size());
+	}
+
+	private static IncrementalTriangulator triangulate(PointBuffer all) {
+		IncrementalTriangulator triangulation = new IncrementalTriangulator();
+		triangulation.add(all);
+		assertDelaunay(triangulation.getPoints(), triangulation.getTriadStore(), all);
+		return triangulation;
+	}
+
+	private static PointBuffer inside(PointBuffer points, double minX, double minY,
+			double maxX, double maxY) {
+		PointBuffer inside = new PointBuffer();
+		for (int i = 0; i < points.size(); i++) {
+			double x = points.getX(i), y = points.getY(i);
+			if (x >= minX && x <= maxX && y >= minY && y <= maxY)
+				inside.add(x, y, 0);
+		}
+		return inside;
+	}
+}
@@ -0,0 +1,137 @@
+package com.marcrh.graph.delaunay;
+
+import static com.marcrh.graph.delaunay.TriangulationAssert.assertDelaunay;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.marcrh.graph.PointBuffer;
+
+/**
+ * The slabs sewn together must be the Delaunay triangulation, with the
+ * duplicates the sequential triangulator finds.
+ */
+public class ParallelTriangulatorTest {
+
+	@Test
+	public void random() {
+		check(TestPoints.random(100000, 1));
+	}
+
+	@Test
+	public void grid() {
+		check(TestPoints.grid(300, 300));
+	}
+
+	@Test
+	public void lattice() {
+		check(TestPoints.lattice(150000, 400, 2));
+	}
+
+	@Test
+	public void clustered() {
+		check(TestPoints.clustered(100000, 3));
+	}
+
+	@Test
+	public void collinearSlab() {
+		check(TestPoints.collinearSlab(80000, 4));
+	}
+
+	/**
+	 * A short slab between two tall ones, and a tall one between two short
+	 * ones: the common tangents are far from the vertices the sewing starts
+	 * from, and the seams are long fans.
+	 */
+	@Test
+	public void staggeredSlabs() {
+		checkSeams(slabs(new double[] { 0, 1000, 450, 550, 0, 1000 }, 20000, 5), 3);
+		checkSeams(slabs(new double[] { 450, 550, 0, 1000, 450, 550 }, 20000, 6), 3);
+	}
+
+	/**
+	 * Points in a disk: the tangents go round the curved hulls of the slabs.
+	 */
+	@Test
+	public void roundSlabs() {
+		Random random = new Random(7);
+		PointBuffer points = new PointBuffer();
+		while (points.size() < 80000) {
+			double x = random.nextDouble() * 2 - 1, y = random.nextDouble() * 2 - 1;
+			if (x * x + y * y <= 1)
+				points.add(500 + 500 * x, 500 + 500 * y, 0);
+		}
+		checkSeams(points, 4);
+	}
+
+	/**
+	 * Columns of points with the same <b>x</b>: no cut falls inside a column,
+	 * so the hulls facing each other across a seam are straight vertical
+	 * chains of collinear vertices.
+	 */
+	@Test
+	public void columnsAtTheCut() {
+		Random random = new Random(8);
+		PointBuffer points = new PointBuffer();
+		for (int i = 0; i < 300; i++) {
+			for (int j = 0; j < 240; j++)
+				points.add(i, random.nextDouble() * 1000, 0);
+		}
+		checkSeams(points, 4);
+	}
+
+	private static void check(PointBuffer points) {
+		Triangulator sequential = new Triangulator();
+		sequential.getTriadStore(points, true);
+		for (int h = 0; h < 2; h++) {
+			ParallelTriangulator triangulator = new ParallelTriangulator(4);
+			triangulator.setHilbertOrder(h == 1);
+			assertDelaunay(points, triangulator.getTriadStore(points, true));
+			assertEquals(sequential.getNumDuplicates(), triangulator.getNumDuplicates());
+		}
+	}
+
+	/**
+	 * With enough points for a slab per thread the seams must be sewn into the
+	 * same triangles as the sequential triangulator's.
+	 */
+	private static void checkSeams(PointBuffer points, int threads) {
+		TriadStore triads = new ParallelTriangulator(threads).getTriadStore(points, true);
+		assertDelaunay(points, triads);
+		assertArrayEquals(triangles(new Triangulator().getTriadStore(points, true)), triangles(triads));
+	}
+
+	/**
+	 * Side by side slabs 1000 wide, slab <b>s</b> spanning from
+	 * <b>ranges</b>[2s] to <b>ranges</b>[2s + 1] along <b>y</b>.
+	 */
+	private static PointBuffer slabs(double ranges[], int perSlab, long seed) {
+		Random random = new Random(seed);
+		PointBuffer points = new PointBuffer();
+		for (int s = 0; s < ranges.length / 2; s++) {
+			double low = ranges[2 * s], high = ranges[2 * s + 1];
+			for (int i = 0; i < perSlab; i++)
+				points.add(1000 * s + random.nextDouble() * 1000, low + random.nextDouble() * (high - low), 0);
+		}
+		return points;
+	}
+
+	/**
+	 * @return The triangles as sorted keys made of their sorted vertices.
+	 */
+	private static long[] triangles(TriadStore triads) {
+		long keys[] = new long[triads.size()];
+		for (int t = 0; t < keys.length; t++) {
+			long a = triads.getA(t), b = triads.getB(t), c = triads.getC(t);
+			long low = Math.min(a, Math.min(b, c)), high = Math.max(a, Math.max(b, c));
+			long middle = a + b + c - low - high;
+			keys[t] = (low << 40) | (middle << 20) | high;
+		}
+		Arrays.sort(keys);
+		return keys;
+	}
+}
@@ -0,0 +1,180 @@
+package com.marcrh.graph.delaunay;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * The signs of the predicates against determinants computed with
+ * {@link BigDecimal}, on nearly degenerate points where the plain double
+ * evaluation gets them wrong.
+ */
+public class PredicatesTest {
+
+	/**
+	 * Points within a few ulps of the line y = x, as in Shewchuk's plots of
+	 * the naive orientation test.
+	 */
+	@Test
+	public void orient2dNearLine() {
+		double x = 0.5, y = 0.5;
+		for (int i = 0; i < 64; i++) {
+			for (int j = 0; j < 64; j++) {
+				double px = x + i * Math.ulp(x), py = y + j * Math.ulp(y);
+				assertOrient(px, py, 12, 12, 24, 24);
+				assertOrient(24, 24, px, py, 12, 12);
+			}
+		}
+	}
+
+	/**
+	 * Aligned points far from the origin, like the nodes of a UTM grid, and
+	 * the same points moved by one ulp.
+	 */
+	@Test
+	public void orient2dUtm() {
+		Random random = new Random(1);
+		for (int k = 0; k < 10000; k++) {
+			double x0 = 500000 + random.nextInt(1000) * 0.5;
+			double y0 = 5000000 + random.nextInt(1000) * 0.5;
+			double dx = random.nextInt(20) * 0.5, dy = random.nextInt(20) * 0.5;
+			int s = random.nextInt(5) + 1, t = random.nextInt(5) + 1;
+			double cx = x0 + dx * (s + t), cy = y0 + dy * (s + t);
+			assertEquals(0, Math.signum(Predicates.orient2d(x0, y0, x0 + dx * s, y0 + dy * s,
+					cx, cy)), 0);
+			cx += (random.nextBoolean() ? 1 : -1) * Math.ulp(cx);
+			assertOrient(x0, y0, x0 + dx * s, y0 + dy * s, cx, cy);
+		}
+	}
+
+	/**
+	 * Coordinates of very different size, whose differences are not exact
+	 * doubles.
+	 */
+	@Test
+	public void orient2dMixedMagnitudes() {
+		Random random = new Random(2);
+		for (int k = 0; k < 10000; k++) {
+			double ax = random.nextDouble() * 1e-20, ay = random.nextDouble() * 1e-20;
+			double bx = 1e5 + random.nextInt(3), by = 1e5 + random.nextInt(3);
+			double cx = 2 * bx - ax + random.nextInt(3) * Math.ulp(bx);
+			double cy = 2 * by - ay;
+			assertOrient(ax, ay, bx, by, cx, cy);
+		}
+	}
+
+	/**
+	 * The vertices of grid cells are cocircular, and stay nearly so when a
+	 * vertex moves by a few ulps.
+	 */
+	@Test
+	public void inCircleGrid() {
+		Random random = new Random(3);
+		for (int k = 0; k < 10000; k++) {
+			double x = 500000 + random.nextInt(1000) * 2, y = 5000000 + random.nextInt(1000) * 2;
+			double side = 2;
+			assertEquals(0, Math.signum(Predicates.inCircle(x, y, x + side, y,
+					x + side, y + side, x, y + side)), 0);
+			double dx = x + (random.nextInt(5) - 2) * Math.ulp(x);
+			double dy = y + side + (random.nextInt(5) - 2) * Math.ulp(y);
+			assertInCircle(x, y, x + side, y, x + side, y + side, dx, dy);
+			assertInCircle(x + side, y + side, x + side, y, x, y, dx, dy);
+		}
+	}
+
+	/**
+	 * Random cocircular points moved by a few ulps.
+	 */
+	@Test
+	public void inCircleNearCircle() {
+		Random random = new Random(4);
+		for (int k = 0; k < 10000; k++) {
+			double points[] = new double[8];
+			for (int i = 0; i < 4; i++) {
+				double angle = random.nextDouble() * 2 * Math.PI;
+				points[2 * i] = 1000 + 7 * Math.cos(angle);
+				points[2 * i + 1] = 2000 + 7 * Math.sin(angle);
+			}
+			points[6] += (random.nextInt(9) - 4) * Math.ulp(points[6]);
+			assertInCircle(points[0], points[1], points[2], points[3], points[4], points[5],
+					points[6], points[7]);
+		}
+	}
+
+	@Test
+	public void inCircumcircleAnyOrientation() {
+		// clockwise and anticlockwise triangles, point inside
+		assertTrue(Predicates.inCircumcircle(0, 0, 4, 0, 0, 4, 1, 1));
+		assertTrue(Predicates.inCircumcircle(0, 0, 0, 4, 4, 0, 1, 1));
+		// cocircular and aligned
+		assertFalse(Predicates.inCircumcircle(0, 0, 4, 0, 4, 4, 0, 4));
+		assertFalse(Predicates.inCircumcircle(0, 0, 1, 1, 2, 2, 1, 0));
+	}
+
+	/**
+	 * Cocircular points are never a tie: the two triangles on a diagonal of a
+	 * grid cell agree on whether to flip it, whichever side tests it, and
+	 * exactly one of the two diagonals is kept.
+	 */
+	@Test
+	public void inCircumcirclePerturbed() {
+		Random random = new Random(5);
+		for (int k = 0; k < 10000; k++) {
+			double x = random.nextInt(100), y = random.nextInt(100), side = 1 + random.nextInt(10);
+			// the cell in a random rotation of its vertices
+			double cell[] = { x, y, x + side, y, x + side, y + side, x, y + side };
+			int r = random.nextInt(4);
+			double ax = cell[2 * r], ay = cell[2 * r + 1];
+			double bx = cell[2 * ((r + 1) % 4)], by = cell[2 * ((r + 1) % 4) + 1];
+			double cx = cell[2 * ((r + 2) % 4)], cy = cell[2 * ((r + 2) % 4) + 1];
+			double dx = cell[2 * ((r + 3) % 4)], dy = cell[2 * ((r + 3) % 4) + 1];
+			// diagonal a-c, between the triangles b, a, c and d, c, a
+			boolean flip = Predicates.inCircumcirclePerturbed(bx, by, ax, ay, cx, cy, dx, dy);
+			assertEquals(flip, Predicates.inCircumcirclePerturbed(dx, dy, cx, cy, ax, ay, bx, by));
+			assertEquals(flip, Predicates.inCircumcirclePerturbed(cx, cy, ax, ay, bx, by, dx, dy));
+			// exactly one of the two diagonals is kept
+			assertEquals(!flip, Predicates.inCircumcirclePerturbed(ax, ay, bx, by, dx, dy, cx, cy));
+		}
+		// not cocircular: the exact answer
+		for (int k = 0; k < 10000; k++) {
+			double c[] = new double[8];
+			for (int i = 0; i < 8; i++)
+				c[i] = random.nextInt(8);
+			if (Predicates.inCircle(c[0], c[1], c[2], c[3], c[4], c[5], c[6], c[7]) != 0)
+				assertEquals(Predicates.inCircumcircle(c[0], c[1], c[2], c[3], c[4], c[5], c[6], c[7]),
+						Predicates.inCircumcirclePerturbed(c[0], c[1], c[2], c[3], c[4], c[5], c[6], c[7]));
+		}
+	}
+
+	private static void assertOrient(double ax, double ay, double bx, double by,
+			double cx, double cy) {
+		BigDecimal acx = exact(ax).subtract(exact(cx)), acy = exact(ay).subtract(exact(cy));
+		BigDecimal bcx = exact(bx).subtract(exact(cx)), bcy = exact(by).subtract(exact(cy));
+		int expected = acx.multiply(bcy).subtract(acy.multiply(bcx)).signum();
+		assertEquals(expected, Math.signum(Predicates.orient2d(ax, ay, bx, by, cx, cy)), 0);
+	}
+
+	private static void assertInCircle(double ax, double ay, double bx, double by,
+			double cx, double cy, double dx, double dy) {
+		BigDecimal adx = exact(ax).subtract(exact(dx)), ady = exact(ay).subtract(exact(dy));
+		BigDecimal bdx = exact(bx).subtract(exact(dx)), bdy = exact(by).subtract(exact(dy));
+		BigDecimal cdx = exact(cx).subtract(exact(dx)), cdy = exact(cy).subtract(exact(dy));
+		BigDecimal aLift = adx.multiply(adx).add(ady.multiply(ady));
+		BigDecimal bLift = bdx.multiply(bdx).add(bdy.multiply(bdy));
+		BigDecimal cLift = cdx.multiply(cdx).add(cdy.multiply(cdy));
+		int expected = aLift.multiply(bdx.multiply(cdy).subtract(cdx.multiply(bdy)))
+				.add(bLift.multiply(cdx.multiply(ady).subtract(adx.multiply(cdy))))
+				.add(cLift.multiply(adx.multiply(bdy).subtract(bdx.multiply(ady)))).signum();
+		assertEquals(expected,
+				Math.signum(Predicates.inCircle(ax, ay, bx, by, cx, cy, dx, dy)), 0);
+	}
+
+	private static BigDecimal exact(double d) {
+		return new BigDecimal(d);
+	}
+}
@@ -0,0 +1,197 @@
+package com.marcrh.graph.delaunay;
+
+import static com.marcrh.graph.delaunay.TriangulationAssert.assertDelaunay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.marcrh.graph.PointBuffer;
+import com.marcrh.graph.RadixSort;
+
+/**
+ * A triangle may be written only once no later point can fall in its
+ * circumcircle, and a vertex right before its first triangle; the front left
+ * in memory must stay small.
+ */
+public class StreamingTriangulatorTest {
+
+	private static final int BATCH = 1000;
+
+	/**
+	 * A long strip: most triangles are written while the points still come.
+	 */
+	@Test
+	public void finalisationOrder() throws IOException {
+		Random random = new Random(1);
+		PointBuffer points = new PointBuffer();
+		for (int i = 0; i < 40000; i++)
+			points.add(random.nextDouble() * 200, random.nextDouble() * 5000, random.nextDouble());
+		Stream stream = new Stream(sortByY(points));
+		assertTrue(stream.early > stream.numTriangles / 2);
+		assertTrue(stream.triangulator.getMaxTriads() < stream.numTriangles / 10);
+		assertDelaunay(stream.vx, stream.vy, stream.triangles, stream.numTriangles, points);
+	}
+
+	/**
+	 * Rows of a grid, a row per batch: the cocircular cells of a row are final
+	 * only when the next row has come.
+	 */
+	@Test
+	public void gridRows() throws IOException {
+		PointBuffer points = TestPoints.grid(BATCH, 30);
+		Stream stream = new Stream(points);
+		assertEquals(2 * (BATCH - 1) * 29, stream.numTriangles);
+		assertTrue(stream.early > 0);
+		assertDelaunay(stream.vx, stream.vy, stream.triangles, stream.numTriangles, points);
+	}
+
+	/**
+	 * Points on top of another one, also in the next batch, are not written.
+	 */
+	@Test
+	public void duplicates() throws IOException {
+		PointBuffer points = sortByY(TestPoints.lattice(20000, 100, 2));
+		Stream stream = new Stream(points);
+		boolean seen[] = new boolean[100 * 100];
+		int distinct = 0;
+		for (int i = 0; i < points.size(); i++) {
+			int k = (int) points.getY(i) * 100 + (int) points.getX(i);
+			if (!seen[k]) {
+				seen[k] = true;
+				distinct++;
+			}
+		}
+		assertEquals(distinct, stream.numVertices);
+		assertEquals(points.size() - distinct, stream.triangulator.getNumSkipped());
+		assertDelaunay(stream.vx, stream.vy, stream.triangles, stream.numTriangles, points);
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void unsorted() throws IOException {
+		StreamingTriangulator triangulator = new StreamingTriangulator(
+				new DataOutputStream(new ByteArrayOutputStream()));
+		PointBuffer batch = new PointBuffer();
+		batch.add(0, 10, 0);
+		batch.add(10, 10, 0);
+		batch.add(5, 20, 0);
+		triangulator.add(batch);
+		batch = new PointBuffer();
+		batch.add(5, 15, 0);
+		triangulator.add(batch);
+	}
+
+	/**
+	 * Streams the points, already sorted by <b>y</b>, in batches of
+	 * {@link #BATCH}, and reads the records back checking each triangle against
+	 * the points that came after it was written.
+	 */
+	private static class Stream {
+		final StreamingTriangulator triangulator;
+		final double vx[], vy[];
+		final int triangles[];
+		int numVertices, numTriangles;
+		/**
+		 * The triangles written before {@link StreamingTriangulator#finish()}.
+		 */
+		final int early;
+
+		Stream(PointBuffer points) throws IOException {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			triangulator = new StreamingTriangulator(new DataOutputStream(bytes));
+			int batches = (points.size() + BATCH - 1) / BATCH;
+			// the triangles written when each batch was added
+			long written[] = new long[batches];
+			for (int k = 0; k < batches; k++) {
+				PointBuffer batch = new PointBuffer(BATCH);
+				for (int i = k * BATCH; i < Math.min((k + 1) * BATCH, points.size()); i++)
+					batch.add(points.getX(i), points.getY(i), points.getZ(i));
+				triangulator.add(batch);
+				written[k] = triangulator.getNumTriangles();
+			}
+			early = (int) triangulator.getNumTriangles();
+			triangulator.finish();
+
+			vx = new double[points.size()];
+			vy = new double[points.size()];
+			triangles = new int[6 * points.size()];
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+			int batch = 0, unused = 0;
+			while (in.available() > 0) {
+				int record = in.readByte();
+				if (record == 'v') {
+					vx[numVertices] = in.readDouble();
+					vy[numVertices] = in.readDouble();
+					in.readDouble();
+					numVertices++;
+					continue;
+				}
+				assertEquals('t', record);
+				for (int i = 0; i < 3; i++) {
+					int v = in.readInt();
+					assertTrue("vertex " + v + " not written yet", v < numVertices);
+					triangles[3 * numTriangles + i] = v;
+				}
+				// a vertex comes right before the first triangle using it
+				for (; unused < numVertices; unused++) {
+					assertTrue("vertex " + unused + " written before it was needed",
+							uses(numTriangles, unused));
+				}
+				while (batch < batches && written[batch] <= numTriangles)
+					batch++;
+				if (batch < batches)
+					assertAfter(points, batch * BATCH, numTriangles);
+				numTriangles++;
+			}
+			assertEquals(triangulator.getNumVertices(), numVertices);
+			assertEquals(triangulator.getNumTriangles(), numTriangles);
+		}
+
+		private boolean uses(int t, int v) {
+			return triangles[3 * t] == v || triangles[3 * t + 1] == v || triangles[3 * t + 2] == v;
+		}
+
+		/**
+		 * Triangle <b>t</b> was written when the points from <b>from</b> on
+		 * were added: none of them may be in its circumcircle. The points are
+		 * sorted, so only the ones up to the top of the circle are tried.
+		 */
+		private void assertAfter(PointBuffer points, int from, int t) {
+			int a = triangles[3 * t], b = triangles[3 * t + 1], c = triangles[3 * t + 2];
+			double bx = vx[b] - vx[a], by = vy[b] - vy[a];
+			double cx = vx[c] - vx[a], cy = vy[c] - vy[a];
+			double d = 2 * (bx * cy - by * cx);
+			double ux = (cy * (bx * bx + by * by) - by * (cx * cx + cy * cy)) / d;
+			double uy = (bx * (cx * cx + cy * cy) - cx * (bx * bx + by * by)) / d;
+			double top = vy[a] + uy + Math.sqrt(ux * ux + uy * uy);
+			top += 1e-6 * (1 + Math.abs(top));
+			for (int i = from; i < points.size() && points.getY(i) <= top; i++) {
+				assertFalse("point " + i + " came after triangle " + t + " inside its circumcircle",
+						Predicates.inCircumcircle(vx[a], vy[a], vx[b], vy[b], vx[c], vy[c],
+								points.getX(i), points.getY(i)));
+			}
+		}
+	}
+
+	private static PointBuffer sortByY(PointBuffer points) {
+		int n = points.size();
+		double keys[] = Arrays.copyOf(points.getYArray(), n);
+		int order[] = new int[n];
+		for (int i = 0; i < n; i++)
+			order[i] = i;
+		new RadixSort(1).sort(keys, order, 0, n);
+		PointBuffer sorted = new PointBuffer(n);
+		for (int i = 0; i < n; i++)
+			sorted.add(points.getX(order[i]), points.getY(order[i]), points.getZ(order[i]));
+		return sorted;
+	}
+}
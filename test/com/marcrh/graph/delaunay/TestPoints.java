@@ -0,0 +1,81 @@
+package com.marcrh.graph.delaunay;
+
+import java.util.Random;
+
+import com.marcrh.graph.PointBuffer;
+
+/**
+ * The inputs of the triangulation tests.
+ */
+final class TestPoints {
+
+	private TestPoints() {
+	}
+
+	/**
+	 * Uniform in a square 1000 wide.
+	 */
+	static PointBuffer random(int n, long seed) {
+		Random random = new Random(seed);
+		PointBuffer points = new PointBuffer(n);
+		for (int i = 0; i < n; i++)
+			points.add(random.nextDouble() * 1000, random.nextDouble() * 1000, 0);
+		return points;
+	}
+
+	/**
+	 * The nodes of a UTM-like grid with a 2 m step, row by row.
+	 */
+	static PointBuffer grid(int columns, int rows) {
+		PointBuffer points = new PointBuffer(columns * rows);
+		for (int i = 0; i < rows; i++) {
+			for (int j = 0; j < columns; j++)
+				points.add(500000 + 2 * j, 5000000 + 2 * i, 0);
+		}
+		return points;
+	}
+
+	/**
+	 * Random nodes of a <b>side</b> x <b>side</b> lattice: duplicates and
+	 * cocircular points everywhere.
+	 */
+	static PointBuffer lattice(int n, int side, long seed) {
+		Random random = new Random(seed);
+		PointBuffer points = new PointBuffer(n);
+		for (int i = 0; i < n; i++)
+			points.add(random.nextInt(side), random.nextInt(side), 0);
+		return points;
+	}
+
+	/**
+	 * Gaussian clusters of very different density.
+	 */
+	static PointBuffer clustered(int n, long seed) {
+		Random random = new Random(seed);
+		PointBuffer points = new PointBuffer(n);
+		double cx = 0, cy = 0, sigma = 1;
+		for (int i = 0; i < n; i++) {
+			if (i % 5000 == 0) {
+				cx = random.nextDouble() * 1000;
+				cy = random.nextDouble() * 1000;
+				sigma = Math.pow(10, random.nextInt(4) - 1);
+			}
+			points.add(cx + random.nextGaussian() * sigma, cy + random.nextGaussian() * sigma, 0);
+		}
+		return points;
+	}
+
+	/**
+	 * Half of the points on the line x = 0 and the others to its right: split
+	 * in two slabs, the left one has no triangle.
+	 */
+	static PointBuffer collinearSlab(int n, long seed) {
+		Random random = new Random(seed);
+		PointBuffer points = new PointBuffer(n);
+		for (int i = 0; i < n / 2; i++)
+			points.add(0, random.nextDouble() * 1000, 0);
+		for (int i = n / 2; i < n; i++)
+			points.add(1 + random.nextDouble() * 999, random.nextDouble() * 1000, 0);
+		return points;
+	}
+}
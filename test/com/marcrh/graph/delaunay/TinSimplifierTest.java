@@ -0,0 +1,145 @@
+package com.marcrh.graph.delaunay;
+
+import static com.marcrh.graph.delaunay.TriangulationAssert.assertDelaunay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.marcrh.graph.PointBuffer;
+
+/**
+ * The simplified surface must stay within the tolerance of every point,
+ * report the errors it cannot fix and split the hull edges when needed.
+ */
+public class TinSimplifierTest {
+
+	@Test
+	public void maxErrorWithinTolerance() {
+		Random random = new Random(1);
+		PointBuffer points = new PointBuffer();
+		for (int i = 0; i < 3000; i++) {
+			double x = random.nextDouble() * 1000, y = random.nextDouble() * 1000;
+			points.add(x, y, Math.sin(x / 80) * 30 + Math.cos(y / 50) * 20 + random.nextDouble());
+		}
+		for (double tolerance : new double[] { 0.5, 2, 10 }) {
+			TinSimplifier simplifier = new TinSimplifier();
+			TriadStore triads = simplifier.simplify(points, tolerance);
+			assertDelaunay(points, triads, vertices(points, triads));
+			double max = maxError(points, triads);
+			assertTrue(max + " > " + tolerance, max <= tolerance);
+			assertEquals(max, simplifier.getMaxError(), 1e-9);
+			assertTrue(simplifier.getNumVertices() < points.size());
+		}
+	}
+
+	/**
+	 * A point on a vertex with another height cannot be inserted: its error
+	 * is reported anyway. The worst of the two is inserted first.
+	 */
+	@Test
+	public void duplicatesOfAVertexAreCounted() {
+		PointBuffer points = new PointBuffer();
+		points.add(0, 0, 0);
+		points.add(100, 0, 0);
+		points.add(100, 100, 0);
+		points.add(0, 100, 0);
+		points.add(40, 60, 10);
+		points.add(40, 60, 10.5);
+		TinSimplifier simplifier = new TinSimplifier();
+		TriadStore triads = simplifier.simplify(points, 0.1);
+		assertEquals(4, triads.size());
+		assertEquals(5, simplifier.getNumVertices());
+		assertTrue(isVertex(triads, 5));
+		assertEquals(0.5, simplifier.getMaxError(), 1e-12);
+		assertEquals(Math.sqrt(0.25 / 6), simplifier.getRmsError(), 1e-12);
+	}
+
+	/**
+	 * Points in the middle of a hull edge are not hull vertices, but a high
+	 * one must split the edge.
+	 */
+	@Test
+	public void pointsOnAHullEdgeSplitIt() {
+		PointBuffer points = new PointBuffer();
+		points.add(0, 0, 0);
+		points.add(100, 0, 0);
+		points.add(100, 100, 0);
+		points.add(0, 100, 0);
+		points.add(25, 0, 2.5);
+		points.add(50, 0, 5);
+		points.add(75, 0, 2.5);
+		TinSimplifier simplifier = new TinSimplifier();
+		TriadStore triads = simplifier.simplify(points, 0.1);
+		assertEquals(5, simplifier.getNumVertices());
+		assertTrue(isVertex(triads, 5));
+		assertTrue(simplifier.getMaxError() <= 0.1);
+		assertEquals(simplifier.getMaxError(), maxError(points, triads), 1e-12);
+		assertDelaunay(points, triads, vertices(points, triads));
+	}
+
+	private static boolean isVertex(TriadStore triads, int p) {
+		for (int t = 0; t < triads.size(); t++) {
+			if (triads.getA(t) == p || triads.getB(t) == p || triads.getC(t) == p)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return The largest vertical distance of a point from the plane of the
+	 * triad containing it, found by brute force.
+	 */
+	private static double maxError(PointBuffer points, TriadStore triads) {
+		double max = 0;
+		for (int p = 0; p < points.size(); p++) {
+			double x = points.getX(p), y = points.getY(p);
+			double error = Double.NaN;
+			for (int t = 0; t < triads.size() && Double.isNaN(error); t++) {
+				int a = triads.getA(t), b = triads.getB(t), c = triads.getC(t);
+				double area = cross(points, a, b, x, y, c);
+				double wa = cross(points, b, c, x, y, -1) / area;
+				double wb = cross(points, c, a, x, y, -1) / area;
+				double wc = 1 - wa - wb;
+				if (wa < -1e-12 || wb < -1e-12 || wc < -1e-12)
+					continue;
+				double z = wa * points.getZ(a) + wb * points.getZ(b) + wc * points.getZ(c);
+				error = Math.abs(z - points.getZ(p));
+			}
+			assertTrue("point " + p + " outside the triads", !Double.isNaN(error));
+			max = Math.max(max, error);
+		}
+		return max;
+	}
+
+	/**
+	 * Twice the signed area of <b>u</b>, <b>v</b> and the point <b>w</b>, or
+	 * (<b>x</b>, <b>y</b>) if <b>w</b> is negative.
+	 */
+	private static double cross(PointBuffer points, int u, int v, double x, double y, int w) {
+		double wx = w < 0 ? x : points.getX(w), wy = w < 0 ? y : points.getY(w);
+		return (points.getX(v) - points.getX(u)) * (wy - points.getY(u))
+				- (wx - points.getX(u)) * (points.getY(v) - points.getY(u));
+	}
+
+	/**
+	 * @return The points kept as vertices of the triads: the result must be
+	 * their Delaunay triangulation.
+	 */
+	private static PointBuffer vertices(PointBuffer points, TriadStore triads) {
+		boolean vertex[] = new boolean[points.size()];
+		for (int t = 0; t < triads.size(); t++) {
+			vertex[triads.getA(t)] = true;
+			vertex[triads.getB(t)] = true;
+			vertex[triads.getC(t)] = true;
+		}
+		PointBuffer vertices = new PointBuffer();
+		for (int p = 0; p < points.size(); p++) {
+			if (vertex[p])
+				vertices.add(points.getX(p), points.getY(p), points.getZ(p));
+		}
+		return vertices;
+	}
+}
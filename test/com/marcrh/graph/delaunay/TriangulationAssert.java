@@ -0,0 +1,184 @@
+package com.marcrh.graph.delaunay;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.awt.geom.Point2D;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import com.marcrh.graph.PointBuffer;
+
+/**
+ * Checks that triangles are the Delaunay triangulation of a set of points:
+ * every edge is shared by at most two triangles, one on each side, and no
+ * vertex is strictly inside the circumcircle of the triangle across an edge,
+ * which makes every circumcircle empty; the triangles cover the convex hull of
+ * the points and use each of them, duplicates once.
+ */
+final class TriangulationAssert {
+	/**
+	 * Triangles whose circumcircle is also checked against every point.
+	 */
+	private static final int SAMPLES = 50;
+
+	private TriangulationAssert() {
+	}
+
+	/**
+	 * Checks the triads of a triangulation of their own vertices, and that
+	 * their neighbours point back to them across the same edge.
+	 */
+	static void assertDelaunay(PointBuffer points, TriadStore triads) {
+		assertDelaunay(points, triads, points);
+	}
+
+	/**
+	 * @param vertices The points the triads refer to.
+	 * @param input The points that must be triangulated.
+	 */
+	static void assertDelaunay(PointBuffer vertices, TriadStore triads, PointBuffer input) {
+		int n = triads.size();
+		int triangles[] = new int[3 * n];
+		for (int t = 0; t < n; t++) {
+			triangles[3 * t] = triads.getA(t);
+			triangles[3 * t + 1] = triads.getB(t);
+			triangles[3 * t + 2] = triads.getC(t);
+			assertNeighbour(triads, t, triads.getA(t), triads.getB(t), triads.getAB(t));
+			assertNeighbour(triads, t, triads.getB(t), triads.getC(t), triads.getBC(t));
+			assertNeighbour(triads, t, triads.getA(t), triads.getC(t), triads.getAC(t));
+		}
+		assertDelaunay(vertices.getXArray(), vertices.getYArray(), triangles, n, input);
+	}
+
+	/**
+	 * @param vx The <b>x</b> of the vertices.
+	 * @param vy The <b>y</b> of the vertices.
+	 * @param triangles Three vertex indices per triangle.
+	 * @param n The number of triangles.
+	 * @param input The points that must be triangulated.
+	 */
+	static void assertDelaunay(double vx[], double vy[], int triangles[], int n, PointBuffer input) {
+		Map<Long, int[]> edges = new HashMap<Long, int[]>();
+		double area = 0;
+		Set<Point2D.Double> used = new HashSet<Point2D.Double>();
+		for (int t = 0; t < n; t++) {
+			int a = triangles[3 * t], b = triangles[3 * t + 1], c = triangles[3 * t + 2];
+			double orientation = Predicates.orient2d(vx[a], vy[a], vx[b], vy[b], vx[c], vy[c]);
+			assertTrue("flat triangle " + t, orientation != 0);
+			area += Math.abs(orientation) / 2;
+			for (int i = 0; i < 3; i++) {
+				int u = triangles[3 * t + i], v = triangles[3 * t + (i + 1) % 3];
+				int w = triangles[3 * t + (i + 2) % 3];
+				used.add(new Point2D.Double(vx[u], vy[u]));
+				Long key = Long.valueOf((long) Math.min(u, v) << 32 | Math.max(u, v));
+				int other[] = edges.get(key);
+				if (other == null) {
+					edges.put(key, new int[] { t, w, -1 });
+					continue;
+				}
+				assertEquals("edge " + u + "-" + v + " in three triangles", -1, other[2]);
+				other[2] = t;
+				int x = other[1];
+				// one triangle on each side, and neither opposite vertex in the other circle
+				assertTrue("overlapping triangles " + other[0] + " and " + t,
+						Predicates.orient2d(vx[u], vy[u], vx[v], vy[v], vx[w], vy[w])
+								* Predicates.orient2d(vx[u], vy[u], vx[v], vy[v], vx[x], vy[x]) < 0);
+				assertFalse("edge " + u + "-" + v + " is not Delaunay",
+						Predicates.inCircumcircle(vx[a], vy[a], vx[b], vy[b], vx[c], vy[c], vx[x], vy[x]));
+			}
+		}
+
+		Set<Point2D.Double> expected = new HashSet<Point2D.Double>();
+		for (int i = 0; i < input.size(); i++)
+			expected.add(new Point2D.Double(input.getX(i), input.getY(i)));
+		assertEquals("vertices used", expected.size(), used.size());
+		assertTrue("vertices used", expected.containsAll(used));
+
+		double hull = hullArea(input);
+		assertEquals("area", hull, area, hull * 1e-9);
+
+		Random random = new Random(n);
+		for (int k = 0; k < SAMPLES && n > 0; k++) {
+			int t = random.nextInt(n);
+			int a = triangles[3 * t], b = triangles[3 * t + 1], c = triangles[3 * t + 2];
+			for (int i = 0; i < input.size(); i++) {
+				if (Predicates.inCircumcircle(vx[a], vy[a], vx[b], vy[b], vx[c], vy[c],
+						input.getX(i), input.getY(i)))
+					fail("point " + i + " inside the circumcircle of triangle " + t);
+			}
+		}
+	}
+
+	/**
+	 * The neighbour <b>s</b> of triad <b>t</b> across <b>u</b>-<b>v</b> must
+	 * have the same edge, with <b>t</b> across it.
+	 */
+	private static void assertNeighbour(TriadStore triads, int t, int u, int v, int s) {
+		if (s < 0)
+			return;
+		assertTrue("neighbour " + s + " of " + t, s < triads.size());
+		int a = triads.getA(s), b = triads.getB(s), c = triads.getC(s);
+		int back;
+		if (same(a, b, u, v))
+			back = triads.getAB(s);
+		else if (same(b, c, u, v))
+			back = triads.getBC(s);
+		else if (same(a, c, u, v))
+			back = triads.getAC(s);
+		else {
+			fail("triad " + s + " has not the edge " + u + "-" + v + " of its neighbour " + t);
+			return;
+		}
+		assertEquals("neighbour of " + s + " across " + u + "-" + v, t, back);
+	}
+
+	private static boolean same(int a, int b, int u, int v) {
+		return (a == u && b == v) || (a == v && b == u);
+	}
+
+	/**
+	 * @return The area of the convex hull of the points (Andrew's monotone chain).
+	 */
+	private static double hullArea(PointBuffer points) {
+		int n = points.size();
+		Integer order[] = new Integer[n];
+		for (int i = 0; i < n; i++)
+			order[i] = Integer.valueOf(i);
+		final double x[] = points.getXArray(), y[] = points.getYArray();
+		Arrays.sort(order, new java.util.Comparator<Integer>() {
+			public int compare(Integer p, Integer q) {
+				int c = Double.compare(x[p.intValue()], x[q.intValue()]);
+				return c != 0 ? c : Double.compare(y[p.intValue()], y[q.intValue()]);
+			}
+		});
+		int hull[] = new int[2 * n];
+		int k = 0;
+		for (int i = 0; i < n; i++) {
+			int p = order[i].intValue();
+			while (k >= 2 && turn(x, y, hull[k - 2], hull[k - 1], p) <= 0)
+				k--;
+			hull[k++] = p;
+		}
+		for (int i = n - 2, lower = k + 1; i >= 0; i--) {
+			int p = order[i].intValue();
+			while (k >= lower && turn(x, y, hull[k - 2], hull[k - 1], p) <= 0)
+				k--;
+			hull[k++] = p;
+		}
+		double area = 0;
+		for (int i = 0; i < k - 1; i++)
+			area += x[hull[i]] * y[hull[i + 1]] - x[hull[i + 1]] * y[hull[i]];
+		return Math.abs(area) / 2;
+	}
+
+	private static double turn(double x[], double y[], int a, int b, int c) {
+		return Predicates.orient2d(x[a], y[a], x[b], y[b], x[c], y[c]);
+	}
+}
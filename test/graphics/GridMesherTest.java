@@ -0,0 +1,202 @@
+package graphics;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import com.marcrh.graph.PointBuffer;
+import com.marcrh.graph.delaunay.Triangulator;
+import com.marcrh.graph.delaunay.TriadStore;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Riconoscimento delle griglie e scelta fra la triangolazione per celle e
+ * quella di Delaunay.
+ */
+public class GridMesherTest {
+
+    @Test
+    public void completeGrid() {
+        PointBuffer points = grid(30, 20, 0, new Random(1));
+        GridMesher.Lattice lattice = GridMesher.lattice(points);
+        assertNotNull(lattice);
+        assertEquals(30, lattice.cols);
+        assertEquals(20, lattice.rows);
+        assertEquals(0, lattice.holes);
+        for (int k = 0; k < points.size(); k++) {
+            assertEquals(k, lattice.node[k]);
+        }
+        assertNotNull(GridMesher.triangulate(points));
+        assertSameTriangles(points);
+    }
+
+    /**
+     * I nodi senza quota restano buchi della griglia: la triangolazione per
+     * celle non e' quella di Delaunay e si usa il triangolatore generico.
+     */
+    @Test
+    public void holes() {
+        PointBuffer full = grid(30, 20, 0, new Random(2));
+        PointBuffer points = new PointBuffer();
+        int[] missing = {5 * 30 + 7, 5 * 30 + 8, 12 * 30 + 20};
+        for (int k = 0; k < full.size(); k++) {
+            if (Arrays.binarySearch(missing, k) < 0) {
+                points.add(full.getX(k), full.getY(k), full.getZ(k));
+            }
+        }
+        GridMesher.Lattice lattice = GridMesher.lattice(points);
+        assertNotNull(lattice);
+        assertEquals(30, lattice.cols);
+        assertEquals(20, lattice.rows);
+        assertEquals(3, lattice.holes);
+        for (int k : missing) {
+            assertEquals(-1, lattice.node[k]);
+        }
+        assertNull(GridMesher.triangulate(points));
+        assertSameTriangles(points);
+    }
+
+    /**
+     * Senza la prima colonna la griglia comincia dalla seconda.
+     */
+    @Test
+    public void missingFirstColumn() {
+        PointBuffer full = grid(30, 20, 0, new Random(3));
+        PointBuffer points = new PointBuffer();
+        for (int k = 0; k < full.size(); k++) {
+            if (k % 30 != 0) {
+                points.add(full.getX(k), full.getY(k), full.getZ(k));
+            }
+        }
+        GridMesher.Lattice lattice = GridMesher.lattice(points);
+        assertNotNull(lattice);
+        assertEquals(29, lattice.cols);
+        assertEquals(20, lattice.rows);
+        assertEquals(0, lattice.holes);
+        assertNotNull(GridMesher.triangulate(points));
+        assertSameTriangles(points);
+    }
+
+    /**
+     * Della prima colonna resta un punto solo: gli altri sono buchi.
+     */
+    @Test
+    public void firstColumnWithHoles() {
+        PointBuffer full = grid(30, 20, 0, new Random(4));
+        PointBuffer points = new PointBuffer();
+        for (int k = 0; k < full.size(); k++) {
+            if (k % 30 != 0 || k == 10 * 30) {
+                points.add(full.getX(k), full.getY(k), full.getZ(k));
+            }
+        }
+        GridMesher.Lattice lattice = GridMesher.lattice(points);
+        assertNotNull(lattice);
+        assertEquals(30, lattice.cols);
+        assertEquals(19, lattice.holes);
+        assertNull(GridMesher.triangulate(points));
+        assertSameTriangles(points);
+    }
+
+    /**
+     * Coordinate arrotondate: i punti restano sui nodi, e la triangolazione
+     * per celle segue lo scarto di ognuno. Il bordo resta dritto, altrimenti
+     * qualche suo nodo rientrerebbe e servirebbe Delaunay.
+     */
+    @Test
+    public void jitter() {
+        PointBuffer points = grid(40, 40, 1e-4, new Random(5));
+        GridMesher.Lattice lattice = GridMesher.lattice(points);
+        assertNotNull(lattice);
+        assertEquals(40, lattice.cols);
+        assertEquals(40, lattice.rows);
+        assertEquals(0, lattice.holes);
+        for (int k = 0; k < points.size(); k++) {
+            assertEquals(k, lattice.node[k]);
+        }
+        assertNotNull(GridMesher.triangulate(points));
+        assertSameTriangles(points);
+    }
+
+    /**
+     * Anche i nodi della prima colonna sono spostati: il passo non si
+     * riconosce piu' e si usa Delaunay.
+     */
+    @Test
+    public void jitteredFirstColumn() {
+        PointBuffer points = grid(40, 40, 0, new Random(8));
+        Random random = new Random(9);
+        for (int k = 40; k < points.size() - 40; k += 40) {
+            points.set(k, points.getX(k) + random.nextDouble() * 1e-4,
+                    points.getY(k), points.getZ(k));
+        }
+        assertNull(GridMesher.lattice(points));
+        assertSameTriangles(points);
+    }
+
+    /**
+     * Uno scarto oltre la tolleranza: non e' un raster.
+     */
+    @Test
+    public void offLattice() {
+        PointBuffer points = grid(40, 40, 0, new Random(6));
+        int k = 17 * 40 + 23;
+        points.set(k, points.getX(k) + 0.01, points.getY(k), points.getZ(k));
+        assertNull(GridMesher.lattice(points));
+        assertNull(GridMesher.triangulate(points));
+        assertSameTriangles(points);
+    }
+
+    @Test
+    public void scattered() {
+        Random random = new Random(7);
+        PointBuffer points = new PointBuffer();
+        for (int i = 0; i < 2000; i++) {
+            points.add(500000 + random.nextDouble() * 100,
+                    5000000 + random.nextDouble() * 100, random.nextDouble());
+        }
+        assertNull(GridMesher.lattice(points));
+        assertSameTriangles(points);
+    }
+
+    /**
+     * i nodi di una griglia con passo 2 m in coordinate UTM, riga per riga;
+     * quelli interni sono spostati a caso di al piu' jitter metri.
+     */
+    private static PointBuffer grid(int cols, int rows, double jitter, Random random) {
+        PointBuffer points = new PointBuffer(cols * rows);
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                boolean inner = row > 0 && row < rows - 1 && col > 0 && col < cols - 1;
+                double dx = inner ? (random.nextDouble() - 0.5) * 2 * jitter : 0;
+                double dy = inner ? (random.nextDouble() - 0.5) * 2 * jitter : 0;
+                points.add(500000 + 2 * col + dx, 5000000 + 2 * row + dy,
+                        random.nextDouble() * 100);
+            }
+        }
+        return points;
+    }
+
+    /**
+     * DTMCreator.triangulate, griglia o no, deve dare i triangoli del
+     * triangolatore sequenziale.
+     */
+    private static void assertSameTriangles(PointBuffer points) {
+        assertArrayEquals(triangles(new Triangulator().getTriadStore(points, true)),
+                triangles(DTMCreator.triangulate(points)));
+    }
+
+    private static long[] triangles(TriadStore triads) {
+        long[] keys = new long[triads.size()];
+        for (int t = 0; t < keys.length; t++) {
+            long a = triads.getA(t), b = triads.getB(t), c = triads.getC(t);
+            long low = Math.min(a, Math.min(b, c)), high = Math.max(a, Math.max(b, c));
+            long middle = a + b + c - low - high;
+            keys[t] = (low << 40) | (middle << 20) | high;
+        }
+        Arrays.sort(keys);
+        return keys;
+    }
+}
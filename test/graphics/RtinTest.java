@@ -0,0 +1,165 @@
+package graphics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.marcrh.graph.PointBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Le superfici estratte da una RTIN non devono avere crepe, devono coprire
+ * tutta la griglia e rispettare la tolleranza su ogni nodo, anche dove i
+ * blocchi si toccano.
+ */
+public class RtinTest {
+
+    private static final double[] TOLERANCES = {0, 0.5, 3, 1e9};
+
+    /**
+     * un solo blocco, 2^8 + 1 nodi per lato
+     */
+    @Test
+    public void oneTile() {
+        check(257, 257);
+    }
+
+    /**
+     * un quadrato che non e' 2^k + 1: l'ultimo blocco e' completato con nodi
+     * senza punto
+     */
+    @Test
+    public void paddedSquare() {
+        check(300, 300);
+    }
+
+    /**
+     * griglie allungate: molti blocchi in fila lungo il lato lungo
+     */
+    @Test
+    public void elongated() {
+        check(1100, 65);
+        check(37, 700);
+    }
+
+    @Test
+    public void tiny() {
+        check(2, 2);
+        check(5, 3);
+    }
+
+    private static void check(int cols, int rows) {
+        PointBuffer points = terrain(cols, rows, new Random(cols * 31 + rows));
+        Rtin rtin = Rtin.build(points);
+        assertNotNull(rtin);
+        int previous = Integer.MAX_VALUE;
+        for (double tolerance : TOLERANCES) {
+            TriangleMesh mesh = rtin.mesh(tolerance);
+            String what = cols + "x" + rows + ", tolleranza " + tolerance;
+            assertCracksFree(what, mesh, cols, rows);
+            assertCovers(what, mesh, points, cols, rows);
+            assertWithin(what, mesh, points, cols, tolerance);
+            assertTrue(what, mesh.getTriangleCount() <= previous);
+            previous = mesh.getTriangleCount();
+        }
+    }
+
+    /**
+     * colline con un po' di rumore, su una griglia con passo 2 m
+     */
+    private static PointBuffer terrain(int cols, int rows, Random random) {
+        PointBuffer points = new PointBuffer(cols * rows);
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                points.add(1000 + 2 * col, 2000 + 2 * row,
+                        Math.sin(col * 0.05) * 20 + Math.cos(row * 0.07) * 15
+                        + random.nextDouble());
+            }
+        }
+        return points;
+    }
+
+    /**
+     * ogni lato sta in due triangoli, o in uno solo se e' sul bordo della
+     * griglia: un nodo a meta' del lato di un vicino lascerebbe il lato lungo
+     * con un triangolo solo.
+     */
+    private static void assertCracksFree(String what, TriangleMesh mesh, int cols, int rows) {
+        Map<Long, Integer> edges = new HashMap<Long, Integer>();
+        for (int t = 0; t < mesh.getTriangleCount(); t++) {
+            for (int k = 0; k < 3; k++) {
+                int u = mesh.getVertexIndex(t, k), v = mesh.getVertexIndex(t, (k + 1) % 3);
+                Long key = Long.valueOf((long) Math.min(u, v) << 32 | Math.max(u, v));
+                Integer count = edges.get(key);
+                edges.put(key, count == null ? 1 : count + 1);
+            }
+        }
+        for (Map.Entry<Long, Integer> edge : edges.entrySet()) {
+            int u = (int) (edge.getKey().longValue() >>> 32);
+            int v = (int) edge.getKey().longValue();
+            int count = edge.getValue().intValue();
+            assertTrue(what + ": lato " + u + "-" + v + " in " + count + " triangoli", count <= 2);
+            if (count == 1 && !onBorder(u, v, cols, rows)) {
+                fail(what + ": crepa lungo il lato " + u + "-" + v);
+            }
+        }
+    }
+
+    private static boolean onBorder(int u, int v, int cols, int rows) {
+        int ux = u % cols, uy = u / cols, vx = v % cols, vy = v / cols;
+        return (ux == vx && (ux == 0 || ux == cols - 1))
+                || (uy == vy && (uy == 0 || uy == rows - 1));
+    }
+
+    private static void assertCovers(String what, TriangleMesh mesh, PointBuffer points,
+            int cols, int rows) {
+        double area = 0;
+        for (int t = 0; t < mesh.getTriangleCount(); t++) {
+            area += Math.abs(cross(points, mesh.getVertexIndex(t, 0),
+                    mesh.getVertexIndex(t, 1), mesh.getVertexIndex(t, 2))) / 2;
+        }
+        assertEquals(what + ": area", 4.0 * (cols - 1) * (rows - 1), area, 1e-6);
+    }
+
+    /**
+     * ogni nodo dista in quota dal piano del triangolo che lo contiene al
+     * piu' la tolleranza.
+     */
+    private static void assertWithin(String what, TriangleMesh mesh, PointBuffer points,
+            int cols, double tolerance) {
+        for (int t = 0; t < mesh.getTriangleCount(); t++) {
+            int a = mesh.getVertexIndex(t, 0);
+            int b = mesh.getVertexIndex(t, 1);
+            int c = mesh.getVertexIndex(t, 2);
+            double area = cross(points, a, b, c);
+            int minCol = Math.min(a % cols, Math.min(b % cols, c % cols));
+            int maxCol = Math.max(a % cols, Math.max(b % cols, c % cols));
+            int minRow = Math.min(a / cols, Math.min(b / cols, c / cols));
+            int maxRow = Math.max(a / cols, Math.max(b / cols, c / cols));
+            for (int row = minRow; row <= maxRow; row++) {
+                for (int col = minCol; col <= maxCol; col++) {
+                    int p = row * cols + col;
+                    double wa = cross(points, p, b, c) / area;
+                    double wb = cross(points, a, p, c) / area;
+                    double wc = cross(points, a, b, p) / area;
+                    if (wa < -1e-9 || wb < -1e-9 || wc < -1e-9) {
+                        continue;
+                    }
+                    double z = wa * points.getZ(a) + wb * points.getZ(b) + wc * points.getZ(c);
+                    double error = Math.abs(z - points.getZ(p));
+                    assertTrue(what + ": scarto " + error + " al nodo " + p,
+                            error <= tolerance + 1e-4);
+                }
+            }
+        }
+    }
+
+    private static double cross(PointBuffer points, int a, int b, int c) {
+        return (points.getX(b) - points.getX(a)) * (points.getY(c) - points.getY(a))
+                - (points.getX(c) - points.getX(a)) * (points.getY(b) - points.getY(a));
+    }
+}